@@ -0,0 +1,5 @@
+/* automatically generated with gradle generateTestsFromJavaProject task */
+package org.greenrobot.essentials.collections;
+
+public class AndroidRingBufferListTest extends RingBufferListTest {
+}
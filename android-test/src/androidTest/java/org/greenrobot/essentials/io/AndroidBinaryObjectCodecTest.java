@@ -0,0 +1,5 @@
+/* automatically generated with gradle generateTestsFromJavaProject task */
+package org.greenrobot.essentials.io;
+
+public class AndroidBinaryObjectCodecTest extends BinaryObjectCodecTest {
+}
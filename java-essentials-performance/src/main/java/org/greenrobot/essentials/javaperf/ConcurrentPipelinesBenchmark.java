@@ -0,0 +1,201 @@
+package org.greenrobot.essentials.javaperf;
+
+import org.greenrobot.essentials.io.CircularByteBuffer;
+import org.greenrobot.essentials.io.PipelineOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.lang.reflect.Method;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs thousands of pipelines concurrently, each with a writer and a reader thread. On Java 21+, virtual threads are
+ * used (a thread per pipeline side like in a thread-per-request server); blocking implementations that pin their
+ * carrier threads (e.g. by waiting in synchronized blocks) degrade badly here. On older Java versions, it falls back
+ * to platform threads.
+ */
+public class ConcurrentPipelinesBenchmark {
+    static final int PIPELINE_COUNT = 2000;
+    static final int STREAM_LENGTH = 64 * 1024;
+    static final int CHUNK_SIZE = 1024;
+    static final int BUFFER_SIZE = 4096;
+
+    static final ThreadFactory THREAD_FACTORY = createThreadFactory();
+
+    /** Uses Thread.ofVirtual().factory() via reflection, so this compiles and runs on older Java versions. */
+    private static ThreadFactory createThreadFactory() {
+        try {
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            Object builder = ofVirtual.invoke(null);
+            Method factory = ofVirtual.getReturnType().getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (Exception e) {
+            return Executors.defaultThreadFactory();
+        }
+    }
+
+    static boolean isVirtual() {
+        return !THREAD_FACTORY.getClass().getName().startsWith("java.util.concurrent.Executors");
+    }
+
+    // this is only for development purposes or to run tests separately. For automated benchmarking use gradle
+    public static void main(String[] args) {
+        BenchmarkRunner.runWallTime(new LibImpl(), 10, 10);
+    }
+
+    /** A pipeline transferring STREAM_LENGTH bytes from writer to reader. */
+    interface Pipeline {
+        void write() throws Exception;
+
+        void read() throws Exception;
+    }
+
+    static void runPipelines(PipelineFactory pipelineFactory) {
+        final CountDownLatch latch = new CountDownLatch(PIPELINE_COUNT * 2);
+        for (int i = 0; i < PIPELINE_COUNT; i++) {
+            final Pipeline pipeline = pipelineFactory.create();
+            THREAD_FACTORY.newThread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        pipeline.write();
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            }).start();
+            THREAD_FACTORY.newThread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        pipeline.read();
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            }).start();
+        }
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    interface PipelineFactory {
+        Pipeline create();
+    }
+
+    static class StreamPipeline implements Pipeline {
+        private final InputStream in;
+        private final OutputStream out;
+
+        StreamPipeline(InputStream in, OutputStream out) {
+            this.in = in;
+            this.out = out;
+        }
+
+        @Override
+        public void write() throws IOException {
+            byte[] buffer = new byte[CHUNK_SIZE];
+            for (int position = 0; position < STREAM_LENGTH; position += CHUNK_SIZE) {
+                out.write(buffer);
+            }
+            out.close();
+        }
+
+        @Override
+        public void read() throws IOException {
+            byte[] buffer = new byte[CHUNK_SIZE];
+            while (in.read(buffer) != -1) ;
+        }
+    }
+
+    private ConcurrentPipelinesBenchmark() {
+    }
+
+    public static class LibImpl implements Runnable {
+        @Override
+        public void run() {
+            runPipelines(new PipelineFactory() {
+                @Override
+                public Pipeline create() {
+                    PipelineOutputStream out = new PipelineOutputStream(BUFFER_SIZE);
+                    return new StreamPipeline(out.getInputStream(), out);
+                }
+            });
+        }
+
+        @Override
+        public String toString() {
+            return "ConcurrentPipelines (" + PIPELINE_COUNT + (isVirtual() ? " virtual" : "") + ")/Lib";
+        }
+    }
+
+    /** Blocking puts and gets of {@link CircularByteBuffer}. */
+    public static class CircularImpl implements Runnable {
+        @Override
+        public void run() {
+            runPipelines(new PipelineFactory() {
+                @Override
+                public Pipeline create() {
+                    final CircularByteBuffer circularByteBuffer = new CircularByteBuffer(BUFFER_SIZE);
+                    return new Pipeline() {
+                        @Override
+                        public void write() throws InterruptedException {
+                            byte[] buffer = new byte[CHUNK_SIZE];
+                            for (int position = 0; position < STREAM_LENGTH; position += CHUNK_SIZE) {
+                                circularByteBuffer.putFully(buffer);
+                            }
+                        }
+
+                        @Override
+                        public void read() throws InterruptedException {
+                            byte[] buffer = new byte[CHUNK_SIZE];
+                            for (int position = 0; position < STREAM_LENGTH; position += CHUNK_SIZE) {
+                                circularByteBuffer.getFully(buffer);
+                            }
+                        }
+                    };
+                }
+            });
+        }
+
+        @Override
+        public String toString() {
+            return "ConcurrentPipelines (" + PIPELINE_COUNT + (isVirtual() ? " virtual" : "") + ")/Circular";
+        }
+    }
+
+    /** Java's piped streams wait in synchronized methods, which pins virtual threads before Java 24. */
+    public static class StdImpl implements Runnable {
+        @Override
+        public void run() {
+            runPipelines(new PipelineFactory() {
+                @Override
+                public Pipeline create() {
+                    try {
+                        PipedInputStream in = new PipedInputStream(BUFFER_SIZE);
+                        return new StreamPipeline(in, new PipedOutputStream(in));
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+        }
+
+        @Override
+        public String toString() {
+            return "ConcurrentPipelines (" + PIPELINE_COUNT + (isVirtual() ? " virtual" : "") + ")/Std";
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package org.greenrobot.essentials.javaperf;
+
+import org.greenrobot.essentials.io.FileUtils;
+import org.greenrobot.essentials.io.IoUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+/**
+ * Copies a file using streams through a heap buffer (Std) versus FileChannel.transferTo (Lib).
+ * Throughput in MB/s = FILE_LENGTH / 1MB / (median ms / 1000).
+ */
+public class FileCopyBenchmark {
+    static final int FILE_LENGTH = 64 * 1024 * 1024; // 64 MB
+
+    private static File source;
+    private static File target;
+
+    // this is only for development purposes or to run tests separately. For automated benchmarking use gradle
+    public static void main(String[] args) {
+        double medianMs = BenchmarkRunner.runWallTime(new LibImpl(), 20, 5);
+        System.out.println("Throughput: " + (FILE_LENGTH / (1024 * 1024)) / (medianMs / 1000) + " MB/s");
+    }
+
+    static synchronized void prepareFiles() {
+        if (source == null) {
+            try {
+                source = File.createTempFile("copy-benchmark", ".src");
+                source.deleteOnExit();
+                target = File.createTempFile("copy-benchmark", ".dst");
+                target.deleteOnExit();
+                byte[] bytes = new byte[FILE_LENGTH];
+                new Random(42).nextBytes(bytes);
+                FileUtils.writeBytes(source, bytes);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private FileCopyBenchmark() {
+    }
+
+    public static class LibImpl implements Runnable {
+        public LibImpl() {
+            prepareFiles();
+        }
+
+        @Override
+        public void run() {
+            try {
+                FileUtils.copyFile(source, target);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "FileCopy (" + (FILE_LENGTH / (1024 * 1024)) + "MB)/Lib";
+        }
+    }
+
+    /** The stream based copy FileUtils.copyFile used before switching to transferTo. */
+    public static class StdImpl implements Runnable {
+        public StdImpl() {
+            prepareFiles();
+        }
+
+        @Override
+        public void run() {
+            try {
+                InputStream in = new BufferedInputStream(new FileInputStream(source));
+                try {
+                    OutputStream out = new BufferedOutputStream(new FileOutputStream(target));
+                    try {
+                        IoUtils.copyAllBytes(in, out);
+                    } finally {
+                        IoUtils.safeClose(out);
+                    }
+                } finally {
+                    IoUtils.safeClose(in);
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "FileCopy (" + (FILE_LENGTH / (1024 * 1024)) + "MB)/Std";
+        }
+    }
+}
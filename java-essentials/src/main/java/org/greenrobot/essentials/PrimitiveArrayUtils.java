@@ -24,7 +24,8 @@ import java.nio.ByteOrder;
 import java.util.NoSuchElementException;
 
 /**
- * Retrieves int and long values from byte arrays. By default it uses a "safe" implementation (plain Java).
+ * Retrieves int and long values from byte arrays and puts them into byte arrays. By default it uses a "safe"
+ * implementation (plain Java).
  * By calling {@link #initUnsafeInstance()}, you can switch to sun.misc.Unsafe (deprecated) for fast access.
  */
 // TODO Test on a big endian machine with Unsafe
@@ -75,6 +76,14 @@ public abstract class PrimitiveArrayUtils {
 
     public abstract int getIntLE(char[] chars, int index);
 
+    public abstract void putIntLE(byte[] bytes, int index, int value);
+
+    public abstract void putIntBE(byte[] bytes, int index, int value);
+
+    public abstract void putLongLE(byte[] bytes, int index, long value);
+
+    public abstract void putLongBE(byte[] bytes, int index, long value);
+
     private static class UnsafeImpl extends PrimitiveArrayUtils {
         private static final boolean BIG_ENDIAN;
         private static final boolean UNALIGNED;
@@ -214,6 +223,26 @@ public abstract class PrimitiveArrayUtils {
                 return Long.reverseBytes(value);
             }
         }
+
+        /** Little endian. */
+        public void putIntLE(byte[] bytes, int index, int value) {
+            UNSAFE.putInt(bytes, BYTE_ARRAY_OFFSET + index, BIG_ENDIAN ? Integer.reverseBytes(value) : value);
+        }
+
+        /** Big endian. */
+        public void putIntBE(byte[] bytes, int index, int value) {
+            UNSAFE.putInt(bytes, BYTE_ARRAY_OFFSET + index, BIG_ENDIAN ? value : Integer.reverseBytes(value));
+        }
+
+        /** Little endian. */
+        public void putLongLE(byte[] bytes, int index, long value) {
+            UNSAFE.putLong(bytes, BYTE_ARRAY_OFFSET + index, BIG_ENDIAN ? Long.reverseBytes(value) : value);
+        }
+
+        /** Big endian. */
+        public void putLongBE(byte[] bytes, int index, long value) {
+            UNSAFE.putLong(bytes, BYTE_ARRAY_OFFSET + index, BIG_ENDIAN ? value : Long.reverseBytes(value));
+        }
     }
 
     private static class SafeImpl extends PrimitiveArrayUtils {
@@ -246,6 +275,32 @@ public abstract class PrimitiveArrayUtils {
             return (chars[index] & 0xffff) | ((chars[index + 1] & 0xffff) << 16);
         }
 
+        public void putIntLE(byte[] bytes, int index, int value) {
+            bytes[index] = (byte) value;
+            bytes[index + 1] = (byte) (value >>> 8);
+            bytes[index + 2] = (byte) (value >>> 16);
+            bytes[index + 3] = (byte) (value >>> 24);
+        }
+
+        public void putIntBE(byte[] bytes, int index, int value) {
+            bytes[index] = (byte) (value >>> 24);
+            bytes[index + 1] = (byte) (value >>> 16);
+            bytes[index + 2] = (byte) (value >>> 8);
+            bytes[index + 3] = (byte) value;
+        }
+
+        public void putLongLE(byte[] bytes, int index, long value) {
+            for (int i = 0; i < 8; i++) {
+                bytes[index + i] = (byte) (value >>> (i << 3));
+            }
+        }
+
+        public void putLongBE(byte[] bytes, int index, long value) {
+            for (int i = 0; i < 8; i++) {
+                bytes[index + 7 - i] = (byte) (value >>> (i << 3));
+            }
+        }
+
     }
 
 }
@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2014-2020 Markus Junginger, greenrobot (http://greenrobot.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.greenrobot.essentials.collections;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A multimap for concurrent use without a global lock (see {@link AbstractMultimap} for the synchronized variant).
+ * <p>
+ * Keys are stored in a {@link ConcurrentHashMap}. The collection of a key is never modified once it was stored;
+ * element updates copy the collection and atomically replace it (per key). Thus, threads working on different keys
+ * never contend, reads never block, and collections returned by {@link #get(Object)} are unmodifiable snapshots
+ * that are safe to iterate. This makes element updates O(n) for the number of elements of the key, which is
+ * usually fine for the typically small collections per key.
+ * <p>
+ * Like ConcurrentHashMap, this does not support null keys or null collections. Methods looking at multiple keys (e.g.
+ * {@link #containsElement(Object)}) do not see a consistent snapshot of all keys while other threads modify the
+ * multimap. The total element count is maintained atomically.
+ */
+public abstract class AbstractConcurrentMultimap<K, V, C extends Collection<V>> extends AbstractMultimap<K, V, C> {
+
+    protected final ConcurrentMap<K, C> concurrentMap;
+
+    private final AtomicInteger elementCount = new AtomicInteger();
+
+    protected AbstractConcurrentMultimap() {
+        this(new ConcurrentHashMap<K, C>());
+    }
+
+    protected AbstractConcurrentMultimap(ConcurrentMap<K, C> map) {
+        super(map);
+        concurrentMap = map;
+    }
+
+    /** Wraps the given collection to prevent modifications by callers. */
+    abstract protected C unmodifiable(C collection);
+
+    private C copyOf(Collection<? extends V> collection) {
+        C copy = createNewCollection();
+        copy.addAll(collection);
+        return copy;
+    }
+
+    /** Replaces the current collection for the key, or adds a new one if current is null. */
+    private boolean replaceCollection(K key, C current, C newCollection) {
+        boolean replaced;
+        if (current == null) {
+            replaced = concurrentMap.putIfAbsent(key, newCollection) == null;
+        } else {
+            replaced = concurrentMap.replace(key, current, newCollection);
+        }
+        if (replaced) {
+            adjustElementCount(newCollection.size() - (current != null ? current.size() : 0));
+        }
+        return replaced;
+    }
+
+    @Override
+    protected void adjustElementCount(int delta) {
+        elementCount.addAndGet(delta);
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends C> m) {
+        for (Entry<? extends K, ? extends C> entry : m.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public int size() {
+        return concurrentMap.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return concurrentMap.isEmpty();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return concurrentMap.containsKey(key);
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        return concurrentMap.containsValue(value);
+    }
+
+    /** @return an unmodifiable snapshot of the elements for the given key, or null if there are none. */
+    @Override
+    public C get(Object key) {
+        C collection = concurrentMap.get(key);
+        return collection != null ? unmodifiable(collection) : null;
+    }
+
+    @Override
+    public C remove(Object key) {
+        C collection = concurrentMap.remove(key);
+        if (collection != null) {
+            adjustElementCount(-collection.size());
+            return unmodifiable(collection);
+        }
+        return null;
+    }
+
+    /** Removes key by key to keep the element count consistent with concurrent modifications. */
+    @Override
+    public void clear() {
+        for (K key : concurrentMap.keySet()) {
+            remove(key);
+        }
+    }
+
+    /** @return unmodifiable view of the keys; use {@link #remove(Object)} to remove keys. */
+    @Override
+    public Set<K> keySet() {
+        return Collections.unmodifiableSet(concurrentMap.keySet());
+    }
+
+    /** @return unmodifiable view of the snapshot collections; do not modify them. */
+    @Override
+    public Collection<C> values() {
+        return Collections.unmodifiableCollection(concurrentMap.values());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return concurrentMap.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return concurrentMap.hashCode();
+    }
+
+    /**
+     * @return number of elements stored for given key after storing the given value.
+     */
+    @Override
+    public int putElement(K key, V value) {
+        while (true) {
+            C current = concurrentMap.get(key);
+            C newCollection = current != null ? copyOf(current) : createNewCollection();
+            newCollection.add(value);
+            if (replaceCollection(key, current, newCollection)) {
+                return newCollection.size();
+            }
+        }
+    }
+
+    /** Stores a copy of the given collection; the returned previous collection is unmodifiable. */
+    @Override
+    public C put(K key, C value) {
+        C copy = copyOf(value);
+        C previous = concurrentMap.put(key, copy);
+        adjustElementCount(copy.size() - (previous != null ? previous.size() : 0));
+        return previous != null ? unmodifiable(previous) : null;
+    }
+
+    /** @return unmodifiable view of the entries; do not modify the collections. */
+    @Override
+    public Set<Entry<K, C>> entrySet() {
+        return Collections.unmodifiableSet(concurrentMap.entrySet());
+    }
+
+    /** @return true if the collection was changed. */
+    @Override
+    public boolean putElements(K key, Collection<V> values) {
+        while (true) {
+            C current = concurrentMap.get(key);
+            C newCollection = current != null ? copyOf(current) : createNewCollection();
+            if (!newCollection.addAll(values)) {
+                return false;
+            }
+            if (replaceCollection(key, current, newCollection)) {
+                return true;
+            }
+        }
+    }
+
+    /** @return true if the given element was removed. */
+    @Override
+    public boolean removeElement(K key, V value) {
+        while (true) {
+            C current = concurrentMap.get(key);
+            if (current == null || !current.contains(value)) {
+                return false;
+            }
+            C newCollection = copyOf(current);
+            newCollection.remove(value);
+            boolean replaced;
+            if (newCollection.isEmpty()) {
+                replaced = concurrentMap.remove(key, current);
+            } else {
+                replaced = concurrentMap.replace(key, current, newCollection);
+            }
+            if (replaced) {
+                adjustElementCount(newCollection.size() - current.size());
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public int countElements(K key) {
+        C collection = concurrentMap.get(key);
+        return collection != null ? collection.size() : 0;
+    }
+
+    /** O(1) and exact, as collections cannot be modified directly. */
+    @Override
+    public int countElements() {
+        return elementCount.get();
+    }
+
+    /** Same as {@link #countElements()}. */
+    @Override
+    public int getTrackedElementCount() {
+        return elementCount.get();
+    }
+
+    /** Not required for this class as collections cannot be modified directly; returns {@link #countElements()}. */
+    @Override
+    public int recountElements() {
+        return elementCount.get();
+    }
+
+    @Override
+    public boolean containsElement(K key, V value) {
+        C collection = concurrentMap.get(key);
+        return collection != null && collection.contains(value);
+    }
+
+    @Override
+    public boolean containsElement(V value) {
+        for (C collection : concurrentMap.values()) {
+            if (collection.contains(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public C valuesElements() {
+        C all = createNewCollection();
+        for (C collection : concurrentMap.values()) {
+            all.addAll(collection);
+        }
+        return all;
+    }
+
+    /** Weakly consistent (see ConcurrentHashMap); elements of a key are iterated from a snapshot. */
+    @Override
+    public Iterator<V> elementsIterator() {
+        return new ElementsIterator<>(concurrentMap.values().iterator());
+    }
+
+}
@@ -17,27 +17,76 @@
 package org.greenrobot.essentials.collections;
 
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 /**
  * Combines a Map with List values to provide simple way to store multiple values for a key (multimap).
  * <p>
  * Threading note: All methods are synchronized
+ * <p>
+ * The total element count is additionally tracked on modification, so {@link #getTrackedElementCount()} is O(1). It
+ * only tracks changes made through the methods of this class; if you modify collections obtained from this multimap
+ * directly (e.g. via {@link #get(Object)}) or remove keys via map views (e.g. {@link #keySet()}), call
+ * {@link #recountElements()} afterwards. {@link #countElements()} is always exact.
+ * <p>
+ * Optionally, the count of elements per key can be limited: once a key reached the maximum, putting another element
+ * drops the oldest element of the key (according to the iteration order of the collection).
  */
 public abstract class AbstractMultimap<K, V, C extends Collection<V>> implements Map<K, C> {
 
     protected Map<K, C> map;
 
+    /** Maximum count of elements per key, or 0 for no limit. */
+    protected final int maxElementsPerKey;
+
+    private int elementCount;
+
     protected AbstractMultimap(Map<K, C> map) {
+        this(map, 0);
+    }
+
+    /** @param maxElementsPerKey maximum count of elements per key, or 0 for no limit */
+    protected AbstractMultimap(Map<K, C> map, int maxElementsPerKey) {
+        if (maxElementsPerKey < 0) {
+            throw new IllegalArgumentException("Max elements per key must not be negative: " + maxElementsPerKey);
+        }
         this.map = map;
+        this.maxElementsPerKey = maxElementsPerKey;
     }
 
     abstract protected C createNewCollection();
 
+    /**
+     * Adjusts the maintained element count; all modifications must go through this method.
+     */
+    protected void adjustElementCount(int delta) {
+        elementCount += delta;
+    }
+
+    /** Drops the oldest elements if the collection exceeds the maximum count of elements per key. */
+    protected void evictExcessElements(C collection) {
+        if (maxElementsPerKey > 0) {
+            while (collection.size() > maxElementsPerKey) {
+                // Iterators of some collections (e.g. CopyOnWriteArraySet) do not support remove
+                V oldest = collection.iterator().next();
+                collection.remove(oldest);
+            }
+        }
+    }
+
+    /** Maximum count of elements per key, or 0 for no limit. */
+    public int getMaxElementsPerKey() {
+        return maxElementsPerKey;
+    }
+
     @Override
-    public void putAll(Map<? extends K, ? extends C> m) {
-        map.putAll(m);
+    public synchronized void putAll(Map<? extends K, ? extends C> m) {
+        for (Entry<? extends K, ? extends C> entry : m.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
     }
 
     @Override
@@ -67,12 +116,17 @@ public abstract class AbstractMultimap<K, V, C extends Collection<V>> implements
 
     @Override
     public synchronized C remove(Object key) {
-        return map.remove(key);
+        C collection = map.remove(key);
+        if (collection != null) {
+            adjustElementCount(-collection.size());
+        }
+        return collection;
     }
 
     @Override
     public synchronized void clear() {
         map.clear();
+        adjustElementCount(-elementCount);
     }
 
     @Override
@@ -104,13 +158,24 @@ public abstract class AbstractMultimap<K, V, C extends Collection<V>> implements
             collection = createNewCollection();
             map.put(key, collection);
         }
+        int sizeBefore = collection.size();
         collection.add(value);
-        return collection.size();
+        evictExcessElements(collection);
+        int size = collection.size();
+        adjustElementCount(size - sizeBefore);
+        return size;
     }
 
+    /**
+     * Puts the given collection as is. If it exceeds the maximum count of elements per key, its oldest elements are
+     * removed from it before.
+     */
     @Override
     public synchronized C put(K key, C value) {
-        return map.put(key, value);
+        evictExcessElements(value);
+        C previous = map.put(key, value);
+        adjustElementCount(value.size() - (previous != null ? previous.size() : 0));
+        return previous;
     }
 
     @Override
@@ -125,7 +190,11 @@ public abstract class AbstractMultimap<K, V, C extends Collection<V>> implements
             collection = createNewCollection();
             map.put(key, collection);
         }
-        return collection.addAll(values);
+        int sizeBefore = collection.size();
+        boolean changed = collection.addAll(values);
+        evictExcessElements(collection);
+        adjustElementCount(collection.size() - sizeBefore);
+        return changed;
     }
 
     /** @return true if the given element was removed. */
@@ -135,6 +204,9 @@ public abstract class AbstractMultimap<K, V, C extends Collection<V>> implements
             return false;
         } else {
             boolean removed = collection.remove(value);
+            if (removed) {
+                adjustElementCount(-1);
+            }
             if (collection.isEmpty()) {
                 map.remove(key);
             }
@@ -151,11 +223,31 @@ public abstract class AbstractMultimap<K, V, C extends Collection<V>> implements
         }
     }
 
+    /** Total count of elements for all keys; always exact as it iterates over all keys. */
     public synchronized int countElements() {
+        return recountElements();
+    }
+
+    /**
+     * Total count of elements for all keys in O(1). Only exact if collections were modified through the methods of
+     * this class (see class notes); otherwise, call {@link #recountElements()} first.
+     */
+    public synchronized int getTrackedElementCount() {
+        return elementCount;
+    }
+
+    /**
+     * Counts all elements by iterating over all keys and updates the tracked count; only required for
+     * {@link #getTrackedElementCount()} after collections were modified directly.
+     *
+     * @return total count of elements for all keys
+     */
+    public synchronized int recountElements() {
         int count = 0;
         for (C collection : map.values()) {
             count += collection.size();
         }
+        adjustElementCount(count - elementCount);
         return count;
     }
 
@@ -177,6 +269,7 @@ public abstract class AbstractMultimap<K, V, C extends Collection<V>> implements
         return false;
     }
 
+    /** Copies all elements of all keys into a new collection; consider {@link #elementsIterator()} to avoid copying. */
     public synchronized C valuesElements() {
         C all = createNewCollection();
         for (C collection : map.values()) {
@@ -185,4 +278,47 @@ public abstract class AbstractMultimap<K, V, C extends Collection<V>> implements
         return all;
     }
 
+    /**
+     * Iterates over all elements of all keys without copying them. Like for Collections.synchronizedMap(), you must
+     * synchronize on this multimap while iterating if other threads may modify it. The iterator does not support
+     * removal; use {@link #removeElement(Object, Object)} instead.
+     */
+    public Iterator<V> elementsIterator() {
+        return new ElementsIterator<>(map.values().iterator());
+    }
+
+    /** Iterates over the elements of multiple collections (read-only). */
+    static class ElementsIterator<V> implements Iterator<V> {
+        private final Iterator<? extends Collection<V>> collectionsIterator;
+        private Iterator<V> currentIterator;
+
+        ElementsIterator(Iterator<? extends Collection<V>> collectionsIterator) {
+            this.collectionsIterator = collectionsIterator;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (currentIterator == null || !currentIterator.hasNext()) {
+                if (!collectionsIterator.hasNext()) {
+                    return false;
+                }
+                currentIterator = collectionsIterator.next().iterator();
+            }
+            return true;
+        }
+
+        @Override
+        public V next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return currentIterator.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Use removeElement() of the multimap");
+        }
+    }
+
 }
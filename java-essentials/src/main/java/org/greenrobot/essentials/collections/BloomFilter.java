@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2014-2020 Markus Junginger, greenrobot (http://greenrobot.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.greenrobot.essentials.collections;
+
+import org.greenrobot.essentials.hash.Murmur3F;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A probabilistic set to check if a long value or byte array is "definitely not present" before doing expensive
+ * look-ups (e.g. in a {@link LongHashSet} or a database). {@link #mightContain(long)} never returns false for a
+ * value that was put, but may return true for values that were never put (false positive).
+ * <p>
+ * This is a blocked Bloom filter: all bits of a value are set in a single 512 bit block (a typical cache line), so a
+ * check touches only one cache line. Hashes are calculated using {@link Murmur3F}.
+ * <p>
+ * This class is thread-safe; bits are set using CAS, so puts from multiple threads do not block each other.
+ * Use {@link #toBytes()} and {@link #fromBytes(byte[])} to store and restore filters.
+ */
+public class BloomFilter {
+    private static final int BLOCK_BITS = 512;
+    private static final int BLOCK_LONGS = BLOCK_BITS / 64;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_LENGTH = 16;
+    private static final int MAX_HASH_COUNT = 32;
+
+    /**
+     * Blocking increases the false positive rate compared to a classic Bloom filter with the same size. Additional
+     * bits compensate for this for typical false positive rates.
+     */
+    private static final double BLOCKED_BITS_FACTOR = 1.2;
+
+    private final AtomicLongArray bits;
+    private final int blockCount;
+    private final int hashCount;
+    private final int seed;
+
+    /**
+     * Creates a filter sized for the expected count of values to yield (approximately) the given false positive rate.
+     *
+     * @param expectedInsertions count of distinct values expected to be put into the filter
+     * @param falsePositiveRate  e.g. 0.01 for 1 %
+     */
+    public static BloomFilter create(long expectedInsertions, double falsePositiveRate) {
+        if (expectedInsertions <= 0) {
+            throw new IllegalArgumentException("Expected insertions must be positive: " + expectedInsertions);
+        }
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("False positive rate must be between 0 and 1: " + falsePositiveRate);
+        }
+        double ln2 = Math.log(2);
+        double bitCount = -expectedInsertions * Math.log(falsePositiveRate) / (ln2 * ln2) * BLOCKED_BITS_FACTOR;
+        long blockCount = (long) Math.ceil(bitCount / BLOCK_BITS);
+        if (blockCount > Integer.MAX_VALUE / BLOCK_LONGS) {
+            throw new IllegalArgumentException("Filter would be too large for " + expectedInsertions + " values");
+        }
+        int hashCount = (int) Math.round(-Math.log(falsePositiveRate) / ln2);
+        hashCount = Math.max(1, Math.min(MAX_HASH_COUNT, hashCount));
+        return new BloomFilter((int) blockCount, hashCount, 0);
+    }
+
+    /**
+     * Restores a filter previously serialized using {@link #toBytes()}.
+     *
+     * @throws IllegalArgumentException if the bytes are not a valid filter
+     */
+    public static BloomFilter fromBytes(byte[] bytes) {
+        if (bytes.length < HEADER_LENGTH) {
+            throw new IllegalArgumentException("Not a valid Bloom filter, length: " + bytes.length);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int version = buffer.getInt();
+        if (version != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unsupported Bloom filter format version: " + version);
+        }
+        int blockCount = buffer.getInt();
+        int hashCount = buffer.getInt();
+        int seed = buffer.getInt();
+        // Long arithmetic: a crafted block count must not overflow into a matching length
+        if (blockCount <= 0 || bytes.length != HEADER_LENGTH + (long) blockCount * BLOCK_LONGS * 8) {
+            throw new IllegalArgumentException("Not a valid Bloom filter, length: " + bytes.length);
+        }
+        BloomFilter filter = new BloomFilter(blockCount, hashCount, seed);
+        AtomicLongArray bits = filter.bits;
+        for (int i = 0; i < bits.length(); i++) {
+            bits.lazySet(i, buffer.getLong());
+        }
+        return filter;
+    }
+
+    /**
+     * @param blockCount count of 512 bit blocks
+     * @param hashCount  count of bits set per value
+     * @param seed       Murmur3F seed; filters can only be merged or compared if they use the same seed
+     */
+    public BloomFilter(int blockCount, int hashCount, int seed) {
+        if (blockCount <= 0 || blockCount > Integer.MAX_VALUE / BLOCK_LONGS) {
+            throw new IllegalArgumentException("Illegal block count: " + blockCount);
+        }
+        if (hashCount <= 0 || hashCount > MAX_HASH_COUNT) {
+            throw new IllegalArgumentException("Illegal hash count: " + hashCount);
+        }
+        this.blockCount = blockCount;
+        this.hashCount = hashCount;
+        this.seed = seed;
+        bits = new AtomicLongArray(blockCount * BLOCK_LONGS);
+    }
+
+    /**
+     * Puts the given value into the filter.
+     *
+     * @return true if the filter changed, i.e. the value was definitely not contained before
+     */
+    public boolean put(long value) {
+        Murmur3F murmur = new Murmur3F(seed);
+        murmur.updateLongLE(value);
+        return put(murmur.getValue(), murmur.getValueHigh());
+    }
+
+    /**
+     * Puts the given bytes into the filter.
+     *
+     * @return true if the filter changed, i.e. the value was definitely not contained before
+     */
+    public boolean put(byte[] value) {
+        Murmur3F murmur = new Murmur3F(seed);
+        murmur.update(value);
+        return put(murmur.getValue(), murmur.getValueHigh());
+    }
+
+    /** @return false if the value is definitely not contained; true if it was probably put before. */
+    public boolean mightContain(long value) {
+        Murmur3F murmur = new Murmur3F(seed);
+        murmur.updateLongLE(value);
+        return mightContain(murmur.getValue(), murmur.getValueHigh());
+    }
+
+    /** @return false if the value is definitely not contained; true if it was probably put before. */
+    public boolean mightContain(byte[] value) {
+        Murmur3F murmur = new Murmur3F(seed);
+        murmur.update(value);
+        return mightContain(murmur.getValue(), murmur.getValueHigh());
+    }
+
+    /** The lower hash selects the block, the higher hash is used for double hashing of the bits inside the block. */
+    private boolean put(long hashLow, long hashHigh) {
+        final AtomicLongArray bits = this.bits;
+        final int blockOffset = blockIndex(hashLow) * BLOCK_LONGS;
+        final int hashA = (int) hashHigh;
+        final int hashB = (int) (hashHigh >>> 32) | 1;
+        boolean changed = false;
+        for (int i = 0; i < hashCount; i++) {
+            int bit = (hashA + i * hashB) & (BLOCK_BITS - 1);
+            int index = blockOffset + (bit >>> 6);
+            long mask = 1L << bit;
+            while (true) {
+                long word = bits.get(index);
+                if ((word & mask) != 0) {
+                    break;
+                } else if (bits.compareAndSet(index, word, word | mask)) {
+                    changed = true;
+                    break;
+                }
+            }
+        }
+        return changed;
+    }
+
+    private boolean mightContain(long hashLow, long hashHigh) {
+        final AtomicLongArray bits = this.bits;
+        final int blockOffset = blockIndex(hashLow) * BLOCK_LONGS;
+        final int hashA = (int) hashHigh;
+        final int hashB = (int) (hashHigh >>> 32) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            int bit = (hashA + i * hashB) & (BLOCK_BITS - 1);
+            if ((bits.get(blockOffset + (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int blockIndex(long hash) {
+        return (int) ((hash & Long.MAX_VALUE) % blockCount);
+    }
+
+    /** Size of the filter in bits. */
+    public long getBitCount() {
+        return (long) blockCount * BLOCK_BITS;
+    }
+
+    /** Count of bits set per value. */
+    public int getHashCount() {
+        return hashCount;
+    }
+
+    public int getSeed() {
+        return seed;
+    }
+
+    /** Fraction of bits set (0..1); a rough indicator of how "full" the filter is. */
+    public double getFillRatio() {
+        long setBits = 0;
+        for (int i = 0; i < bits.length(); i++) {
+            setBits += Long.bitCount(bits.get(i));
+        }
+        return (double) setBits / getBitCount();
+    }
+
+    /** Removes all values from the filter. */
+    public void clear() {
+        for (int i = 0; i < bits.length(); i++) {
+            bits.set(i, 0);
+        }
+    }
+
+    /**
+     * Serializes this filter, e.g. to store it to a file. Use {@link #fromBytes(byte[])} to restore the filter.
+     * If values are put concurrently, those may or may not be included.
+     *
+     * @throws IllegalStateException if the filter is too large for a byte array (more than about 2 GB)
+     */
+    public byte[] toBytes() {
+        long length = HEADER_LENGTH + (long) bits.length() * 8;
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Filter too large to serialize: " + length + " bytes");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) length);
+        buffer.putInt(FORMAT_VERSION);
+        buffer.putInt(blockCount);
+        buffer.putInt(hashCount);
+        buffer.putInt(seed);
+        for (int i = 0; i < bits.length(); i++) {
+            buffer.putLong(bits.get(i));
+        }
+        return buffer.array();
+    }
+
+}
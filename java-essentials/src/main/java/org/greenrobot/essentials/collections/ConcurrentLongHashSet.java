@@ -0,0 +1,376 @@
+/*
+ * Copyright (C) 2014-2020 Markus Junginger, greenrobot (http://greenrobot.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.greenrobot.essentials.collections;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A thread-safe hash set for long values optimized for read-mostly use (e.g. filtering duplicates).
+ * <p>
+ * Unlike {@link LongHashSet#createSynchronized()}, {@link #contains(long)} never locks and is wait-free. Values are
+ * stored in an open-addressed (linear probing) long array; {@link #add(long)} and {@link #remove(long)} claim slots
+ * using CAS, so multiple threads can add values in parallel. Only resizing the internal table is exclusive: threads
+ * adding or removing values wait until the resizing thread is done, while readers keep reading the old table.
+ * <p>
+ * Two long values are reserved internally as markers for empty and removed slots; those values are tracked separately
+ * and thus can be stored like any other value.
+ * <p>
+ * Removed values leave markers in the table until the next resize; for remove-heavy workloads, consider
+ * {@link LongHashSet#createSynchronized()}.
+ */
+public class ConcurrentLongHashSet {
+    protected static final int DEFAULT_CAPACITY = 16;
+
+    /** Marks a slot that was never used. */
+    private static final long EMPTY = 0;
+
+    /** Marks a slot that was used by a removed value (tombstone). */
+    private static final long REMOVED = Long.MIN_VALUE;
+
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private static final int ADD_RESULT_ADDED = 1;
+    private static final int ADD_RESULT_PRESENT = 0;
+    private static final int ADD_RESULT_TABLE_FULL = -1;
+
+    /** Table and its mask are swapped together to give readers a consistent view. */
+    private static final class Table {
+        final AtomicLongArray slots;
+        final int mask;
+        /** Resize once used slots (values and tombstones) exceed this. */
+        final int threshold;
+
+        Table(int capacity) {
+            slots = new AtomicLongArray(capacity);
+            mask = capacity - 1;
+            threshold = capacity / 4 * 3;
+        }
+    }
+
+    private final ReentrantReadWriteLock resizeLock = new ReentrantReadWriteLock();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicInteger usedSlots = new AtomicInteger();
+
+    private volatile Table table;
+    private volatile boolean containsEmptyMarker;
+    private volatile boolean containsRemovedMarker;
+
+    public ConcurrentLongHashSet() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /** @param capacity initial capacity, will be rounded up to the next power of 2. */
+    public ConcurrentLongHashSet(int capacity) {
+        table = new Table(tableSizeFor(capacity));
+    }
+
+    private static int tableSizeFor(int capacity) {
+        if (capacity >= MAX_CAPACITY) {
+            return MAX_CAPACITY;
+        }
+        int tableSize = 4;
+        while (tableSize < capacity) {
+            tableSize <<= 1;
+        }
+        return tableSize;
+    }
+
+    /** Linear probing needs a good distribution in the lower bits; key spreading is based on Murmur3's fmix64. */
+    private static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    /** Wait-free: does not lock and does not retry. */
+    public boolean contains(long key) {
+        if (key == EMPTY) {
+            return containsEmptyMarker;
+        } else if (key == REMOVED) {
+            return containsRemovedMarker;
+        }
+        final Table table = this.table;
+        final AtomicLongArray slots = table.slots;
+        final int mask = table.mask;
+        int index = hash(key) & mask;
+        for (int probes = 0; probes <= mask; probes++) {
+            long slotKey = slots.get(index);
+            if (slotKey == key) {
+                return true;
+            } else if (slotKey == EMPTY) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Adds the given value to the set.
+     *
+     * @return true if the value was actually new
+     */
+    public boolean add(long key) {
+        if (key == EMPTY || key == REMOVED) {
+            return addMarkerValue(key);
+        }
+        while (true) {
+            resizeLock.readLock().lock();
+            try {
+                Table table = this.table;
+                if (usedSlots.get() < table.threshold) {
+                    int result = addToTable(table, key);
+                    if (result == ADD_RESULT_ADDED) {
+                        size.incrementAndGet();
+                        return true;
+                    } else if (result == ADD_RESULT_PRESENT) {
+                        return false;
+                    }
+                }
+            } finally {
+                resizeLock.readLock().unlock();
+            }
+            resize();
+        }
+    }
+
+    private boolean addMarkerValue(long key) {
+        // Rare case, so keep it simple
+        resizeLock.writeLock().lock();
+        try {
+            boolean added;
+            if (key == EMPTY) {
+                added = !containsEmptyMarker;
+                containsEmptyMarker = true;
+            } else {
+                added = !containsRemovedMarker;
+                containsRemovedMarker = true;
+            }
+            if (added) {
+                size.incrementAndGet();
+            }
+            return added;
+        } finally {
+            resizeLock.writeLock().unlock();
+        }
+    }
+
+    /** Slots only change from empty to a value and from a value to removed, so CAS on the first empty slot is safe. */
+    private int addToTable(Table table, long key) {
+        final AtomicLongArray slots = table.slots;
+        final int mask = table.mask;
+        int index = hash(key) & mask;
+        for (int probes = 0; probes <= mask; ) {
+            long slotKey = slots.get(index);
+            if (slotKey == key) {
+                return ADD_RESULT_PRESENT;
+            } else if (slotKey == EMPTY) {
+                if (slots.compareAndSet(index, EMPTY, key)) {
+                    usedSlots.incrementAndGet();
+                    return ADD_RESULT_ADDED;
+                }
+                // Lost the race: check again what is in the slot now (could be the same key)
+                continue;
+            }
+            index = (index + 1) & mask;
+            probes++;
+        }
+        // Concurrent adds exceeded the threshold and filled the table
+        return ADD_RESULT_TABLE_FULL;
+    }
+
+    /**
+     * Removes the given value from the set.
+     *
+     * @return true if the value was actually removed
+     */
+    public boolean remove(long key) {
+        if (key == EMPTY || key == REMOVED) {
+            return removeMarkerValue(key);
+        }
+        resizeLock.readLock().lock();
+        try {
+            final Table table = this.table;
+            final AtomicLongArray slots = table.slots;
+            final int mask = table.mask;
+            int index = hash(key) & mask;
+            for (int probes = 0; probes <= mask; probes++) {
+                long slotKey = slots.get(index);
+                if (slotKey == key) {
+                    // A value is never stored twice, so only one thread can succeed here
+                    if (slots.compareAndSet(index, key, REMOVED)) {
+                        size.decrementAndGet();
+                        return true;
+                    }
+                    return false;
+                } else if (slotKey == EMPTY) {
+                    return false;
+                }
+                index = (index + 1) & mask;
+            }
+            return false;
+        } finally {
+            resizeLock.readLock().unlock();
+        }
+    }
+
+    private boolean removeMarkerValue(long key) {
+        resizeLock.writeLock().lock();
+        try {
+            boolean removed;
+            if (key == EMPTY) {
+                removed = containsEmptyMarker;
+                containsEmptyMarker = false;
+            } else {
+                removed = containsRemovedMarker;
+                containsRemovedMarker = false;
+            }
+            if (removed) {
+                size.decrementAndGet();
+            }
+            return removed;
+        } finally {
+            resizeLock.writeLock().unlock();
+        }
+    }
+
+    private void resize() {
+        resizeLock.writeLock().lock();
+        try {
+            Table table = this.table;
+            if (usedSlots.get() >= table.threshold) {
+                // Tombstones are dropped, so the new table may be smaller than twice the old one
+                int values = Math.max(size.get(), DEFAULT_CAPACITY);
+                int newCapacity = tableSizeFor((int) Math.min(values * 2L, MAX_CAPACITY));
+                if (newCapacity <= table.slots.length() && values >= table.threshold) {
+                    // Already at maximum capacity and there are no tombstones to drop
+                    throw new IllegalStateException("Set is full: " + values + " values");
+                }
+                setTable(table, newCapacity);
+            }
+        } finally {
+            resizeLock.writeLock().unlock();
+        }
+    }
+
+    /** Must hold the write lock. */
+    private void setTable(Table oldTable, int newCapacity) {
+        Table newTable = new Table(newCapacity);
+        AtomicLongArray oldSlots = oldTable.slots;
+        AtomicLongArray newSlots = newTable.slots;
+        int newMask = newTable.mask;
+        int used = 0;
+        for (int i = 0; i < oldSlots.length(); i++) {
+            long key = oldSlots.get(i);
+            if (key != EMPTY && key != REMOVED) {
+                int index = hash(key) & newMask;
+                while (newSlots.get(index) != EMPTY) {
+                    index = (index + 1) & newMask;
+                }
+                newSlots.lazySet(index, key);
+                used++;
+            }
+        }
+        usedSlots.set(used);
+        // Volatile write publishes the new slots to lock-free readers
+        table = newTable;
+    }
+
+    /**
+     * Returns all keys in no particular order. Keys added or removed concurrently may or may not be included.
+     */
+    public long[] keys() {
+        LongArrayBuilder builder = new LongArrayBuilder(size.get());
+        if (containsEmptyMarker) {
+            builder.add(EMPTY);
+        }
+        if (containsRemovedMarker) {
+            builder.add(REMOVED);
+        }
+        AtomicLongArray slots = table.slots;
+        for (int i = 0; i < slots.length(); i++) {
+            long key = slots.get(i);
+            if (key != EMPTY && key != REMOVED) {
+                builder.add(key);
+            }
+        }
+        return builder.toArray();
+    }
+
+    public void clear() {
+        resizeLock.writeLock().lock();
+        try {
+            containsEmptyMarker = false;
+            containsRemovedMarker = false;
+            table = new Table(table.slots.length());
+            usedSlots.set(0);
+            size.set(0);
+        } finally {
+            resizeLock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    /** Prepares the set to hold the given count of values without resizing. */
+    public void reserveRoom(int entryCount) {
+        resizeLock.writeLock().lock();
+        try {
+            Table table = this.table;
+            int newCapacity = tableSizeFor((int) Math.min(entryCount * 4L / 3 + 1, MAX_CAPACITY));
+            if (newCapacity > table.slots.length()) {
+                setTable(table, newCapacity);
+            }
+        } finally {
+            resizeLock.writeLock().unlock();
+        }
+    }
+
+    /** Collects keys without knowing the final count in advance (concurrent modifications). */
+    private static class LongArrayBuilder {
+        private long[] values;
+        private int count;
+
+        LongArrayBuilder(int initialCapacity) {
+            values = new long[Math.max(initialCapacity, 4)];
+        }
+
+        void add(long value) {
+            if (count == values.length) {
+                long[] newValues = new long[count * 2];
+                System.arraycopy(values, 0, newValues, 0, count);
+                values = newValues;
+            }
+            values[count++] = value;
+        }
+
+        long[] toArray() {
+            if (count == values.length) {
+                return values;
+            }
+            long[] result = new long[count];
+            System.arraycopy(values, 0, result, 0, count);
+            return result;
+        }
+    }
+
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2014-2020 Markus Junginger, greenrobot (http://greenrobot.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.greenrobot.essentials.collections;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Like {@link Multimap}, but for concurrent use without a global lock; see {@link AbstractConcurrentMultimap}.
+ */
+// Top level class to get rid of 3rd generic collection parameter for more convenient usage.
+public class ConcurrentMultimap<K, V> extends AbstractConcurrentMultimap<K, V, List<V>> {
+
+    public static <K, V> ConcurrentMultimap<K, V> create() {
+        return new ConcurrentMultimap<>();
+    }
+
+    protected ConcurrentMultimap() {
+    }
+
+    @Override
+    protected List<V> createNewCollection() {
+        return new ArrayList<>();
+    }
+
+    @Override
+    protected List<V> unmodifiable(List<V> collection) {
+        return Collections.unmodifiableList(collection);
+    }
+
+}
@@ -20,7 +20,8 @@ import java.util.Arrays;
 
 /**
  * An minimalistic hash set optimized for long values. The default implementation is not thread-safe, but you can get a
- * synchronized variant using one of the static createSynchronized methods.
+ * synchronized variant using one of the static createSynchronized methods. For concurrent, read-mostly use (many
+ * contains calls), prefer {@link ConcurrentLongHashSet}.
  *
  * @author Markus
  */
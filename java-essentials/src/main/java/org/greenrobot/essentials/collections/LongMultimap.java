@@ -0,0 +1,424 @@
+/*
+ * Copyright (C) 2014-2020 Markus Junginger, greenrobot (http://greenrobot.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.greenrobot.essentials.collections;
+
+import java.util.Arrays;
+
+/**
+ * A minimalistic multimap optimized for long keys and long values (e.g. user ID to event IDs). Like
+ * {@link Multimap}, it stores multiple values for a key, but neither keys nor values are boxed: values are stored in
+ * a primitive long array per key. Arrays of removed keys and outgrown arrays are pooled for reuse, so putting
+ * elements usually does not allocate once the map reached a steady state.
+ * <p>
+ * Values are kept in insertion order and may contain duplicates (like lists in {@link Multimap}).
+ * <p>
+ * The default implementation is not thread-safe, but you can get a synchronized variant using one of the static
+ * createSynchronized methods.
+ */
+public class LongMultimap {
+    protected static final int DEFAULT_CAPACITY = 16;
+
+    /** Initial capacity of value arrays; arrays grow by doubling, so all array sizes are this times a power of 2. */
+    private static final int VALUES_CAPACITY_MIN = 4;
+
+    /** Size classes 4, 8, ..., 4 * 2^(POOL_SIZE_CLASSES - 1); larger arrays are not pooled. */
+    private static final int POOL_SIZE_CLASSES = 12;
+
+    private static final int POOL_MAX_ARRAYS_PER_CLASS = 16;
+
+    final static class Entry {
+        long key;
+        long[] values;
+        int count;
+        Entry next;
+    }
+
+    /**
+     * Creates a synchronized (thread-safe) LongMultimap.
+     */
+    public static LongMultimap createSynchronized() {
+        return new Synchronized(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a synchronized (thread-safe) LongMultimap using the given initial capacity.
+     */
+    public static LongMultimap createSynchronized(int capacity) {
+        return new Synchronized(capacity);
+    }
+
+    private Entry[] table;
+    private int capacity;
+    private int threshold;
+    private int size;
+    private int elementCount;
+
+    /** Recycled entries linked via next. */
+    private Entry freeEntries;
+    private final long[][][] pool = new long[POOL_SIZE_CLASSES][POOL_MAX_ARRAYS_PER_CLASS][];
+    private final int[] poolCounts = new int[POOL_SIZE_CLASSES];
+
+    public LongMultimap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public LongMultimap(int capacity) {
+        this.capacity = capacity;
+        this.threshold = capacity * 4 / 3;
+        this.table = new Entry[capacity];
+    }
+
+    private Entry getEntry(long key) {
+        final int index = ((((int) (key >>> 32)) ^ ((int) (key))) & 0x7fffffff) % capacity;
+        for (Entry entry = table[index]; entry != null; entry = entry.next) {
+            if (entry.key == key) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    public boolean containsKey(long key) {
+        return getEntry(key) != null;
+    }
+
+    /**
+     * @return number of elements stored for given key after storing the given value.
+     */
+    public int putElement(long key, long value) {
+        final int index = ((((int) (key >>> 32)) ^ ((int) (key))) & 0x7fffffff) % capacity;
+        Entry entry = table[index];
+        while (entry != null && entry.key != key) {
+            entry = entry.next;
+        }
+        if (entry == null) {
+            entry = obtainEntry(key);
+            entry.next = table[index];
+            table[index] = entry;
+            size++;
+            if (size > threshold) {
+                setCapacity(2 * capacity);
+            }
+        }
+        if (entry.count == entry.values.length) {
+            long[] newValues = obtainArray(entry.count * 2);
+            System.arraycopy(entry.values, 0, newValues, 0, entry.count);
+            recycleArray(entry.values);
+            entry.values = newValues;
+        }
+        entry.values[entry.count++] = value;
+        elementCount++;
+        return entry.count;
+    }
+
+    /**
+     * @return a copy of all elements stored for the given key (in insertion order), or null if there are none.
+     */
+    public long[] get(long key) {
+        Entry entry = getEntry(key);
+        return entry != null ? Arrays.copyOf(entry.values, entry.count) : null;
+    }
+
+    /**
+     * Allocation-free access to a single element; use {@link #countElements(long)} to get the count for a key.
+     *
+     * @throws IndexOutOfBoundsException if there is no element for the given key and index
+     */
+    public long getElement(long key, int index) {
+        Entry entry = getEntry(key);
+        int count = entry != null ? entry.count : 0;
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", count: " + count);
+        }
+        return entry.values[index];
+    }
+
+    /** @return true if the given element was found for the given key. */
+    public boolean containsElement(long key, long value) {
+        Entry entry = getEntry(key);
+        return entry != null && indexOf(entry, value) != -1;
+    }
+
+    private static int indexOf(Entry entry, long value) {
+        final long[] values = entry.values;
+        final int count = entry.count;
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Removes the first occurrence of the given element for the given key. The key is removed if it has no elements
+     * left.
+     *
+     * @return true if the given element was removed.
+     */
+    public boolean removeElement(long key, long value) {
+        Entry entry = getEntry(key);
+        if (entry == null) {
+            return false;
+        }
+        int index = indexOf(entry, value);
+        if (index == -1) {
+            return false;
+        }
+        int moveCount = entry.count - index - 1;
+        if (moveCount > 0) {
+            System.arraycopy(entry.values, index + 1, entry.values, index, moveCount);
+        }
+        entry.count--;
+        elementCount--;
+        if (entry.count == 0) {
+            remove(key);
+        }
+        return true;
+    }
+
+    /**
+     * Removes the key with all its elements.
+     *
+     * @return the removed elements, or null if the key had no elements
+     */
+    public long[] remove(long key) {
+        int index = ((((int) (key >>> 32)) ^ ((int) (key))) & 0x7fffffff) % capacity;
+        Entry previous = null;
+        Entry entry = table[index];
+        while (entry != null) {
+            Entry next = entry.next;
+            if (entry.key == key) {
+                if (previous == null) {
+                    table[index] = next;
+                } else {
+                    previous.next = next;
+                }
+                size--;
+                elementCount -= entry.count;
+                long[] values = entry.count > 0 ? Arrays.copyOf(entry.values, entry.count) : null;
+                recycleEntry(entry);
+                return values;
+            }
+            previous = entry;
+            entry = next;
+        }
+        return null;
+    }
+
+    public int countElements(long key) {
+        Entry entry = getEntry(key);
+        return entry != null ? entry.count : 0;
+    }
+
+    /** Total count of elements for all keys; does not iterate over keys. */
+    public int countElements() {
+        return elementCount;
+    }
+
+    /**
+     * Returns all keys in no particular order.
+     */
+    public long[] keys() {
+        long[] keys = new long[size];
+        int idx = 0;
+        for (Entry entry : table) {
+            while (entry != null) {
+                keys[idx++] = entry.key;
+                entry = entry.next;
+            }
+        }
+        return keys;
+    }
+
+    /** Removes all keys and elements; value arrays are kept in the pool (up to its limits) for reuse. */
+    public void clear() {
+        for (int i = 0; i < table.length; i++) {
+            Entry entry = table[i];
+            while (entry != null) {
+                Entry next = entry.next;
+                recycleEntry(entry);
+                entry = next;
+            }
+            table[i] = null;
+        }
+        size = 0;
+        elementCount = 0;
+    }
+
+    /** Count of keys. */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void setCapacity(int newCapacity) {
+        Entry[] newTable = new Entry[newCapacity];
+        for (Entry tableEntry : table) {
+            Entry entry = tableEntry;
+            while (entry != null) {
+                long key = entry.key;
+                int index = ((((int) (key >>> 32)) ^ ((int) (key))) & 0x7fffffff) % newCapacity;
+
+                Entry originalNext = entry.next;
+                entry.next = newTable[index];
+                newTable[index] = entry;
+                entry = originalNext;
+            }
+        }
+        table = newTable;
+        capacity = newCapacity;
+        threshold = newCapacity * 4 / 3;
+    }
+
+    /** Target load: 0,6 */
+    public void reserveRoom(int keyCount) {
+        setCapacity(keyCount * 5 / 3);
+    }
+
+    private Entry obtainEntry(long key) {
+        Entry entry = freeEntries;
+        if (entry != null) {
+            freeEntries = entry.next;
+        } else {
+            entry = new Entry();
+        }
+        entry.key = key;
+        entry.values = obtainArray(VALUES_CAPACITY_MIN);
+        entry.count = 0;
+        entry.next = null;
+        return entry;
+    }
+
+    private void recycleEntry(Entry entry) {
+        recycleArray(entry.values);
+        entry.values = null;
+        entry.count = 0;
+        entry.next = freeEntries;
+        freeEntries = entry;
+    }
+
+    /** @return index into the pool for the given array length, or -1 if arrays of that length are not pooled. */
+    private static int sizeClass(int length) {
+        int sizeClass = Integer.numberOfTrailingZeros(length / VALUES_CAPACITY_MIN);
+        return sizeClass < POOL_SIZE_CLASSES ? sizeClass : -1;
+    }
+
+    private long[] obtainArray(int length) {
+        int sizeClass = sizeClass(length);
+        if (sizeClass != -1 && poolCounts[sizeClass] > 0) {
+            int poolIndex = --poolCounts[sizeClass];
+            long[] array = pool[sizeClass][poolIndex];
+            pool[sizeClass][poolIndex] = null;
+            return array;
+        }
+        return new long[length];
+    }
+
+    private void recycleArray(long[] array) {
+        int sizeClass = sizeClass(array.length);
+        if (sizeClass != -1 && poolCounts[sizeClass] < POOL_MAX_ARRAYS_PER_CLASS) {
+            pool[sizeClass][poolCounts[sizeClass]++] = array;
+        }
+    }
+
+    protected static class Synchronized extends LongMultimap {
+        public Synchronized(int capacity) {
+            super(capacity);
+        }
+
+        @Override
+        public synchronized boolean containsKey(long key) {
+            return super.containsKey(key);
+        }
+
+        @Override
+        public synchronized int putElement(long key, long value) {
+            return super.putElement(key, value);
+        }
+
+        @Override
+        public synchronized long[] get(long key) {
+            return super.get(key);
+        }
+
+        @Override
+        public synchronized long getElement(long key, int index) {
+            return super.getElement(key, index);
+        }
+
+        @Override
+        public synchronized boolean containsElement(long key, long value) {
+            return super.containsElement(key, value);
+        }
+
+        @Override
+        public synchronized boolean removeElement(long key, long value) {
+            return super.removeElement(key, value);
+        }
+
+        @Override
+        public synchronized long[] remove(long key) {
+            return super.remove(key);
+        }
+
+        @Override
+        public synchronized int countElements(long key) {
+            return super.countElements(key);
+        }
+
+        @Override
+        public synchronized int countElements() {
+            return super.countElements();
+        }
+
+        @Override
+        public synchronized long[] keys() {
+            return super.keys();
+        }
+
+        @Override
+        public synchronized void clear() {
+            super.clear();
+        }
+
+        @Override
+        public synchronized int size() {
+            return super.size();
+        }
+
+        @Override
+        public synchronized boolean isEmpty() {
+            return super.isEmpty();
+        }
+
+        @Override
+        public synchronized void setCapacity(int newCapacity) {
+            super.setCapacity(newCapacity);
+        }
+
+        @Override
+        public synchronized void reserveRoom(int keyCount) {
+            super.reserveRoom(keyCount);
+        }
+
+    }
+
+}
@@ -38,7 +38,10 @@ public class Multimap<K, V> extends AbstractMultimap<K, V, List<V>> {
         THREAD_SAFE,
 
         /** Aka LinkedList */
-        LINKED
+        LINKED,
+
+        /** Aka {@link RingBufferList}; requires a maximum count of elements per key and drops the oldest in O(1) */
+        RING_BUFFER
     }
 
     public static <K, V> Multimap<K, V> create() {
@@ -49,12 +52,41 @@ public class Multimap<K, V> extends AbstractMultimap<K, V, List<V>> {
         return new Multimap<>(new HashMap<K, List<V>>(), listType);
     }
 
+    /**
+     * Creates a multimap keeping only the given count of most recently put elements per key. Backed by
+     * {@link ListType#RING_BUFFER}, so memory is bounded and putting an element is O(1) even if the key is full.
+     */
+    public static <K, V> Multimap<K, V> createBounded(int maxElementsPerKey) {
+        return create(ListType.RING_BUFFER, maxElementsPerKey);
+    }
+
+    /**
+     * Creates a multimap keeping only the given count of most recently put elements per key: once a key is full,
+     * putting an element drops the oldest element of the key.
+     *
+     * @param maxElementsPerKey maximum count of elements per key, or 0 for no limit
+     */
+    public static <K, V> Multimap<K, V> create(ListType listType, int maxElementsPerKey) {
+        return new Multimap<>(new HashMap<K, List<V>>(), listType, maxElementsPerKey);
+    }
+
     protected Multimap(Map<K, List<V>> map, ListType listType) {
-        super(map);
+        this(map, listType, 0);
+    }
+
+    protected Multimap(Map<K, List<V>> map, ListType listType, int maxElementsPerKey) {
+        super(map, maxElementsPerKey);
         this.listType = listType;
         if (listType == null) {
             throw new IllegalArgumentException("List type may not be null");
         }
+        if (listType == ListType.RING_BUFFER && maxElementsPerKey == 0) {
+            throw new IllegalArgumentException("Ring buffer list type requires max elements per key");
+        }
+    }
+
+    public ListType getListType() {
+        return listType;
     }
 
     protected List<V> createNewCollection() {
@@ -65,6 +97,8 @@ public class Multimap<K, V> extends AbstractMultimap<K, V, List<V>> {
                 return new CopyOnWriteArrayList<>();
             case LINKED:
                 return new LinkedList<>();
+            case RING_BUFFER:
+                return new RingBufferList<>(maxElementsPerKey);
             default:
                 throw new IllegalStateException("Unknown list type: " + listType);
         }
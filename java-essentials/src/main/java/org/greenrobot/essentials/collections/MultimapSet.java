@@ -18,6 +18,7 @@ package org.greenrobot.essentials.collections;
 
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
@@ -46,15 +47,30 @@ public class MultimapSet<K, V> extends AbstractMultimap<K, V, Set<V>> {
         return new MultimapSet<>(new HashMap<K, Set<V>>(), setType);
     }
 
+    /**
+     * Creates a multimap keeping only the given count of most recently put elements per key: once a key is full,
+     * putting a new element drops the oldest element of the key. To keep track of the insertion order, sets of type
+     * {@link SetType#REGULAR} are backed by a LinkedHashSet.
+     *
+     * @param maxElementsPerKey maximum count of elements per key, or 0 for no limit
+     */
+    public static <K, V> MultimapSet<K, V> create(SetType setType, int maxElementsPerKey) {
+        return new MultimapSet<>(new HashMap<K, Set<V>>(), setType, maxElementsPerKey);
+    }
+
     protected MultimapSet(Map<K, Set<V>> map, SetType setType) {
-        super(map);
+        this(map, setType, 0);
+    }
+
+    protected MultimapSet(Map<K, Set<V>> map, SetType setType, int maxElementsPerKey) {
+        super(map, maxElementsPerKey);
         this.setType = setType;
     }
 
     protected Set<V> createNewCollection() {
         switch (setType) {
             case REGULAR:
-                return new HashSet<>();
+                return maxElementsPerKey > 0 ? new LinkedHashSet<V>() : new HashSet<V>();
             case THREAD_SAFE:
                 return new CopyOnWriteArraySet<>();
             default:
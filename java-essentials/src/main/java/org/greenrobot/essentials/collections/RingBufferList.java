@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2014-2020 Markus Junginger, greenrobot (http://greenrobot.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.greenrobot.essentials.collections;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * A list with a fixed capacity backed by a ring buffer: once the list is full, adding an element drops the oldest
+ * (first) element. Adding elements and removing the first element are O(1), which makes this list a good fit for
+ * "last n elements" use cases (e.g. recent events). The backing array grows with the list up to the capacity, so
+ * large capacities do not cost memory up front.
+ * <p>
+ * Inserting elements at other positions than the end is not supported. This class is not thread-safe.
+ */
+public class RingBufferList<E> extends AbstractList<E> implements RandomAccess {
+    /** Initial length of the backing array; it grows up to the capacity as elements are added. */
+    private static final int INITIAL_ARRAY_LENGTH = 8;
+
+    private Object[] elements;
+    private final int capacity;
+    private int head;
+    private int size;
+
+    public RingBufferList(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        elements = new Object[Math.min(capacity, INITIAL_ARRAY_LENGTH)];
+    }
+
+    /** The maximum count of elements in this list. */
+    public int capacity() {
+        return capacity;
+    }
+
+    public boolean isFull() {
+        return size == capacity;
+    }
+
+    /** Adds the element to the end; if the list is full, the first (oldest) element is dropped. */
+    @Override
+    public boolean add(E element) {
+        if (size == capacity) {
+            elements[head] = element;
+            head = (head + 1) % elements.length;
+        } else {
+            if (size == elements.length) {
+                grow();
+            }
+            elements[(head + size) % elements.length] = element;
+            size++;
+        }
+        modCount++;
+        return true;
+    }
+
+    /** Doubles the backing array (up to the capacity), moving the elements to the start. */
+    private void grow() {
+        Object[] newElements = new Object[(int) Math.min((long) elements.length * 2, capacity)];
+        for (int i = 0; i < size; i++) {
+            newElements[i] = elements[(head + i) % elements.length];
+        }
+        elements = newElements;
+        head = 0;
+    }
+
+    /**
+     * Only supports adding at the end (index equals size).
+     *
+     * @throws UnsupportedOperationException if index is not the size of the list
+     */
+    @Override
+    public void add(int index, E element) {
+        if (index != size) {
+            throw new UnsupportedOperationException("Can only add at the end, index: " + index + ", size: " + size);
+        }
+        add(element);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        checkIndex(index);
+        return (E) elements[(head + index) % elements.length];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E set(int index, E element) {
+        checkIndex(index);
+        int position = (head + index) % elements.length;
+        E previous = (E) elements[position];
+        elements[position] = element;
+        return previous;
+    }
+
+    /** Removing the first element is O(1); other positions require moving the following elements. */
+    @Override
+    @SuppressWarnings("unchecked")
+    public E remove(int index) {
+        checkIndex(index);
+        int position = (head + index) % elements.length;
+        E removed = (E) elements[position];
+        if (index == 0) {
+            elements[head] = null;
+            head = (head + 1) % elements.length;
+        } else {
+            for (int i = index; i < size - 1; i++) {
+                elements[(head + i) % elements.length] = elements[(head + i + 1) % elements.length];
+            }
+            elements[(head + size - 1) % elements.length] = null;
+        }
+        size--;
+        modCount++;
+        return removed;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(elements, null);
+        head = 0;
+        size = 0;
+        modCount++;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+    }
+
+}
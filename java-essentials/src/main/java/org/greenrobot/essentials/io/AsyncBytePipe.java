@@ -0,0 +1,334 @@
+/*
+ * Copyright (C) 2014-2020 Markus Junginger, greenrobot (http://greenrobot.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.greenrobot.essentials.io;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Non-blocking counterpart of {@link PipelineOutputStream}: bytes offered on the write side are pushed to a single
+ * subscriber according to its demand. No method ever blocks, and no threads are used; callbacks are invoked on the
+ * thread of whoever triggered them (a writer offering bytes, or the subscriber requesting more). Thus, streaming
+ * transformations can run without a thread per stream, e.g. in a reactive or event loop based stack.
+ * <p/>
+ * Read side: the subscriber/subscription contract mirrors Reactive Streams (java.util.concurrent.Flow in Java 9+):
+ * demand is requested as a number of chunks; each {@link Subscriber#onNext(ByteBuffer)} delivers a read-only chunk
+ * of up to maxChunkSize bytes. Signals to the subscriber are serialized (never concurrent).
+ * <p/>
+ * Write side (backpressure): {@link #offer(byte[], int, int)} accepts only as many bytes as fit into the buffer. If it
+ * could not accept all bytes, the {@link WritableListener} is notified once space got free again.
+ * <p/>
+ * Storage is a {@link CircularByteBuffer}; chunks passed to onNext are views on it (no copying), so they are only
+ * valid until onNext returns.
+ */
+public class AsyncBytePipe {
+
+    /** Receives bytes according to its demand; see {@link #subscribe(Subscriber)}. */
+    public interface Subscriber {
+        /** Called first; use the subscription to request chunks. */
+        void onSubscribe(Subscription subscription);
+
+        /**
+         * A chunk of bytes (read-only, at least 1 byte). The chunk is only valid during this call; copy or process its
+         * bytes before returning.
+         */
+        void onNext(ByteBuffer chunk);
+
+        /** The writer failed or the subscription was illegal; no more calls follow. */
+        void onError(Throwable throwable);
+
+        /** The writer completed and all bytes were delivered; no more calls follow. */
+        void onComplete();
+    }
+
+    public interface Subscription {
+        /** Adds demand for n more chunks (n must be positive; Long.MAX_VALUE for unbounded demand). */
+        void request(long n);
+
+        /** Stops delivering bytes; buffered bytes are discarded and further offers are rejected. */
+        void cancel();
+    }
+
+    /** Notifies the writer that it may offer bytes again (rarely, this may happen without a pending offer). */
+    public interface WritableListener {
+        void onWritable();
+    }
+
+    private final CircularByteBuffer buffer;
+    private final int maxChunkSize;
+
+    /** Work-in-progress counter serializing {@link #drain()}. */
+    private final AtomicInteger wip = new AtomicInteger();
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+    /** True if an offer could not accept all bytes and the writer waits for {@link WritableListener#onWritable()}. */
+    private final AtomicBoolean writerWaiting = new AtomicBoolean();
+
+    private volatile Subscriber subscriber;
+    private volatile WritableListener writableListener;
+    private volatile boolean completed;
+    private volatile Throwable error;
+    private volatile boolean cancelled;
+    /** Set once onComplete or onError was called; only accessed in drain. */
+    private boolean terminated;
+
+    public AsyncBytePipe() {
+        this(8192, 8192);
+    }
+
+    /**
+     * @param bufferCapacity capacity of the buffer (bytes that were offered, but not delivered yet)
+     * @param maxChunkSize   maximum size of chunks passed to {@link Subscriber#onNext(ByteBuffer)}
+     */
+    public AsyncBytePipe(int bufferCapacity, int maxChunkSize) {
+        if (maxChunkSize <= 0) {
+            throw new IllegalArgumentException("Illegal chunk size: " + maxChunkSize);
+        }
+        buffer = new CircularByteBuffer(bufferCapacity);
+        this.maxChunkSize = maxChunkSize;
+    }
+
+    /**
+     * Sets the single subscriber. A second subscriber receives onSubscribe followed by onError.
+     */
+    public void subscribe(Subscriber subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("Subscriber must not be null");
+        }
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("Only a single subscriber is supported"));
+            return;
+        }
+        subscriber.onSubscribe(new PipeSubscription());
+        this.subscriber = subscriber;
+        drain();
+    }
+
+    /** Called (on the thread freeing space) after an offer did not accept all bytes and space got free. */
+    public void setWritableListener(WritableListener writableListener) {
+        this.writableListener = writableListener;
+    }
+
+    public int offer(byte[] src) {
+        return offer(src, 0, src.length);
+    }
+
+    /**
+     * Writer only: offers the given bytes without blocking. If not all bytes were accepted, the
+     * {@link WritableListener} is notified once space got free.
+     *
+     * @return count of bytes accepted (may be 0 if the buffer is full), or -1 if the subscriber cancelled
+     * @throws IllegalStateException if the pipe was already completed or failed
+     */
+    public int offer(byte[] src, int off, int len) {
+        checkWritable();
+        if (cancelled) {
+            return -1;
+        }
+        int count = buffer.put(src, off, len);
+        while (count < len) {
+            writerWaiting.set(true);
+            // Check again after announcing to wait: drain checks writerWaiting after freeing space
+            if (buffer.free() == 0) {
+                break;
+            }
+            writerWaiting.set(false);
+            count += buffer.put(src, off + count, len - count);
+        }
+        if (count > 0) {
+            drain();
+        }
+        return count;
+    }
+
+    /**
+     * Writer only: like {@link #offer(byte[], int, int)}, but takes the bytes from the given ByteBuffer (advancing
+     * its position by the count of accepted bytes).
+     */
+    public int offer(ByteBuffer src) {
+        checkWritable();
+        if (cancelled) {
+            return -1;
+        }
+        int len = src.remaining();
+        int count = buffer.put(src);
+        while (count < len) {
+            writerWaiting.set(true);
+            if (buffer.free() == 0) {
+                break;
+            }
+            writerWaiting.set(false);
+            count += buffer.put(src);
+        }
+        if (count > 0) {
+            drain();
+        }
+        return count;
+    }
+
+    private void checkWritable() {
+        if (completed || error != null) {
+            throw new IllegalStateException("Pipe was already completed");
+        }
+    }
+
+    /** Writer only: signals the end of data; the subscriber is completed once it received all buffered bytes. */
+    public void complete() {
+        completed = true;
+        drain();
+    }
+
+    /** Writer only: signals a failure; buffered bytes are discarded and the subscriber receives onError. */
+    public void fail(Throwable throwable) {
+        if (throwable == null) {
+            throw new NullPointerException("Throwable must not be null");
+        }
+        error = throwable;
+        drain();
+    }
+
+    /** Count of bytes offered but not yet delivered. */
+    public int available() {
+        return buffer.available();
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Delivers chunks according to demand and terminal signals; runs on whichever thread calls it, but only one at a
+     * time. Calls happening during a drain make the active drain loop again.
+     */
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        while (true) {
+            Subscriber s = subscriber;
+            if (s != null && !terminated) {
+                if (cancelled) {
+                    terminated = true;
+                    buffer.clear();
+                    notifyWriter();
+                } else {
+                    drainTo(s);
+                }
+            }
+            missed = wip.addAndGet(-missed);
+            if (missed == 0) {
+                break;
+            }
+        }
+    }
+
+    private void drainTo(Subscriber s) {
+        long demand = requested.get();
+        long emitted = 0;
+        while (true) {
+            Throwable throwable = error;
+            if (throwable != null) {
+                terminate();
+                s.onError(throwable);
+                return;
+            }
+            // Read completed flag before checking for bytes: all bytes offered before completing are visible then
+            boolean done = completed;
+            if (cancelled) {
+                return;
+            }
+            ByteBuffer[] regions = emitted != demand ? buffer.readableRegions() : null;
+            if (regions == null || regions.length == 0) {
+                if (done && buffer.available() == 0) {
+                    terminate();
+                    s.onComplete();
+                    return;
+                }
+                break;
+            }
+            ByteBuffer chunk = regions[0];
+            int length = Math.min(chunk.remaining(), maxChunkSize);
+            // Cast for compatibility with Java 9+ covariant return types
+            ((Buffer) chunk).limit(length);
+            s.onNext(chunk);
+            buffer.skip(length);
+            emitted++;
+            notifyWriter();
+        }
+        if (emitted != 0 && demand != Long.MAX_VALUE) {
+            requested.addAndGet(-emitted);
+        }
+    }
+
+    private void terminate() {
+        terminated = true;
+        buffer.clear();
+    }
+
+    private void notifyWriter() {
+        if (writerWaiting.get() && (buffer.free() > 0 || cancelled) && writerWaiting.compareAndSet(true, false)) {
+            WritableListener listener = writableListener;
+            if (listener != null) {
+                listener.onWritable();
+            }
+        }
+    }
+
+    private class PipeSubscription implements Subscription {
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                fail(new IllegalArgumentException("Request must be positive: " + n));
+                return;
+            }
+            while (true) {
+                long current = requested.get();
+                if (current == Long.MAX_VALUE) {
+                    break;
+                }
+                long updated = current + n;
+                if (updated < 0) {
+                    updated = Long.MAX_VALUE;
+                }
+                if (requested.compareAndSet(current, updated)) {
+                    break;
+                }
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            drain();
+        }
+    }
+
+}
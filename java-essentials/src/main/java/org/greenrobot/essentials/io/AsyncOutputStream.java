@@ -0,0 +1,371 @@
+/*
+ * Copyright (C) 2014-2020 Markus Junginger, greenrobot (http://greenrobot.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.greenrobot.essentials.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes to a target OutputStream on a background thread, so a slow target (e.g. a cache on a slow disk) does not
+ * slow down the writing thread.
+ * <p/>
+ * Written bytes are collected in fixed-size chunks, which are handed over to the background thread through a bounded
+ * ring of chunks. Chunks are allocated on first use and reused, so no garbage is produced while writing. If all
+ * chunks are in use, the {@link OverflowPolicy} decides whether the writing thread waits (BLOCK) or the bytes are
+ * dropped (DROP).
+ * <p/>
+ * The background thread is started once the first chunk is handed over. It ends only after {@link #finishAsync()} or
+ * {@link #close()}, so one of them must be called once done; otherwise, the thread stays parked with its chunks.
+ * <p/>
+ * Data reaches the background thread once a chunk is full, or on {@link #flush()}, {@link #finishAsync()}, and
+ * {@link #close()}. If writing to the target fails, all further data is discarded; the failure is thrown by
+ * {@link #awaitFinished(long, TimeUnit)} and {@link #close()}, but not by write methods.
+ * <p/>
+ * Only a single thread may write at a time.
+ */
+public class AsyncOutputStream extends OutputStream {
+
+    /** What to do if a chunk is needed, but all chunks are still waiting to be written by the background thread. */
+    public enum OverflowPolicy {
+        /** The writing thread waits until the background thread finished writing a chunk. */
+        BLOCK,
+        /**
+         * The bytes are dropped (see {@link #getDroppedByteCount()}), so the target will be incomplete. Once bytes were
+         * dropped, all following bytes are dropped too: the target receives a prefix of the data, never data with
+         * gaps. Use this if the writing thread must never wait and the target can be discarded, e.g. a cache entry.
+         */
+        DROP
+    }
+
+    private final OutputStream out;
+    private final OverflowPolicy policy;
+    private final byte[][] chunks;
+    private final int[] chunkLengths;
+    private final int chunkSize;
+    private final int mask;
+    private final ThreadFactory threadFactory;
+    private final CountDownLatch doneLatch = new CountDownLatch(1);
+
+    /** Count of chunks handed over to the background thread; written by the writing thread only. */
+    private final PaddedAtomicLong produced = new PaddedAtomicLong();
+    /** Count of chunks written to the target; written by the background thread only. */
+    private final PaddedAtomicLong consumed = new PaddedAtomicLong();
+
+    /** True if the writing thread owns the chunk at index produced (i.e. it was free). */
+    private boolean ownsChunk;
+    private int currentLength;
+    /** Set once bytes were dropped; all following bytes are dropped, too. */
+    private boolean dropping;
+    private boolean threadStarted;
+    private boolean finishing;
+    private boolean closed;
+
+    /** Written by the writing thread only; volatile for {@link #getDroppedByteCount()} from other threads. */
+    private volatile long droppedByteCount;
+    private volatile boolean finished;
+    private volatile IOException failure;
+    /** The writing thread if it is waiting for a free chunk, or null. */
+    private volatile Thread waitingWriter;
+    /** The background thread if it is waiting for chunks, or null. */
+    private volatile Thread waitingConsumer;
+
+    /** Uses 16 chunks of 8 KB each and the BLOCK policy. */
+    public AsyncOutputStream(OutputStream out) {
+        this(out, 8192, 16, OverflowPolicy.BLOCK);
+    }
+
+    /**
+     * Uses a daemon thread as background thread.
+     *
+     * @param chunkSize  bytes per chunk
+     * @param chunkCount count of chunks, rounded up to the next power of 2
+     */
+    public AsyncOutputStream(OutputStream out, int chunkSize, int chunkCount, OverflowPolicy policy) {
+        this(out, chunkSize, chunkCount, policy, null);
+    }
+
+    /**
+     * @param chunkSize     bytes per chunk
+     * @param chunkCount    count of chunks, rounded up to the next power of 2
+     * @param threadFactory creates the background thread (e.g. for virtual threads); null to use a daemon thread
+     */
+    public AsyncOutputStream(OutputStream out, int chunkSize, int chunkCount, OverflowPolicy policy,
+                             ThreadFactory threadFactory) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Illegal chunk size: " + chunkSize);
+        }
+        if (chunkCount <= 0 || chunkCount > 1 << 16) {
+            throw new IllegalArgumentException("Illegal chunk count: " + chunkCount);
+        }
+        this.out = out;
+        this.policy = policy;
+        this.chunkSize = chunkSize;
+        this.threadFactory = threadFactory;
+        int powerOf2 = Integer.highestOneBit(chunkCount);
+        chunkCount = powerOf2 == chunkCount ? chunkCount : powerOf2 << 1;
+        mask = chunkCount - 1;
+        chunks = new byte[chunkCount][];
+        chunkLengths = new int[chunkCount];
+    }
+
+    /** Writing thread: starts the background thread if not done yet. */
+    private void ensureThreadStarted() {
+        if (!threadStarted) {
+            threadStarted = true;
+            Runnable runnable = new Runnable() {
+                @Override
+                public void run() {
+                    writeChunks();
+                }
+            };
+            Thread thread;
+            if (threadFactory != null) {
+                thread = threadFactory.newThread(runnable);
+            } else {
+                thread = new Thread(runnable, "AsyncOutputStream");
+                thread.setDaemon(true);
+            }
+            thread.start();
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        checkNotFinishing();
+        if (currentLength == 0 && !acquireChunk()) {
+            droppedByteCount++;
+            return;
+        }
+        chunks[(int) produced.get() & mask][currentLength++] = (byte) b;
+        if (currentLength == chunkSize) {
+            publishChunk();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        checkNotFinishing();
+        while (len > 0) {
+            if (currentLength == 0 && !acquireChunk()) {
+                droppedByteCount += len;
+                return;
+            }
+            int count = Math.min(len, chunkSize - currentLength);
+            System.arraycopy(b, off, chunks[(int) produced.get() & mask], currentLength, count);
+            currentLength += count;
+            off += count;
+            len -= count;
+            if (currentLength == chunkSize) {
+                publishChunk();
+            }
+        }
+    }
+
+    private void checkNotFinishing() throws IOException {
+        if (finishing) {
+            throw new IOException("Stream was already finished");
+        }
+    }
+
+    /**
+     * Writing thread: makes sure the chunk at index produced is free.
+     *
+     * @return false if the bytes should be dropped (DROP policy or after a failure)
+     */
+    private boolean acquireChunk() throws IOException {
+        if (dropping || failure != null) {
+            // Dropped before (must not leave gaps) or target is broken (no point in handing over more data)
+            return false;
+        }
+        while (!ownsChunk) {
+            if (produced.get() - consumed.get() <= mask) {
+                ownsChunk = true;
+            } else if (policy == OverflowPolicy.DROP) {
+                dropping = true;
+                return false;
+            } else {
+                awaitFreeChunk();
+            }
+        }
+        int slot = (int) produced.get() & mask;
+        if (chunks[slot] == null) {
+            // Visible to the background thread by the volatile write when publishing
+            chunks[slot] = new byte[chunkSize];
+        }
+        return true;
+    }
+
+    private void awaitFreeChunk() throws IOException {
+        waitingWriter = Thread.currentThread();
+        try {
+            // Check again after announcing to wait: the background thread checks waitingWriter after writing a chunk
+            if (produced.get() - consumed.get() > mask && failure == null) {
+                LockSupport.park(this);
+            }
+        } finally {
+            waitingWriter = null;
+        }
+        if (Thread.interrupted()) {
+            throw new IOException(new InterruptedException());
+        }
+    }
+
+    /** Writing thread: hands over the current chunk to the background thread. */
+    private void publishChunk() {
+        long index = produced.get();
+        chunkLengths[(int) index & mask] = currentLength;
+        // Volatile write, so the following check for a waiting consumer cannot miss it going to sleep
+        produced.set(index + 1);
+        ownsChunk = false;
+        currentLength = 0;
+        ensureThreadStarted();
+        unpark(waitingConsumer);
+    }
+
+    /** Hands over the bytes collected so far to the background thread (does not wait until they are written). */
+    @Override
+    public void flush() throws IOException {
+        if (currentLength > 0) {
+            publishChunk();
+        }
+    }
+
+    /**
+     * Hands over all remaining bytes and lets the background thread end once it wrote them; returns immediately.
+     * The target is not closed. No more bytes may be written afterwards.
+     */
+    public void finishAsync() throws IOException {
+        if (!finishing) {
+            flush();
+            finishing = true;
+            finished = true;
+            // Also started if nothing was written, so the target gets flushed
+            ensureThreadStarted();
+            unpark(waitingConsumer);
+        }
+    }
+
+    /**
+     * Waits until the background thread wrote all bytes after {@link #finishAsync()} was called.
+     *
+     * @param unit null to wait without timeout (timeout is ignored)
+     * @return false if the timeout elapsed
+     * @throws IOException if writing to the target failed
+     */
+    public boolean awaitFinished(long timeout, TimeUnit unit) throws IOException {
+        try {
+            boolean done;
+            if (unit != null) {
+                done = doneLatch.await(timeout, unit);
+            } else {
+                doneLatch.await();
+                done = true;
+            }
+            if (failure != null) {
+                throw new IOException("Writing to target failed", failure);
+            }
+            return done;
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /** Writes all remaining bytes (waiting for the background thread), then closes the target. */
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            finishAsync();
+            try {
+                awaitFinished(0, null);
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Count of bytes dropped because of the DROP policy or because writing to the target failed. May be called from
+     * any thread.
+     */
+    public long getDroppedByteCount() {
+        return droppedByteCount;
+    }
+
+    /** Background thread: writes chunks until finished. */
+    private void writeChunks() {
+        try {
+            while (true) {
+                // Read finished flag before checking for chunks: all chunks published before finishing are visible
+                boolean done = finished;
+                long index = consumed.get();
+                if (index != produced.get()) {
+                    int slot = (int) index & mask;
+                    if (failure == null) {
+                        try {
+                            out.write(chunks[slot], 0, chunkLengths[slot]);
+                        } catch (IOException e) {
+                            failure = e;
+                        } catch (RuntimeException e) {
+                            failure = new IOException(e);
+                        }
+                    }
+                    consumed.set(index + 1);
+                    unpark(waitingWriter);
+                } else if (done) {
+                    if (failure == null) {
+                        try {
+                            out.flush();
+                        } catch (IOException e) {
+                            failure = e;
+                        }
+                    }
+                    break;
+                } else {
+                    awaitChunk();
+                }
+            }
+        } finally {
+            doneLatch.countDown();
+        }
+    }
+
+    private void awaitChunk() {
+        waitingConsumer = Thread.currentThread();
+        try {
+            // Check again after announcing to wait: the writing thread checks waitingConsumer after publishing
+            if (consumed.get() == produced.get() && !finished) {
+                LockSupport.park(this);
+            }
+        } finally {
+            waitingConsumer = null;
+        }
+        // Ignore interrupts: the data must be written
+        Thread.interrupted();
+    }
+
+    private static void unpark(Thread thread) {
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+}
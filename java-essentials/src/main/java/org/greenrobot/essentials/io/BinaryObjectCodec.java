@@ -0,0 +1,556 @@
+/*
+ * Copyright (C) 2014-2016 Markus Junginger, greenrobot (http://greenrobot.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greenrobot.essentials.io;
+
+import org.greenrobot.essentials.collections.LongHashMap;
+import org.greenrobot.essentials.collections.LongHashSet;
+import org.greenrobot.essentials.collections.Multimap;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A compact and fast binary codec for typical state data; much faster and smaller than Java serialization. Supported
+ * values (also nested):
+ * <ul>
+ * <li>null, boxed primitives, and String</li>
+ * <li>primitive arrays and String arrays (primitive arrays are converted in bulk)</li>
+ * <li>List, Set, and Map (decoded as ArrayList, LinkedHashSet, and LinkedHashMap)</li>
+ * <li>{@link LongHashMap}, {@link LongHashSet}, and {@link Multimap} (decoded as non-synchronized variants)</li>
+ * </ul>
+ * Encoding other types fails with an IOException. Each value is prefixed by a one byte type tag; lengths are encoded
+ * as variable length integers, and numbers in big endian.
+ */
+public class BinaryObjectCodec implements ObjectCodec {
+
+    public static final BinaryObjectCodec INSTANCE = new BinaryObjectCodec();
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int TYPE_NULL = 0;
+    private static final int TYPE_BOOLEAN = 1;
+    private static final int TYPE_BYTE = 2;
+    private static final int TYPE_SHORT = 3;
+    private static final int TYPE_CHAR = 4;
+    private static final int TYPE_INT = 5;
+    private static final int TYPE_LONG = 6;
+    private static final int TYPE_FLOAT = 7;
+    private static final int TYPE_DOUBLE = 8;
+    private static final int TYPE_STRING = 9;
+    private static final int TYPE_BOOLEAN_ARRAY = 10;
+    private static final int TYPE_BYTE_ARRAY = 11;
+    private static final int TYPE_SHORT_ARRAY = 12;
+    private static final int TYPE_CHAR_ARRAY = 13;
+    private static final int TYPE_INT_ARRAY = 14;
+    private static final int TYPE_LONG_ARRAY = 15;
+    private static final int TYPE_FLOAT_ARRAY = 16;
+    private static final int TYPE_DOUBLE_ARRAY = 17;
+    private static final int TYPE_STRING_ARRAY = 18;
+    private static final int TYPE_LIST = 19;
+    private static final int TYPE_SET = 20;
+    private static final int TYPE_MAP = 21;
+    private static final int TYPE_LONG_HASH_MAP = 22;
+    private static final int TYPE_LONG_HASH_SET = 23;
+    private static final int TYPE_MULTIMAP = 24;
+
+    /** Size of the scratch buffer used to convert primitive arrays in bulk. */
+    private static final int SCRATCH_SIZE = 8192;
+
+    @Override
+    public void encode(Object object, OutputStream out) throws IOException {
+        new Encoder(out).writeValue(object);
+    }
+
+    @Override
+    public Object decode(InputStream in) throws IOException {
+        return new Decoder(in).readValue();
+    }
+
+    private static class Encoder {
+        private final DataOutputStream out;
+        private final byte[] scratch = new byte[SCRATCH_SIZE];
+        private final ByteBuffer scratchBuffer = ByteBuffer.wrap(scratch);
+
+        Encoder(OutputStream out) {
+            this.out = new DataOutputStream(out);
+        }
+
+        void writeValue(Object value) throws IOException {
+            if (value == null) {
+                out.write(TYPE_NULL);
+            } else if (value instanceof String) {
+                out.write(TYPE_STRING);
+                writeString((String) value);
+            } else if (value instanceof Integer) {
+                out.write(TYPE_INT);
+                out.writeInt((Integer) value);
+            } else if (value instanceof Long) {
+                out.write(TYPE_LONG);
+                out.writeLong((Long) value);
+            } else if (value instanceof Boolean) {
+                out.write(TYPE_BOOLEAN);
+                out.writeBoolean((Boolean) value);
+            } else if (value instanceof Byte) {
+                out.write(TYPE_BYTE);
+                out.writeByte((Byte) value);
+            } else if (value instanceof Short) {
+                out.write(TYPE_SHORT);
+                out.writeShort((Short) value);
+            } else if (value instanceof Character) {
+                out.write(TYPE_CHAR);
+                out.writeChar((Character) value);
+            } else if (value instanceof Float) {
+                out.write(TYPE_FLOAT);
+                out.writeFloat((Float) value);
+            } else if (value instanceof Double) {
+                out.write(TYPE_DOUBLE);
+                out.writeDouble((Double) value);
+            } else if (value.getClass().isArray()) {
+                writeArray(value);
+            } else if (value instanceof LongHashMap) {
+                out.write(TYPE_LONG_HASH_MAP);
+                writeLongHashMap((LongHashMap<?>) value);
+            } else if (value instanceof LongHashSet) {
+                out.write(TYPE_LONG_HASH_SET);
+                writeLongs(((LongHashSet) value).keys());
+            } else if (value instanceof Multimap) {
+                out.write(TYPE_MULTIMAP);
+                writeMultimap((Multimap<?, ?>) value);
+            } else if (value instanceof List) {
+                out.write(TYPE_LIST);
+                writeCollection((List<?>) value);
+            } else if (value instanceof Set) {
+                out.write(TYPE_SET);
+                writeCollection((Set<?>) value);
+            } else if (value instanceof Map) {
+                out.write(TYPE_MAP);
+                writeMap((Map<?, ?>) value);
+            } else {
+                throw new IOException("Unsupported type: " + value.getClass().getName());
+            }
+        }
+
+        private void writeArray(Object array) throws IOException {
+            if (array instanceof byte[]) {
+                out.write(TYPE_BYTE_ARRAY);
+                byte[] bytes = (byte[]) array;
+                writeLength(bytes.length);
+                out.write(bytes);
+            } else if (array instanceof int[]) {
+                out.write(TYPE_INT_ARRAY);
+                writeInts((int[]) array);
+            } else if (array instanceof long[]) {
+                out.write(TYPE_LONG_ARRAY);
+                writeLongs((long[]) array);
+            } else if (array instanceof double[]) {
+                out.write(TYPE_DOUBLE_ARRAY);
+                writeDoubles((double[]) array);
+            } else if (array instanceof float[]) {
+                out.write(TYPE_FLOAT_ARRAY);
+                writeFloats((float[]) array);
+            } else if (array instanceof short[]) {
+                out.write(TYPE_SHORT_ARRAY);
+                writeShorts((short[]) array);
+            } else if (array instanceof char[]) {
+                out.write(TYPE_CHAR_ARRAY);
+                writeChars((char[]) array);
+            } else if (array instanceof boolean[]) {
+                out.write(TYPE_BOOLEAN_ARRAY);
+                boolean[] booleans = (boolean[]) array;
+                writeLength(booleans.length);
+                for (boolean value : booleans) {
+                    out.write(value ? 1 : 0);
+                }
+            } else if (array instanceof String[]) {
+                out.write(TYPE_STRING_ARRAY);
+                String[] strings = (String[]) array;
+                writeLength(strings.length);
+                for (String string : strings) {
+                    if (string == null) {
+                        out.write(TYPE_NULL);
+                    } else {
+                        out.write(TYPE_STRING);
+                        writeString(string);
+                    }
+                }
+            } else {
+                throw new IOException("Unsupported array type: " + array.getClass().getName());
+            }
+        }
+
+        private void writeString(String string) throws IOException {
+            byte[] bytes = string.getBytes(UTF8);
+            writeLength(bytes.length);
+            out.write(bytes);
+        }
+
+        private void writeShorts(short[] values) throws IOException {
+            writeLength(values.length);
+            int chunk = SCRATCH_SIZE / 2;
+            for (int i = 0; i < values.length; i += chunk) {
+                int count = Math.min(chunk, values.length - i);
+                scratchBuffer.asShortBuffer().put(values, i, count);
+                out.write(scratch, 0, count * 2);
+            }
+        }
+
+        private void writeChars(char[] values) throws IOException {
+            writeLength(values.length);
+            int chunk = SCRATCH_SIZE / 2;
+            for (int i = 0; i < values.length; i += chunk) {
+                int count = Math.min(chunk, values.length - i);
+                scratchBuffer.asCharBuffer().put(values, i, count);
+                out.write(scratch, 0, count * 2);
+            }
+        }
+
+        private void writeInts(int[] values) throws IOException {
+            writeLength(values.length);
+            int chunk = SCRATCH_SIZE / 4;
+            for (int i = 0; i < values.length; i += chunk) {
+                int count = Math.min(chunk, values.length - i);
+                scratchBuffer.asIntBuffer().put(values, i, count);
+                out.write(scratch, 0, count * 4);
+            }
+        }
+
+        private void writeLongs(long[] values) throws IOException {
+            writeLength(values.length);
+            int chunk = SCRATCH_SIZE / 8;
+            for (int i = 0; i < values.length; i += chunk) {
+                int count = Math.min(chunk, values.length - i);
+                scratchBuffer.asLongBuffer().put(values, i, count);
+                out.write(scratch, 0, count * 8);
+            }
+        }
+
+        private void writeFloats(float[] values) throws IOException {
+            writeLength(values.length);
+            int chunk = SCRATCH_SIZE / 4;
+            for (int i = 0; i < values.length; i += chunk) {
+                int count = Math.min(chunk, values.length - i);
+                scratchBuffer.asFloatBuffer().put(values, i, count);
+                out.write(scratch, 0, count * 4);
+            }
+        }
+
+        private void writeDoubles(double[] values) throws IOException {
+            writeLength(values.length);
+            int chunk = SCRATCH_SIZE / 8;
+            for (int i = 0; i < values.length; i += chunk) {
+                int count = Math.min(chunk, values.length - i);
+                scratchBuffer.asDoubleBuffer().put(values, i, count);
+                out.write(scratch, 0, count * 8);
+            }
+        }
+
+        private void writeCollection(Collection<?> collection) throws IOException {
+            // Snapshot to be safe with concurrent collections, whose size may change while iterating
+            Object[] values = collection.toArray();
+            writeLength(values.length);
+            for (Object value : values) {
+                writeValue(value);
+            }
+        }
+
+        private void writeMap(Map<?, ?> map) throws IOException {
+            writeLength(map.size());
+            int count = 0;
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeValue(entry.getKey());
+                writeValue(entry.getValue());
+                count++;
+            }
+            if (count != map.size()) {
+                throw new IOException("Map was modified while encoding");
+            }
+        }
+
+        private void writeLongHashMap(LongHashMap<?> map) throws IOException {
+            LongHashMap.Entry<?>[] entries = map.entries();
+            writeLength(entries.length);
+            for (LongHashMap.Entry<?> entry : entries) {
+                out.writeLong(entry.key);
+                writeValue(entry.value);
+            }
+        }
+
+        private void writeMultimap(Multimap<?, ?> multimap) throws IOException {
+            // Methods of multimaps are synchronized, so hold the lock while iterating
+            synchronized (multimap) {
+                out.write(multimap.getListType().ordinal());
+                writeLength(multimap.getMaxElementsPerKey());
+                writeLength(multimap.size());
+                for (Map.Entry<?, ? extends List<?>> entry : multimap.entrySet()) {
+                    writeValue(entry.getKey());
+                    writeCollection(entry.getValue());
+                }
+            }
+        }
+
+        /** Writes a non-negative int as variable length integer (7 bits per byte). */
+        private void writeLength(int length) throws IOException {
+            while ((length & ~0x7f) != 0) {
+                out.write((length & 0x7f) | 0x80);
+                length >>>= 7;
+            }
+            out.write(length);
+        }
+    }
+
+    private static class Decoder {
+        private final DataInputStream in;
+        private final byte[] scratch = new byte[SCRATCH_SIZE];
+        private final ByteBuffer scratchBuffer = ByteBuffer.wrap(scratch);
+
+        Decoder(InputStream in) {
+            this.in = new DataInputStream(in);
+        }
+
+        Object readValue() throws IOException {
+            int type = in.readUnsignedByte();
+            switch (type) {
+                case TYPE_NULL:
+                    return null;
+                case TYPE_BOOLEAN:
+                    return in.readBoolean();
+                case TYPE_BYTE:
+                    return in.readByte();
+                case TYPE_SHORT:
+                    return in.readShort();
+                case TYPE_CHAR:
+                    return in.readChar();
+                case TYPE_INT:
+                    return in.readInt();
+                case TYPE_LONG:
+                    return in.readLong();
+                case TYPE_FLOAT:
+                    return in.readFloat();
+                case TYPE_DOUBLE:
+                    return in.readDouble();
+                case TYPE_STRING:
+                    return readString();
+                case TYPE_BOOLEAN_ARRAY:
+                    boolean[] booleans = new boolean[readLength()];
+                    for (int i = 0; i < booleans.length; i++) {
+                        booleans[i] = in.readBoolean();
+                    }
+                    return booleans;
+                case TYPE_BYTE_ARRAY:
+                    byte[] bytes = new byte[readLength()];
+                    in.readFully(bytes);
+                    return bytes;
+                case TYPE_SHORT_ARRAY:
+                    return readShorts();
+                case TYPE_CHAR_ARRAY:
+                    return readChars();
+                case TYPE_INT_ARRAY:
+                    return readInts();
+                case TYPE_LONG_ARRAY:
+                    return readLongs();
+                case TYPE_FLOAT_ARRAY:
+                    return readFloats();
+                case TYPE_DOUBLE_ARRAY:
+                    return readDoubles();
+                case TYPE_STRING_ARRAY:
+                    String[] strings = new String[readLength()];
+                    for (int i = 0; i < strings.length; i++) {
+                        int stringType = in.readUnsignedByte();
+                        if (stringType == TYPE_STRING) {
+                            strings[i] = readString();
+                        } else if (stringType != TYPE_NULL) {
+                            throw new IOException("Unexpected type in string array: " + stringType);
+                        }
+                    }
+                    return strings;
+                case TYPE_LIST:
+                    return readCollection(new ArrayList<>());
+                case TYPE_SET:
+                    return readCollection(new LinkedHashSet<>());
+                case TYPE_MAP:
+                    return readMap();
+                case TYPE_LONG_HASH_MAP:
+                    return readLongHashMap();
+                case TYPE_LONG_HASH_SET:
+                    return readLongHashSet();
+                case TYPE_MULTIMAP:
+                    return readMultimap();
+                default:
+                    throw new IOException("Unknown type: " + type);
+            }
+        }
+
+        private String readString() throws IOException {
+            byte[] bytes = new byte[readLength()];
+            in.readFully(bytes);
+            return new String(bytes, UTF8);
+        }
+
+        private short[] readShorts() throws IOException {
+            short[] values = new short[readLength()];
+            int chunk = SCRATCH_SIZE / 2;
+            for (int i = 0; i < values.length; i += chunk) {
+                int count = Math.min(chunk, values.length - i);
+                in.readFully(scratch, 0, count * 2);
+                scratchBuffer.asShortBuffer().get(values, i, count);
+            }
+            return values;
+        }
+
+        private char[] readChars() throws IOException {
+            char[] values = new char[readLength()];
+            int chunk = SCRATCH_SIZE / 2;
+            for (int i = 0; i < values.length; i += chunk) {
+                int count = Math.min(chunk, values.length - i);
+                in.readFully(scratch, 0, count * 2);
+                scratchBuffer.asCharBuffer().get(values, i, count);
+            }
+            return values;
+        }
+
+        private int[] readInts() throws IOException {
+            int[] values = new int[readLength()];
+            int chunk = SCRATCH_SIZE / 4;
+            for (int i = 0; i < values.length; i += chunk) {
+                int count = Math.min(chunk, values.length - i);
+                in.readFully(scratch, 0, count * 4);
+                scratchBuffer.asIntBuffer().get(values, i, count);
+            }
+            return values;
+        }
+
+        private long[] readLongs() throws IOException {
+            long[] values = new long[readLength()];
+            int chunk = SCRATCH_SIZE / 8;
+            for (int i = 0; i < values.length; i += chunk) {
+                int count = Math.min(chunk, values.length - i);
+                in.readFully(scratch, 0, count * 8);
+                scratchBuffer.asLongBuffer().get(values, i, count);
+            }
+            return values;
+        }
+
+        private float[] readFloats() throws IOException {
+            float[] values = new float[readLength()];
+            int chunk = SCRATCH_SIZE / 4;
+            for (int i = 0; i < values.length; i += chunk) {
+                int count = Math.min(chunk, values.length - i);
+                in.readFully(scratch, 0, count * 4);
+                scratchBuffer.asFloatBuffer().get(values, i, count);
+            }
+            return values;
+        }
+
+        private double[] readDoubles() throws IOException {
+            double[] values = new double[readLength()];
+            int chunk = SCRATCH_SIZE / 8;
+            for (int i = 0; i < values.length; i += chunk) {
+                int count = Math.min(chunk, values.length - i);
+                in.readFully(scratch, 0, count * 8);
+                scratchBuffer.asDoubleBuffer().get(values, i, count);
+            }
+            return values;
+        }
+
+        private <C extends Collection<Object>> C readCollection(C collection) throws IOException {
+            int size = readLength();
+            for (int i = 0; i < size; i++) {
+                collection.add(readValue());
+            }
+            return collection;
+        }
+
+        private Map<Object, Object> readMap() throws IOException {
+            int size = readLength();
+            Map<Object, Object> map = new LinkedHashMap<>();
+            for (int i = 0; i < size; i++) {
+                Object key = readValue();
+                map.put(key, readValue());
+            }
+            return map;
+        }
+
+        private LongHashMap<Object> readLongHashMap() throws IOException {
+            int size = readLength();
+            LongHashMap<Object> map = new LongHashMap<>();
+            if (size > 0) {
+                map.reserveRoom(size);
+            }
+            for (int i = 0; i < size; i++) {
+                long key = in.readLong();
+                map.put(key, readValue());
+            }
+            return map;
+        }
+
+        private LongHashSet readLongHashSet() throws IOException {
+            long[] keys = readLongs();
+            LongHashSet set = new LongHashSet();
+            if (keys.length > 0) {
+                set.reserveRoom(keys.length);
+            }
+            for (long key : keys) {
+                set.add(key);
+            }
+            return set;
+        }
+
+        private Multimap<Object, Object> readMultimap() throws IOException {
+            int listTypeOrdinal = in.readUnsignedByte();
+            Multimap.ListType[] listTypes = Multimap.ListType.values();
+            if (listTypeOrdinal >= listTypes.length) {
+                throw new IOException("Unknown list type: " + listTypeOrdinal);
+            }
+            int maxElementsPerKey = readLength();
+            Multimap<Object, Object> multimap = Multimap.create(listTypes[listTypeOrdinal], maxElementsPerKey);
+            int size = readLength();
+            for (int i = 0; i < size; i++) {
+                Object key = readValue();
+                multimap.putElements(key, readCollection(new ArrayList<>()));
+            }
+            return multimap;
+        }
+
+        /** Reads a variable length integer written by {@link Encoder#writeLength(int)}. */
+        private int readLength() throws IOException {
+            int length = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                int b = in.readUnsignedByte();
+                length |= (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    if (length < 0) {
+                        throw new IOException("Invalid length: " + length);
+                    }
+                    return length;
+                }
+            }
+            throw new IOException("Invalid length encoding");
+        }
+    }
+
+}
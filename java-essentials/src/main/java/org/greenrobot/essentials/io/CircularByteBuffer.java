@@ -16,19 +16,75 @@
 
 package org.greenrobot.essentials.io;
 
+import org.greenrobot.essentials.PrimitiveArrayUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.ScatteringByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
 /**
  * A circular byte buffer (also called ring buffer) allows putting and and getting bytes in a FIFO way. Typical use
  * cases are (usually concurrent/asynchronous) producers and consumers operating on bytes. This enables building a
  * multi-threaded processing pipeline.
  * <p/>
- * All put&get methods are non-blocking.
+ * All put&get methods are non-blocking, except putFully and getFully, which block until all bytes were transferred
+ * (or until the given timeout elapsed). Blocked threads wait on a {@link Condition} (no busy waiting) and get signalled
+ * by operations changing the buffer, which makes this class usable as a bounded byte queue between threads.
+ * <p/>
+ * Locking uses a {@link ReentrantLock} instead of monitors (synchronized): on Java 21+, virtual threads blocking on the
+ * lock or waiting in putFully/getFully unmount from their carrier threads instead of pinning them.
+ * <p/>
+ * For NIO, data can be transferred from and to ByteBuffers and channels. Channels operate directly on the internal
+ * buffer without intermediate copies; the readable and writable regions are exposed as one or two ByteBuffer views
+ * (two if the region wraps around the end of the internal buffer), see {@link #readableRegions()} and
+ * {@link #writableRegions()}.
+ * <p/>
+ * By default, a heap byte array backs the buffer. Alternatively, use {@link #allocateDirect(int)} for off-heap memory
+ * (not visible to the GC), or {@link #mapFile(File, int)} for a memory-mapped file, which also persists the get and put
+ * indexes: data put into it survives a process restart (e.g. for spill buffers).
  * <p/>
- * This class is thread-safe.
+ * Primitive values (int and long in little or big endian, and unsigned varints) can be put and got as a whole using a
+ * single lock acquisition. Putting a primitive is all-or-nothing: it fails if there is not enough free space. Getting
+ * a primitive throws a {@link BufferUnderflowException} if not all of its bytes are available.
+ * <p/>
+ * This class is thread-safe. If there is exactly one producer thread and one consumer thread, consider
+ * {@link SpscCircularByteBuffer}, which avoids acquiring a lock for each operation.
  */
 public class CircularByteBuffer {
+    /** Magic int of the header of files used by {@link #mapFile(File, int)}. */
+    private static final int FILE_MAGIC = 0x43424221;
+    /** Header (magic, capacity, indexes) of files used by {@link #mapFile(File, int)}. */
+    private static final int FILE_HEADER_SIZE = 16;
+    private static final int FILE_OFFSET_INDEXES = 8;
+
+    /** Backing array (heap); null if backed by {@link #storage}. */
     private final byte[] buffer;
+    /** Backing ByteBuffer (direct or mapped); null if backed by {@link #buffer}. */
+    private final ByteBuffer storage;
+    /** Mapped file including the header; null if not backed by a file. */
+    private final MappedByteBuffer mapped;
     private final int capacity;
 
+    private final ReentrantLock lock = new ReentrantLock();
+    /** Signalled when bytes were got or cleared (putFully waits for it). */
+    private final Condition notFull = lock.newCondition();
+    /** Signalled when bytes were put (getFully waits for it). */
+    private final Condition notEmpty = lock.newCondition();
+
     private int available;
     private int idxGet;
     private int idxPut;
@@ -40,27 +96,188 @@ public class CircularByteBuffer {
     public CircularByteBuffer(int capacity) {
         this.capacity = capacity;
         buffer = new byte[this.capacity];
+        storage = null;
+        mapped = null;
+    }
+
+    private CircularByteBuffer(ByteBuffer storage, MappedByteBuffer mapped) {
+        this.capacity = storage.capacity();
+        this.storage = storage;
+        this.mapped = mapped;
+        buffer = null;
+    }
+
+    /** Creates a buffer backed by off-heap memory (a direct ByteBuffer). */
+    public static CircularByteBuffer allocateDirect(int capacity) {
+        return new CircularByteBuffer(ByteBuffer.allocateDirect(capacity), null);
+    }
+
+    /**
+     * Creates a buffer backed by the given memory-mapped file, which is created if it does not exist yet. Besides the
+     * data, the file also stores the indexes: if the file was used before, the returned buffer contains the bytes that
+     * were available when the file was used last.
+     * <p/>
+     * Writes go to the OS page cache, so they survive crashes of the process. To make them survive a crash of the OS
+     * (or power loss), call {@link #force()}.
+     *
+     * @throws IOException if the file exists with a different capacity or is corrupt
+     */
+    public static CircularByteBuffer mapFile(File file, int capacity) throws IOException {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Illegal capacity: " + capacity);
+        }
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        MappedByteBuffer mapped;
+        try {
+            boolean existing = randomAccessFile.length() > 0;
+            if (existing && randomAccessFile.length() != FILE_HEADER_SIZE + capacity) {
+                throw new IOException("File size " + randomAccessFile.length() + " does not match capacity " +
+                        capacity + ": " + file.getPath());
+            }
+            // The mapping stays valid after the channel was closed
+            mapped = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, FILE_HEADER_SIZE + capacity);
+            if (!existing) {
+                mapped.putInt(0, FILE_MAGIC);
+                mapped.putInt(4, capacity);
+            } else if (mapped.getInt(0) != FILE_MAGIC || mapped.getInt(4) != capacity) {
+                throw new IOException("Not a circular byte buffer file of capacity " + capacity + ": " +
+                        file.getPath());
+            }
+        } finally {
+            randomAccessFile.close();
+        }
+
+        ByteBuffer storage = mapped.duplicate();
+        ((Buffer) storage).position(FILE_HEADER_SIZE);
+        CircularByteBuffer circularByteBuffer = new CircularByteBuffer(storage.slice(), mapped);
+        circularByteBuffer.loadIndexes();
+        return circularByteBuffer;
+    }
+
+    private void loadIndexes() throws IOException {
+        long indexes = mapped.getLong(FILE_OFFSET_INDEXES);
+        int storedIdxGet = (int) (indexes >>> 32);
+        int storedAvailable = (int) indexes;
+        if (storedIdxGet < 0 || storedIdxGet >= capacity || storedAvailable < 0 || storedAvailable > capacity) {
+            throw new IOException("Corrupt indexes: " + storedIdxGet + ", " + storedAvailable);
+        }
+        idxGet = storedIdxGet;
+        available = storedAvailable;
+        idxPut = (idxGet + available) % capacity;
+    }
+
+    /**
+     * Called with the lock held after the indexes changed. Persists the indexes with a single (atomic) 8 byte write if
+     * backed by a file, and wakes up a thread blocked in getFully (if bytes were added) or putFully (if bytes were
+     * removed). Only one waiter is signalled; if it can proceed, it passes the signal on (see
+     * {@link #awaitChange(Condition, boolean, boolean, long)}).
+     *
+     * @param availableDelta change of the available byte count (positive if bytes were added)
+     */
+    private void indexesChanged(int availableDelta) {
+        if (mapped != null) {
+            mapped.putLong(FILE_OFFSET_INDEXES, ((long) idxGet << 32) | available);
+        }
+        if (availableDelta > 0) {
+            notEmpty.signal();
+        } else if (availableDelta < 0) {
+            notFull.signal();
+        }
+    }
+
+    /**
+     * If backed by a file, forces all changes to be written to the storage device (see
+     * {@link MappedByteBuffer#force()}); otherwise does nothing.
+     */
+    public void force() {
+        lock.lock();
+        try {
+            if (mapped != null) {
+                mapped.force();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** True if the buffer is backed by off-heap memory (direct or memory-mapped). */
+    public boolean isDirect() {
+        return buffer == null;
+    }
+
+    private byte getByte(int index) {
+        return buffer != null ? buffer[index] : storage.get(index);
+    }
+
+    private void putByte(int index, byte value) {
+        if (buffer != null) {
+            buffer[index] = value;
+        } else {
+            storage.put(index, value);
+        }
+    }
+
+    private void copyOut(int index, byte[] dst, int off, int len) {
+        if (buffer != null) {
+            System.arraycopy(buffer, index, dst, off, len);
+        } else {
+            view(index, len).get(dst, off, len);
+        }
+    }
+
+    private void copyIn(byte[] src, int off, int index, int len) {
+        if (buffer != null) {
+            System.arraycopy(src, off, buffer, index, len);
+        } else {
+            view(index, len).put(src, off, len);
+        }
+    }
+
+    /** A view on the given range of the backing storage (position 0, capacity length). */
+    private ByteBuffer view(int index, int length) {
+        if (buffer != null) {
+            return ByteBuffer.wrap(buffer, index, length).slice();
+        } else {
+            ByteBuffer view = storage.duplicate();
+            // Cast for compatibility with Java 9+ covariant return types
+            ((Buffer) view).limit(index + length);
+            ((Buffer) view).position(index);
+            return view.slice();
+        }
     }
 
     /**
      * Clears all data from the buffer.
      */
-    public synchronized void clear() {
-        idxGet = idxPut = available = 0;
+    public void clear() {
+        lock.lock();
+        try {
+            int removed = available;
+            idxGet = idxPut = available = 0;
+            indexesChanged(-removed);
+        } finally {
+            lock.unlock();
+        }
     }
 
 
     /**
      * Gets a single byte return or -1 if no data is available.
      */
-    public synchronized int get() {
-        if (available == 0) {
-            return -1;
+    public int get() {
+        lock.lock();
+        try {
+            if (available == 0) {
+                return -1;
+            }
+            byte value = getByte(idxGet);
+            idxGet = (idxGet + 1) % capacity;
+            available--;
+            indexesChanged(-1);
+            return value;
+        } finally {
+            lock.unlock();
         }
-        byte value = buffer[idxGet];
-        idxGet = (idxGet + 1) % capacity;
-        available--;
-        return value;
     }
 
     /**
@@ -77,30 +294,36 @@ public class CircularByteBuffer {
      *
      * @return number of bytes actually got from this buffer (0 if no bytes are available)
      */
-    public synchronized int get(byte[] dst, int off, int len) {
-        if (available == 0) {
-            return 0;
-        }
+    public int get(byte[] dst, int off, int len) {
+        lock.lock();
+        try {
+            if (available == 0) {
+                return 0;
+            }
 
-        // limit is last index to read + 1
-        int limit = idxGet < idxPut ? idxPut : capacity;
-        int count = Math.min(limit - idxGet, len);
-        System.arraycopy(buffer, idxGet, dst, off, count);
-        idxGet += count;
+            // limit is last index to read + 1
+            int limit = idxGet < idxPut ? idxPut : capacity;
+            int count = Math.min(limit - idxGet, len);
+            copyOut(idxGet, dst, off, count);
+            idxGet += count;
 
-        if (idxGet == capacity) {
-            // Array end reached, check if we have more
-            int count2 = Math.min(len - count, idxPut);
-            if (count2 > 0) {
-                System.arraycopy(buffer, 0, dst, off + count, count2);
-                idxGet = count2;
-                count += count2;
-            } else {
-                idxGet = 0;
+            if (idxGet == capacity) {
+                // Array end reached, check if we have more
+                int count2 = Math.min(len - count, idxPut);
+                if (count2 > 0) {
+                    copyOut(0, dst, off + count, count2);
+                    idxGet = count2;
+                    count += count2;
+                } else {
+                    idxGet = 0;
+                }
             }
+            available -= count;
+            indexesChanged(-count);
+            return count;
+        } finally {
+            lock.unlock();
         }
-        available -= count;
-        return count;
     }
 
 
@@ -109,14 +332,20 @@ public class CircularByteBuffer {
      *
      * @return true if the byte was put, or false if the buffer is full
      */
-    public synchronized boolean put(byte value) {
-        if (available == capacity) {
-            return false;
+    public boolean put(byte value) {
+        lock.lock();
+        try {
+            if (available == capacity) {
+                return false;
+            }
+            putByte(idxPut, value);
+            idxPut = (idxPut + 1) % capacity;
+            available++;
+            indexesChanged(1);
+            return true;
+        } finally {
+            lock.unlock();
         }
-        buffer[idxPut] = value;
-        idxPut = (idxPut + 1) % capacity;
-        available++;
-        return true;
     }
 
     /**
@@ -133,37 +362,615 @@ public class CircularByteBuffer {
      *
      * @return number of bytes actually put into this buffer (0 if the buffer is full)
      */
-    public synchronized int put(byte[] src, int off, int len) {
-        if (available == capacity) {
+    public int put(byte[] src, int off, int len) {
+        lock.lock();
+        try {
+            if (available == capacity) {
+                return 0;
+            }
+
+            // limit is last index to put + 1
+            int limit = idxPut < idxGet ? idxGet : capacity;
+            int count = Math.min(limit - idxPut, len);
+            copyIn(src, off, idxPut, count);
+            idxPut += count;
+
+            if (idxPut == capacity) {
+                // Array end reached, check if we have more
+                int count2 = Math.min(len - count, idxGet);
+                if (count2 > 0) {
+                    copyIn(src, off + count, 0, count2);
+                    idxPut = count2;
+                    count += count2;
+                } else {
+                    idxPut = 0;
+                }
+            }
+            available += count;
+            indexesChanged(count);
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Puts all given bytes, blocking until there is enough free space.
+     *
+     * @throws InterruptedException if interrupted while waiting; some bytes may have been put already
+     */
+    public void putFully(byte[] src) throws InterruptedException {
+        putFully(src, 0, src.length, 0, null);
+    }
+
+    /**
+     * Puts all given bytes, blocking until there is enough free space.
+     *
+     * @throws InterruptedException if interrupted while waiting; some bytes may have been put already
+     */
+    public void putFully(byte[] src, int off, int len) throws InterruptedException {
+        putFully(src, off, len, 0, null);
+    }
+
+    /**
+     * Puts the given bytes, blocking until there is enough free space or until the timeout elapsed.
+     *
+     * @param unit null to wait without timeout (timeout is ignored)
+     * @return number of bytes put; less than len if the timeout elapsed
+     * @throws InterruptedException if interrupted while waiting; some bytes may have been put already
+     */
+    public int putFully(byte[] src, int off, int len, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = unit != null ? System.nanoTime() + unit.toNanos(timeout) : 0;
+        int count = put(src, off, len);
+        while (count < len) {
+            if (!awaitChange(notFull, true, unit != null, deadline)) {
+                break;
+            }
+            count += put(src, off + count, len - count);
+        }
+        return count;
+    }
+
+    /**
+     * Gets the requested bytes, blocking until all are available.
+     *
+     * @throws InterruptedException if interrupted while waiting; some bytes may have been got already
+     */
+    public void getFully(byte[] dst) throws InterruptedException {
+        getFully(dst, 0, dst.length, 0, null);
+    }
+
+    /**
+     * Gets the requested bytes, blocking until all are available.
+     *
+     * @throws InterruptedException if interrupted while waiting; some bytes may have been got already
+     */
+    public void getFully(byte[] dst, int off, int len) throws InterruptedException {
+        getFully(dst, off, len, 0, null);
+    }
+
+    /**
+     * Gets the requested bytes, blocking until all are available or until the timeout elapsed.
+     *
+     * @param unit null to wait without timeout (timeout is ignored)
+     * @return number of bytes got; less than len if the timeout elapsed
+     * @throws InterruptedException if interrupted while waiting; some bytes may have been got already
+     */
+    public int getFully(byte[] dst, int off, int len, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = unit != null ? System.nanoTime() + unit.toNanos(timeout) : 0;
+        int count = get(dst, off, len);
+        while (count < len) {
+            if (!awaitChange(notEmpty, false, unit != null, deadline)) {
+                break;
+            }
+            count += get(dst, off + count, len - count);
+        }
+        return count;
+    }
+
+    /**
+     * Waits on the given condition until there is free space (forPut) or available bytes (!forPut).
+     *
+     * @return false if the deadline was reached
+     */
+    private boolean awaitChange(Condition condition, boolean forPut, boolean timed, long deadline)
+            throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (forPut ? available == capacity : available == 0) {
+                if (timed) {
+                    long nanos = deadline - System.nanoTime();
+                    if (nanos <= 0) {
+                        return false;
+                    }
+                    condition.awaitNanos(nanos);
+                } else {
+                    condition.await();
+                }
+            }
+            // Only one waiter was signalled; as this one can proceed, others may be able to proceed, too
+            if (lock.hasWaiters(condition)) {
+                condition.signal();
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets as many bytes as available and as the given ByteBuffer has remaining.
+     *
+     * @return number of bytes actually got from this buffer (0 if no bytes are available)
+     */
+    public int get(ByteBuffer dst) {
+        lock.lock();
+        try {
+            int count = Math.min(available, dst.remaining());
+            int count1 = Math.min(count, capacity - idxGet);
+            dst.put(view(idxGet, count1));
+            if (count1 < count) {
+                dst.put(view(0, count - count1));
+            }
+            idxGet = (idxGet + count) % capacity;
+            available -= count;
+            indexesChanged(-count);
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Puts as many of the remaining bytes of the given ByteBuffer as possible into this buffer.
+     *
+     * @return number of bytes actually put into this buffer (0 if the buffer is full)
+     */
+    public int put(ByteBuffer src) {
+        lock.lock();
+        try {
+            int count = Math.min(capacity - available, src.remaining());
+            int count1 = Math.min(count, capacity - idxPut);
+            ByteBuffer srcPart = src.duplicate();
+            ((Buffer) srcPart).limit(srcPart.position() + count1);
+            view(idxPut, count1).put(srcPart);
+            if (count1 < count) {
+                ((Buffer) srcPart).limit(srcPart.position() + count - count1);
+                view(0, count - count1).put(srcPart);
+            }
+            ((Buffer) src).position(srcPart.position());
+            idxPut = (idxPut + count) % capacity;
+            available += count;
+            indexesChanged(count);
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns read-only views on the bytes currently available: an empty array if no bytes are available, one buffer,
+     * or two buffers if the available bytes wrap around. After consuming bytes from the views (e.g. by a gathering
+     * write), call {@link #skip(int)} to remove them from this buffer.
+     * <p/>
+     * The views are only valid until the next get or skip. Intended for a single consumer thread.
+     */
+    public ByteBuffer[] readableRegions() {
+        lock.lock();
+        try {
+            ByteBuffer[] regions = regions(idxGet, available);
+            for (int i = 0; i < regions.length; i++) {
+                regions[i] = regions[i].asReadOnlyBuffer();
+            }
+            return regions;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns views on the free space of this buffer: an empty array if the buffer is full, one buffer, or two buffers
+     * if the free space wraps around. After putting bytes into the views (e.g. by a scattering read), call
+     * {@link #commitPut(int)} to make them available.
+     * <p/>
+     * The views are only valid until the next put or commit. Intended for a single producer thread.
+     */
+    public ByteBuffer[] writableRegions() {
+        lock.lock();
+        try {
+            return regions(idxPut, capacity - available);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ByteBuffer[] regions(int index, int length) {
+        if (length == 0) {
+            return new ByteBuffer[0];
+        }
+        int length1 = Math.min(length, capacity - index);
+        ByteBuffer region1 = view(index, length1);
+        if (length1 == length) {
+            return new ByteBuffer[]{region1};
+        }
+        return new ByteBuffer[]{region1, view(0, length - length1)};
+    }
+
+    /**
+     * Makes the given count of bytes available, which were put directly into the views of {@link #writableRegions()}.
+     *
+     * @throws IllegalArgumentException if count is negative or exceeds the free bytes
+     */
+    public void commitPut(int count) {
+        lock.lock();
+        try {
+            if (count < 0 || count > capacity - available) {
+                throw new IllegalArgumentException("Illegal count: " + count + ", free: " + (capacity - available));
+            }
+            idxPut = (idxPut + count) % capacity;
+            available += count;
+            indexesChanged(count);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads bytes from the given channel directly into the free space of this buffer (a single read operation; using a
+     * scattering read if the free space wraps around and the channel supports it). If the free space wraps around and
+     * the channel does not support scattering reads, only a non-blocking channel is read a second time for the
+     * wrapped part; otherwise, a blocking read must not wait after data has arrived. The channel I/O is done without
+     * holding the lock of this buffer, so consumers are not blocked; thus, there must be no concurrent puts.
+     *
+     * @return number of bytes read (0 if the buffer is full or the non-blocking channel had no data), or -1 if the
+     * channel reached its end
+     */
+    public int readFrom(ReadableByteChannel channel) throws IOException {
+        ByteBuffer[] regions = writableRegions();
+        if (regions.length == 0) {
             return 0;
         }
+        long count;
+        if (regions.length > 1 && channel instanceof ScatteringByteChannel) {
+            count = ((ScatteringByteChannel) channel).read(regions);
+        } else {
+            count = channel.read(regions[0]);
+            if (count > 0 && regions.length > 1 && !regions[0].hasRemaining() && isNonBlocking(channel)) {
+                int count2 = channel.read(regions[1]);
+                if (count2 > 0) {
+                    count += count2;
+                }
+            }
+        }
+        if (count > 0) {
+            commitPut((int) count);
+        }
+        return (int) count;
+    }
 
-        // limit is last index to put + 1
-        int limit = idxPut < idxGet ? idxGet : capacity;
-        int count = Math.min(limit - idxPut, len);
-        System.arraycopy(src, off, buffer, idxPut, count);
-        idxPut += count;
+    private static boolean isNonBlocking(Channel channel) {
+        return channel instanceof SelectableChannel && !((SelectableChannel) channel).isBlocking();
+    }
 
-        if (idxPut == capacity) {
-            // Array end reached, check if we have more
-            int count2 = Math.min(len - count, idxGet);
-            if (count2 > 0) {
-                System.arraycopy(src, off + count, buffer, 0, count2);
-                idxPut = count2;
-                count += count2;
+    /**
+     * Writes the available bytes of this buffer directly to the given channel (using a gathering write if the available
+     * bytes wrap around and the channel supports it). The channel I/O is done without holding the lock of this buffer,
+     * so producers are not blocked; thus, there must be no concurrent gets.
+     *
+     * @return number of bytes written (0 if no bytes are available or the non-blocking channel could not take any)
+     */
+    public int writeTo(WritableByteChannel channel) throws IOException {
+        ByteBuffer[] regions = readableRegions();
+        if (regions.length == 0) {
+            return 0;
+        }
+        long count;
+        if (regions.length > 1 && channel instanceof GatheringByteChannel) {
+            count = ((GatheringByteChannel) channel).write(regions);
+        } else {
+            count = channel.write(regions[0]);
+            if (regions.length > 1 && !regions[0].hasRemaining()) {
+                count += channel.write(regions[1]);
+            }
+        }
+        skip((int) count);
+        return (int) count;
+    }
+
+    /** Puts the int in big endian byte order if there are at least 4 free bytes; otherwise returns false. */
+    public boolean putIntBE(int value) {
+        lock.lock();
+        try {
+            if (capacity - available < 4) {
+                return false;
+            }
+            if (idxPut <= capacity - 4) {
+                if (buffer != null) {
+                    PrimitiveArrayUtils.getInstance().putIntBE(buffer, idxPut, value);
+                } else {
+                    storage.putInt(idxPut, value);
+                }
+            } else {
+                putWrapped(value, 4, true);
+            }
+            advancePut(4);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Puts the int in little endian byte order if there are at least 4 free bytes; otherwise returns false. */
+    public boolean putIntLE(int value) {
+        lock.lock();
+        try {
+            if (capacity - available < 4) {
+                return false;
+            }
+            if (idxPut <= capacity - 4) {
+                if (buffer != null) {
+                    PrimitiveArrayUtils.getInstance().putIntLE(buffer, idxPut, value);
+                } else {
+                    storage.putInt(idxPut, Integer.reverseBytes(value));
+                }
             } else {
-                idxPut = 0;
+                putWrapped(value, 4, false);
+            }
+            advancePut(4);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Puts the long in big endian byte order if there are at least 8 free bytes; otherwise returns false. */
+    public boolean putLongBE(long value) {
+        lock.lock();
+        try {
+            if (capacity - available < 8) {
+                return false;
+            }
+            if (idxPut <= capacity - 8) {
+                if (buffer != null) {
+                    PrimitiveArrayUtils.getInstance().putLongBE(buffer, idxPut, value);
+                } else {
+                    storage.putLong(idxPut, value);
+                }
+            } else {
+                putWrapped(value, 8, true);
+            }
+            advancePut(8);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Puts the long in little endian byte order if there are at least 8 free bytes; otherwise returns false. */
+    public boolean putLongLE(long value) {
+        lock.lock();
+        try {
+            if (capacity - available < 8) {
+                return false;
+            }
+            if (idxPut <= capacity - 8) {
+                if (buffer != null) {
+                    PrimitiveArrayUtils.getInstance().putLongLE(buffer, idxPut, value);
+                } else {
+                    storage.putLong(idxPut, Long.reverseBytes(value));
+                }
+            } else {
+                putWrapped(value, 8, false);
+            }
+            advancePut(8);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Puts the int as an unsigned varint (7 bits per byte, least significant group first) taking 1-5 bytes; negative
+     * values always take 5 bytes. Returns false if there is not enough free space.
+     */
+    public boolean putVarInt(int value) {
+        return putVarLong(value & 0xffffffffL);
+    }
+
+    /**
+     * Puts the long as an unsigned varint (7 bits per byte, least significant group first) taking 1-10 bytes; negative
+     * values always take 10 bytes. Returns false if there is not enough free space.
+     */
+    public boolean putVarLong(long value) {
+        lock.lock();
+        try {
+            int size = 1;
+            for (long rest = value >>> 7; rest != 0; rest >>>= 7) {
+                size++;
+            }
+            if (capacity - available < size) {
+                return false;
+            }
+            for (int i = 0; i < size - 1; i++) {
+                putByte((idxPut + i) % capacity, (byte) ((value & 0x7f) | 0x80));
+                value >>>= 7;
             }
+            putByte((idxPut + size - 1) % capacity, (byte) value);
+            advancePut(size);
+            return true;
+        } finally {
+            lock.unlock();
         }
+    }
+
+    /** Gets a big endian int; throws {@link BufferUnderflowException} if less than 4 bytes are available. */
+    public int getIntBE() {
+        lock.lock();
+        try {
+            checkAvailable(4);
+            int value;
+            if (idxGet <= capacity - 4) {
+                value = buffer != null ? PrimitiveArrayUtils.getInstance().getIntBE(buffer, idxGet) :
+                        storage.getInt(idxGet);
+            } else {
+                value = (int) getWrapped(4, true);
+            }
+            advanceGet(4);
+            return value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Gets a little endian int; throws {@link BufferUnderflowException} if less than 4 bytes are available. */
+    public int getIntLE() {
+        lock.lock();
+        try {
+            checkAvailable(4);
+            int value;
+            if (idxGet <= capacity - 4) {
+                value = buffer != null ? PrimitiveArrayUtils.getInstance().getIntLE(buffer, idxGet) :
+                        Integer.reverseBytes(storage.getInt(idxGet));
+            } else {
+                value = (int) getWrapped(4, false);
+            }
+            advanceGet(4);
+            return value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Gets a big endian long; throws {@link BufferUnderflowException} if less than 8 bytes are available. */
+    public long getLongBE() {
+        lock.lock();
+        try {
+            checkAvailable(8);
+            long value;
+            if (idxGet <= capacity - 8) {
+                value = buffer != null ? PrimitiveArrayUtils.getInstance().getLongBE(buffer, idxGet) :
+                        storage.getLong(idxGet);
+            } else {
+                value = getWrapped(8, true);
+            }
+            advanceGet(8);
+            return value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Gets a little endian long; throws {@link BufferUnderflowException} if less than 8 bytes are available. */
+    public long getLongLE() {
+        lock.lock();
+        try {
+            checkAvailable(8);
+            long value;
+            if (idxGet <= capacity - 8) {
+                value = buffer != null ? PrimitiveArrayUtils.getInstance().getLongLE(buffer, idxGet) :
+                        Long.reverseBytes(storage.getLong(idxGet));
+            } else {
+                value = getWrapped(8, false);
+            }
+            advanceGet(8);
+            return value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets an unsigned varint written by {@link #putVarInt(int)}.
+     *
+     * @throws BufferUnderflowException if the varint is not completely available yet (nothing is consumed)
+     * @throws IllegalStateException if the data is not a valid varint for an int (longer than 5 bytes)
+     */
+    public int getVarInt() {
+        lock.lock();
+        try {
+            return (int) getVarLong(5);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets an unsigned varint written by {@link #putVarLong(long)}.
+     *
+     * @throws BufferUnderflowException if the varint is not completely available yet (nothing is consumed)
+     * @throws IllegalStateException if the data is not a valid varint (longer than 10 bytes)
+     */
+    public long getVarLong() {
+        lock.lock();
+        try {
+            return getVarLong(10);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long getVarLong(int maxSize) {
+        long value = 0;
+        for (int i = 0; i < maxSize; i++) {
+            if (i == available) {
+                throw new BufferUnderflowException();
+            }
+            byte b = getByte((idxGet + i) % capacity);
+            value |= (long) (b & 0x7f) << (i * 7);
+            if (b >= 0) {
+                advanceGet(i + 1);
+                return value;
+            }
+        }
+        throw new IllegalStateException("Malformed varint exceeding " + maxSize + " bytes");
+    }
+
+    private void checkAvailable(int count) {
+        if (available < count) {
+            throw new BufferUnderflowException();
+        }
+    }
+
+    /** Puts the lowest size bytes of the value byte by byte, wrapping around the end if required. */
+    private void putWrapped(long value, int size, boolean bigEndian) {
+        for (int i = 0; i < size; i++) {
+            int shift = bigEndian ? (size - 1 - i) << 3 : i << 3;
+            putByte((idxPut + i) % capacity, (byte) (value >>> shift));
+        }
+    }
+
+    /** Gets size bytes byte by byte, wrapping around the end if required. */
+    private long getWrapped(int size, boolean bigEndian) {
+        long value = 0;
+        for (int i = 0; i < size; i++) {
+            int shift = bigEndian ? (size - 1 - i) << 3 : i << 3;
+            value |= (getByte((idxGet + i) % capacity) & 0xffL) << shift;
+        }
+        return value;
+    }
+
+    private void advancePut(int count) {
+        idxPut = (idxPut + count) % capacity;
         available += count;
-        return count;
+        indexesChanged(count);
+    }
+
+    private void advanceGet(int count) {
+        idxGet = (idxGet + count) % capacity;
+        available -= count;
+        indexesChanged(-count);
     }
 
     /**
      * Return the first byte a <b>get</b> would return or -1 if no data is available.
      */
-    public synchronized int peek() {
-        return available > 0 ? buffer[idxGet] : -1;
+    public int peek() {
+        lock.lock();
+        try {
+            return available > 0 ? getByte(idxGet) : -1;
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -171,13 +978,19 @@ public class CircularByteBuffer {
      *
      * @return number of bytes actually skipped from this buffer (0 if no bytes are available)
      */
-    public synchronized int skip(int count) {
-        if (count > available) {
-            count = available;
+    public int skip(int count) {
+        lock.lock();
+        try {
+            if (count > available) {
+                count = available;
+            }
+            idxGet = (idxGet + count) % capacity;
+            available -= count;
+            indexesChanged(-count);
+            return count;
+        } finally {
+            lock.unlock();
         }
-        idxGet = (idxGet + count) % capacity;
-        available -= count;
-        return count;
     }
 
 
@@ -191,38 +1004,68 @@ public class CircularByteBuffer {
     /**
      * Returns the number of bytes available and can be get without additional puts.
      */
-    public synchronized int available() {
-        return available;
+    public int available() {
+        lock.lock();
+        try {
+            return available;
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
      * Returns the number of free bytes available that can still be put without additional gets.
      */
-    public synchronized int free() {
-        return capacity - available;
+    public int free() {
+        lock.lock();
+        try {
+            return capacity - available;
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
      * Usually you should prefer one of the get() methods.
      * If you still want direct access (less safe) you can use this method in combination with {@link #rawIndexGet()}
      * and {@link #rawIndexPut()}.
+     *
+     * @throws UnsupportedOperationException if the buffer is not backed by a heap array (see {@link #isDirect()})
      */
-    public synchronized byte[] rawBuffer() {
-        return buffer;
+    public byte[] rawBuffer() {
+        lock.lock();
+        try {
+            if (buffer == null) {
+                throw new UnsupportedOperationException("Not backed by an array");
+            }
+            return buffer;
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
      * The index to get (read) from.
      */
-    public synchronized int rawIndexGet() {
-        return idxGet;
+    public int rawIndexGet() {
+        lock.lock();
+        try {
+            return idxGet;
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
      * The index to put (write) to.
      */
-    public synchronized int rawIndexPut() {
-        return idxPut;
+    public int rawIndexPut() {
+        lock.lock();
+        try {
+            return idxPut;
+        } finally {
+            lock.unlock();
+        }
     }
 
 }
@@ -16,20 +16,43 @@
 
 package org.greenrobot.essentials.io;
 
+import org.greenrobot.essentials.hash.Murmur3F;
+import org.greenrobot.essentials.hash.PrimitiveDataChecksum;
+
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Reader;
+import java.io.RandomAccessFile;
 import java.io.Writer;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.zip.Checksum;
 
 /**
@@ -38,12 +61,74 @@ import java.util.zip.Checksum;
  * @author Markus
  */
 public class FileUtils {
+    /** Maximum bytes per transferTo call; some platforms fail or transfer less with larger counts. */
+    private static final long MAX_TRANSFER_SIZE = 8 * 1024 * 1024;
+
+    /** Default chunk size of {@link #getMurmur3FTreeHash(File)}. */
+    public static final int TREE_HASH_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    /** Buffer size of {@link #writeObject(File, Object, ObjectCodec)} and {@link #readObject(File, ObjectCodec)}. */
+    private static final int OBJECT_BUFFER_SIZE = 64 * 1024;
+
+    /** Length (long) and checksum (long) following the encoded object. */
+    private static final int OBJECT_TRAILER_LENGTH = 16;
+
+    /** java.nio.file is available on Android since API level 26 only. */
+    private static final boolean NIO_FILES_AVAILABLE = isClassAvailable("java.nio.file.Files");
+
+    private static ExecutorService hashExecutor;
 
     public static byte[] readBytes(File file) throws IOException {
         FileInputStream is = new FileInputStream(file);
         return IoUtils.readAllBytesAndClose(is);
     }
 
+    /**
+     * Maps the whole file read-only into memory instead of reading it onto the heap. The mapping stays valid after
+     * this call (the file is closed already) and is released once the buffer is garbage collected.
+     *
+     * @throws IOException if the file is larger than 2 GB (see {@link #mapReadOnlyChunks(File, int)})
+     */
+    public static MappedByteBuffer mapReadOnly(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File too large to map at once (" + size + " bytes): " + file);
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        } finally {
+            IoUtils.safeClose(raf);
+        }
+    }
+
+    /**
+     * Maps the file read-only into memory as consecutive chunks, which also works for files larger than 2 GB. All
+     * chunks have the given size, except the last one, which may be smaller.
+     *
+     * @param chunkSize bytes per chunk (e.g. 1 GB)
+     */
+    public static MappedByteBuffer[] mapReadOnlyChunks(File file, int chunkSize) throws IOException {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Illegal chunk size: " + chunkSize);
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            int chunkCount = (int) ((size + chunkSize - 1) / chunkSize);
+            MappedByteBuffer[] chunks = new MappedByteBuffer[chunkCount];
+            for (int i = 0; i < chunkCount; i++) {
+                long position = (long) i * chunkSize;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(chunkSize, size - position));
+            }
+            return chunks;
+        } finally {
+            IoUtils.safeClose(raf);
+        }
+    }
+
     public static void writeBytes(File file, byte[] content) throws IOException {
         OutputStream out = new FileOutputStream(file);
         try {
@@ -53,6 +138,92 @@ public class FileUtils {
         }
     }
 
+    /**
+     * Writes the file atomically and durably: after a crash, the file has either its previous or the new content.
+     * The content is written to a temporary file in the same directory, which is synced and then renamed to the
+     * target file; finally, the directory is synced to persist the rename. For many small durable writes, consider
+     * {@link GroupCommitFileWriter}.
+     * <p/>
+     * Note: syncing directories requires java.nio.file (on Android, available since API level 26). Without it, the
+     * rename is still atomic, but may not be durable yet when this method returns.
+     */
+    public static void writeBytesAtomic(File file, byte[] content) throws IOException {
+        File tempFile = writeTempFileSynced(file, content);
+        renameAtomic(tempFile, file);
+        syncDirectory(getParentDir(file));
+    }
+
+    /** Like {@link #writeBytesAtomic(File, byte[])} for UTF-8 text. */
+    public static void writeUtf8Atomic(File file, CharSequence text) throws IOException {
+        writeBytesAtomic(file, text.toString().getBytes("UTF-8"));
+    }
+
+    /** Writes the content to a new temporary file next to the given file and syncs it to the storage device. */
+    static File writeTempFileSynced(File file, byte[] content) throws IOException {
+        File tempFile = File.createTempFile(file.getName() + ".", ".tmp", getParentDir(file));
+        FileOutputStream out = new FileOutputStream(tempFile);
+        boolean success = false;
+        try {
+            out.write(content);
+            out.getFD().sync();
+            success = true;
+        } finally {
+            IoUtils.safeClose(out);
+            if (!success) {
+                tempFile.delete();
+            }
+        }
+        return tempFile;
+    }
+
+    /**
+     * Renames the source file to the target file atomically, replacing the target; deletes the source on failure.
+     * Uses an atomic move of java.nio.file if available, which also replaces an existing target on Windows. Otherwise
+     * (Android before API level 26), falls back to {@link File#renameTo(File)}, which is atomic on POSIX systems.
+     */
+    static void renameAtomic(File source, File target) throws IOException {
+        if (NIO_FILES_AVAILABLE) {
+            try {
+                NioFiles.moveAtomic(source, target);
+            } catch (IOException e) {
+                source.delete();
+                throw e;
+            }
+        } else if (!source.renameTo(target)) {
+            source.delete();
+            throw new IOException("Could not rename " + source + " to " + target);
+        }
+    }
+
+    static File getParentDir(File file) {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir == null) {
+            throw new IllegalArgumentException("File has no parent directory: " + file);
+        }
+        return dir;
+    }
+
+    /**
+     * Syncs the directory entry changes (e.g. renames) to the storage device. Does nothing if java.nio.file is not
+     * available (Android before API level 26) or the platform cannot open directories (e.g. Windows).
+     *
+     * @throws IOException if the directory was opened, but syncing it failed
+     */
+    static void syncDirectory(File dir) throws IOException {
+        if (NIO_FILES_AVAILABLE) {
+            NioFiles.syncDirectory(dir);
+        }
+    }
+
+    private static boolean isClassAvailable(String className) {
+        try {
+            Class.forName(className);
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
     public static String readUtf8(File file) throws IOException {
         return readChars(file, "UTF-8");
     }
@@ -75,13 +246,13 @@ public class FileUtils {
         IoUtils.writeAllCharsAndClose(writer, text);
     }
 
-    /** Copies a file to another location. */
+    /** Copies a file to another location (without copying the data through user space if possible). */
     public static void copyFile(File from, File to) throws IOException {
-        InputStream in = new BufferedInputStream(new FileInputStream(from));
+        FileInputStream in = new FileInputStream(from);
         try {
-            OutputStream out = new BufferedOutputStream(new FileOutputStream(to));
+            FileOutputStream out = new FileOutputStream(to);
             try {
-                IoUtils.copyAllBytes(in, out);
+                transferAll(in.getChannel(), out.getChannel());
             } finally {
                 IoUtils.safeClose(out);
             }
@@ -90,6 +261,44 @@ public class FileUtils {
         }
     }
 
+    /**
+     * Transfers all bytes from the current position of the source channel to the end of it using
+     * {@link FileChannel#transferTo(long, long, WritableByteChannel)}, which lets the OS copy the data without going
+     * through user space if possible (e.g. sendfile on Linux). If transferTo makes no progress (not supported for the
+     * target), the remaining bytes are copied using a direct ByteBuffer. The source position is moved to the end.
+     *
+     * @return count of bytes transferred
+     */
+    public static long transferAll(FileChannel source, WritableByteChannel target) throws IOException {
+        long start = source.position();
+        long position = start;
+        long size = source.size();
+        while (position < size) {
+            long count = source.transferTo(position, Math.min(size - position, MAX_TRANSFER_SIZE), target);
+            if (count <= 0) {
+                source.position(position);
+                position += copyBuffered(source, target);
+                break;
+            }
+            position += count;
+        }
+        source.position(position);
+        return position - start;
+    }
+
+    private static long copyBuffered(FileChannel source, WritableByteChannel target) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+        long total = 0;
+        while (source.read(buffer) != -1) {
+            ((Buffer) buffer).flip();
+            while (buffer.hasRemaining()) {
+                total += target.write(buffer);
+            }
+            ((Buffer) buffer).clear();
+        }
+        return total;
+    }
+
     /** Copies a file to another location. */
     public static void copyFile(String fromFilename, String toFilename) throws IOException {
         copyFile(new File(fromFilename), new File(toFilename));
@@ -108,7 +317,10 @@ public class FileUtils {
         }
     }
 
-    /** To store an object in a quick & dirty way. */
+    /**
+     * To store an object in a quick & dirty way. For large data, consider
+     * {@link #writeObject(File, Object, ObjectCodec)} with {@link BinaryObjectCodec}, which is faster and checksummed.
+     */
     public static void writeObject(File file, Object object) throws IOException {
         FileOutputStream fileOut = new FileOutputStream(file);
         ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(fileOut));
@@ -122,6 +334,89 @@ public class FileUtils {
         }
     }
 
+    /**
+     * Writes the object using the given codec (e.g. {@link BinaryObjectCodec}) and syncs the file. The encoded bytes
+     * go through a buffer directly to the file channel, and are followed by their length and a checksum, which
+     * {@link #readObject(File, ObjectCodec)} verifies.
+     */
+    public static void writeObject(File file, Object object, ObjectCodec codec) throws IOException {
+        FileOutputStream fileOut = new FileOutputStream(file);
+        try {
+            FileChannel channel = fileOut.getChannel();
+            PrimitiveDataChecksum checksum = new PrimitiveDataChecksum(new Murmur3F());
+            ChecksumChannelOutputStream out = new ChecksumChannelOutputStream(channel, checksum);
+            codec.encode(object, out);
+            out.flush();
+            long length = out.getCount();
+            checksum.updateLong(length);
+            ByteBuffer trailer = ByteBuffer.allocate(OBJECT_TRAILER_LENGTH);
+            trailer.putLong(length).putLong(checksum.getValue());
+            ((Buffer) trailer).flip();
+            while (trailer.hasRemaining()) {
+                channel.write(trailer);
+            }
+            // Force sync
+            fileOut.getFD().sync();
+        } finally {
+            IoUtils.safeClose(fileOut);
+        }
+    }
+
+    /**
+     * Reads an object written by {@link #writeObject(File, Object, ObjectCodec)} using the same codec. The checksum is
+     * verified in a first pass over the file, so the codec never decodes corrupt bytes (e.g. a corrupt length, which
+     * could make it allocate huge arrays).
+     *
+     * @throws IOException if the file is corrupt (e.g. checksum mismatch or truncated) or the codec failed
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T readObject(File file, ObjectCodec codec) throws IOException, ClassNotFoundException {
+        FileInputStream fileIn = new FileInputStream(file);
+        try {
+            FileChannel channel = fileIn.getChannel();
+            long size = channel.size();
+            if (size < OBJECT_TRAILER_LENGTH) {
+                throw new IOException("File too short: " + file);
+            }
+            long length = size - OBJECT_TRAILER_LENGTH;
+            ByteBuffer trailer = ByteBuffer.allocate(OBJECT_TRAILER_LENGTH);
+            while (trailer.hasRemaining()) {
+                if (channel.read(trailer, length + trailer.position()) == -1) {
+                    throw new EOFException("File truncated: " + file);
+                }
+            }
+            if (trailer.getLong(0) != length) {
+                throw new IOException("Length mismatch (" + trailer.getLong(0) + " vs. " + length + "): " + file);
+            }
+
+            PrimitiveDataChecksum checksum = new PrimitiveDataChecksum(new Murmur3F());
+            ByteBuffer buffer = ByteBuffer.allocate(OBJECT_BUFFER_SIZE);
+            for (long position = 0; position < length; ) {
+                ((Buffer) buffer).clear();
+                ((Buffer) buffer).limit((int) Math.min(buffer.capacity(), length - position));
+                int read = channel.read(buffer, position);
+                if (read == -1) {
+                    throw new EOFException("File truncated: " + file);
+                }
+                checksum.update(buffer.array(), 0, read);
+                position += read;
+            }
+            checksum.updateLong(length);
+            if (trailer.getLong(8) != checksum.getValue()) {
+                throw new IOException("Checksum mismatch: " + file);
+            }
+
+            LimitedChannelInputStream in = new LimitedChannelInputStream(channel, length);
+            Object object = codec.decode(in);
+            if (in.getBytesLeft() != 0) {
+                throw new IOException("Codec did not read all data (" + in.getBytesLeft() + " bytes left): " + file);
+            }
+            return (T) object;
+        } finally {
+            IoUtils.safeClose(fileIn);
+        }
+    }
+
     /** @return MD5 digest (32 hex characters). */
     public static String getMd5(File file) throws IOException {
         InputStream in = new BufferedInputStream(new FileInputStream(file));
@@ -152,6 +447,308 @@ public class FileUtils {
         }
     }
 
+    /**
+     * Hashes the file in parallel using the default chunk size ({@value #TREE_HASH_CHUNK_SIZE}) and a shared
+     * executor (one daemon thread per CPU); see {@link #getMurmur3FTreeHash(File, int, ExecutorService)}.
+     */
+    public static String getMurmur3FTreeHash(File file) throws IOException {
+        return getMurmur3FTreeHash(file, TREE_HASH_CHUNK_SIZE, getHashExecutor());
+    }
+
+    private static synchronized ExecutorService getHashExecutor() {
+        if (hashExecutor == null) {
+            hashExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable runnable) {
+                            Thread thread = new Thread(runnable, "FileUtils-hash");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+        }
+        return hashExecutor;
+    }
+
+    /**
+     * Hashes the file in chunks, which are hashed concurrently on the given executor (Merkle-style hash list); the
+     * chunks are split into a few ranges per CPU, each hashed by one task. Must not be called from a thread of the
+     * given executor if it may run out of threads (e.g. a fixed pool). Note: the
+     * result differs from hashing the file sequentially (e.g. using {@link #updateChecksum(File, Checksum)} with
+     * {@link Murmur3F}); also, it depends on the chunk size.
+     * <p/>
+     * Definition: the file is split into chunks of chunkSize bytes (the last one may be smaller; an empty file has a
+     * single empty chunk). Each chunk is hashed with Murmur3F (seed 0). The result is the Murmur3F (seed 0) over the
+     * 16 byte big endian values of all chunk hashes in file order, followed by the file size and the chunk size (each
+     * as 8 byte little endian long).
+     *
+     * @return 32 hex chars (see {@link Murmur3F#getValueHexString()})
+     * @throws IllegalArgumentException if the chunk size is not positive or results in more than
+     *                                  Integer.MAX_VALUE chunks
+     */
+    public static String getMurmur3FTreeHash(File file, int chunkSize, ExecutorService executor) throws IOException {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Illegal chunk size: " + chunkSize);
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            long chunkCountLong = Math.max(1, (size + chunkSize - 1) / chunkSize);
+            if (chunkCountLong > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Chunk size " + chunkSize + " too small for file size " + size);
+            }
+            int chunkCount = (int) chunkCountLong;
+            byte[][] chunkHashes = new byte[chunkCount][];
+            int taskCount = (int) Math.min(chunkCount, Runtime.getRuntime().availableProcessors() * 4L);
+            List<Future<Void>> futures = new ArrayList<>(taskCount);
+            try {
+                for (int i = 0; i < taskCount; i++) {
+                    int from = (int) ((long) chunkCount * i / taskCount);
+                    int to = (int) ((long) chunkCount * (i + 1) / taskCount);
+                    futures.add(executor.submit(new HashChunksTask(channel, size, chunkSize, chunkHashes, from, to)));
+                }
+                for (Future<Void> future : futures) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while hashing " + file);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IOException(cause);
+            } finally {
+                // Running tasks fail quickly once the channel is closed
+                for (Future<Void> future : futures) {
+                    future.cancel(false);
+                }
+            }
+
+            Murmur3F root = new Murmur3F();
+            for (byte[] chunkHash : chunkHashes) {
+                root.update(chunkHash);
+            }
+            root.updateLongLE(size);
+            root.updateLongLE(chunkSize);
+            return root.getValueHexString();
+        } finally {
+            IoUtils.safeClose(raf);
+        }
+    }
+
+    /** Isolates the use of java.nio.file, so FileUtils can be loaded without it (Android before API level 26). */
+    private static class NioFiles {
+        static void moveAtomic(File source, File target) throws IOException {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        static void syncDirectory(File dir) throws IOException {
+            FileChannel channel;
+            try {
+                channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ);
+            } catch (IOException e) {
+                // Directories cannot be opened on some platforms
+                return;
+            }
+            try {
+                channel.force(true);
+            } finally {
+                IoUtils.safeClose(channel);
+            }
+        }
+    }
+
+    /** Buffers bytes written and writes them to the channel, updating the checksum with all bytes written. */
+    private static class ChecksumChannelOutputStream extends OutputStream {
+        private final WritableByteChannel channel;
+        private final Checksum checksum;
+        private final ByteBuffer buffer = ByteBuffer.allocate(OBJECT_BUFFER_SIZE);
+        private long count;
+
+        ChecksumChannelOutputStream(WritableByteChannel channel, Checksum checksum) {
+            this.channel = channel;
+            this.checksum = checksum;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (!buffer.hasRemaining()) {
+                flushBuffer();
+            }
+            buffer.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len > buffer.remaining()) {
+                flushBuffer();
+                if (len >= buffer.capacity()) {
+                    // Large writes bypass the buffer
+                    checksum.update(b, off, len);
+                    writeFully(ByteBuffer.wrap(b, off, len));
+                    count += len;
+                    return;
+                }
+            }
+            buffer.put(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            flushBuffer();
+        }
+
+        /** Bytes written to the channel so far. */
+        long getCount() {
+            return count;
+        }
+
+        private void flushBuffer() throws IOException {
+            int length = buffer.position();
+            if (length > 0) {
+                checksum.update(buffer.array(), 0, length);
+                ((Buffer) buffer).flip();
+                writeFully(buffer);
+                ((Buffer) buffer).clear();
+                count += length;
+            }
+        }
+
+        private void writeFully(ByteBuffer bytes) throws IOException {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+    }
+
+    /** Reads a given number of bytes from the channel (from its current position) through a buffer. */
+    private static class LimitedChannelInputStream extends InputStream {
+        private final ReadableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(OBJECT_BUFFER_SIZE);
+        /** Bytes not read from the channel yet. */
+        private long channelBytesLeft;
+
+        LimitedChannelInputStream(ReadableByteChannel channel, long length) {
+            this.channel = channel;
+            channelBytesLeft = length;
+            ((Buffer) buffer).limit(0);
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!buffer.hasRemaining() && !fillBuffer()) {
+                return -1;
+            }
+            return buffer.get() & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                if (len >= buffer.capacity() && channelBytesLeft > 0) {
+                    // Large reads bypass the buffer
+                    ByteBuffer target = ByteBuffer.wrap(b, off, (int) Math.min(len, channelBytesLeft));
+                    readFully(target);
+                    int read = target.position() - off;
+                    channelBytesLeft -= read;
+                    return read;
+                }
+                if (!fillBuffer()) {
+                    return -1;
+                }
+            }
+            int read = Math.min(len, buffer.remaining());
+            buffer.get(b, off, read);
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+
+        /** Bytes not read yet. */
+        long getBytesLeft() {
+            return buffer.remaining() + channelBytesLeft;
+        }
+
+        private boolean fillBuffer() throws IOException {
+            if (channelBytesLeft == 0) {
+                return false;
+            }
+            ((Buffer) buffer).clear();
+            ((Buffer) buffer).limit((int) Math.min(buffer.capacity(), channelBytesLeft));
+            readFully(buffer);
+            ((Buffer) buffer).flip();
+            channelBytesLeft -= buffer.limit();
+            return true;
+        }
+
+        private void readFully(ByteBuffer target) throws IOException {
+            while (target.hasRemaining()) {
+                if (channel.read(target) == -1) {
+                    throw new EOFException("Unexpected end of file");
+                }
+            }
+        }
+    }
+
+    /** Hashes a range of chunks. */
+    private static class HashChunksTask implements Callable<Void> {
+        private final FileChannel channel;
+        private final long size;
+        private final int chunkSize;
+        private final byte[][] chunkHashes;
+        private final int from;
+        private final int to;
+
+        HashChunksTask(FileChannel channel, long size, int chunkSize, byte[][] chunkHashes, int from, int to) {
+            this.channel = channel;
+            this.size = size;
+            this.chunkSize = chunkSize;
+            this.chunkHashes = chunkHashes;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public Void call() throws IOException {
+            for (int i = from; i < to; i++) {
+                chunkHashes[i] = hashChunk(i);
+            }
+            return null;
+        }
+
+        private byte[] hashChunk(int index) throws IOException {
+            long position = (long) index * chunkSize;
+            long end = Math.min(position + chunkSize, size);
+            Murmur3F murmur = new Murmur3F();
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(64 * 1024, Math.max(end - position, 1)));
+            while (position < end) {
+                ((Buffer) buffer).clear();
+                ((Buffer) buffer).limit((int) Math.min(buffer.capacity(), end - position));
+                // Positional read: safe to use concurrently on the same channel
+                int read = channel.read(buffer, position);
+                if (read == -1) {
+                    throw new IOException("Unexpected end of file at position " + position);
+                }
+                murmur.update(buffer.array(), 0, read);
+                position += read;
+            }
+            return murmur.getValueBytesBigEndian();
+        }
+    }
+
     public static void updateChecksum(File file, Checksum checksum) throws IOException {
         InputStream in = new BufferedInputStream(new FileInputStream(file));
         try {
@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2014-2020 Markus Junginger, greenrobot (http://greenrobot.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.greenrobot.essentials.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Writes files atomically and durably like {@link FileUtils#writeBytesAtomic(File, byte[])}, but commits concurrent
+ * writes in groups to save syncs. Each {@link #write(File, byte[])} blocks until its file is durable.
+ * <p/>
+ * Each writing thread writes and syncs its own temporary file first, concurrently to other writers and without holding
+ * a lock. Then it joins the group collecting writes; while a group is being committed, new writes are collected for
+ * the next group. The next group is committed by one of its writing threads (no background thread), which only
+ * <ul>
+ * <li>renames the temporary files: if a file is written several times, only the latest temporary file is renamed
+ * and older ones are deleted (all writers of the file are released once it is durable),</li>
+ * <li>syncs each directory only once per group (instead of once per file).</li>
+ * </ul>
+ * Thus, file syncs do not delay the commit of other writes, and frequently updated state files cost far fewer
+ * directory syncs than writing each update separately.
+ * <p/>
+ * Note: like {@link FileUtils#writeBytesAtomic(File, byte[])}, syncing directories requires java.nio.file (on Android,
+ * available since API level 26).
+ */
+public class GroupCommitFileWriter {
+
+    /** A pending write of a file; shared by all writers of the same file within a group. */
+    private static class FileWrite {
+        /** Synced temporary file with the latest content; renamed to the file by the commit. */
+        File tempFile;
+        IOException failure;
+    }
+
+    private static class Group {
+        final Map<File, FileWrite> writes = new LinkedHashMap<>();
+        boolean committed;
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition groupCommitted = lock.newCondition();
+
+    /** The group collecting writes; guarded by lock. */
+    private Group openGroup = new Group();
+    /** True while a group is committed; guarded by lock. */
+    private boolean committing;
+    private long groupCount;
+    private long fileWriteCount;
+
+    /**
+     * Writes the file atomically and durably, possibly together with concurrent writes of other threads. If another
+     * thread writes the same file concurrently, the content written last wins.
+     *
+     * @throws IOException if writing this file failed
+     */
+    public void write(File file, byte[] content) throws IOException {
+        File key = file.getAbsoluteFile();
+        File tempFile;
+        try {
+            // The expensive part: done by each writer concurrently, before joining a group
+            tempFile = writeTempFile(key, content);
+        } catch (IOException e) {
+            throw new IOException("Could not write " + file, e);
+        }
+
+        Group group;
+        FileWrite write;
+        File supersededTempFile;
+        lock.lock();
+        try {
+            group = openGroup;
+            write = group.writes.get(key);
+            if (write == null) {
+                write = new FileWrite();
+                group.writes.put(key, write);
+            }
+            supersededTempFile = write.tempFile;
+            write.tempFile = tempFile;
+        } finally {
+            lock.unlock();
+        }
+        if (supersededTempFile != null) {
+            // The group was still open, so its commit will not see the superseded temp file
+            supersededTempFile.delete();
+        }
+
+        lock.lock();
+        try {
+            boolean interrupted = false;
+            while (!group.committed) {
+                if (!committing && group == openGroup) {
+                    // Become the committer of the group; writes arriving meanwhile go to the next group
+                    committing = true;
+                    openGroup = new Group();
+                    lock.unlock();
+                    try {
+                        commit(group);
+                    } finally {
+                        lock.lock();
+                        committing = false;
+                        group.committed = true;
+                        groupCommitted.signalAll();
+                    }
+                } else {
+                    try {
+                        groupCommitted.await();
+                    } catch (InterruptedException e) {
+                        // The write is in a group already, so it must be waited for to report failures correctly
+                        interrupted = true;
+                    }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (write.failure != null) {
+            throw new IOException("Could not write " + file, write.failure);
+        }
+    }
+
+    /** Like {@link #write(File, byte[])} for UTF-8 text. */
+    public void writeUtf8(File file, CharSequence text) throws IOException {
+        write(file, text.toString().getBytes("UTF-8"));
+    }
+
+    /** Renames the synced temp files of the group and syncs each directory once; no file contents are written. */
+    private void commit(Group group) {
+        try {
+            Set<File> dirs = new LinkedHashSet<>();
+            List<File> renamedFiles = new ArrayList<>();
+            for (Map.Entry<File, FileWrite> entry : group.writes.entrySet()) {
+                File file = entry.getKey();
+                try {
+                    FileUtils.renameAtomic(entry.getValue().tempFile, file);
+                    dirs.add(FileUtils.getParentDir(file));
+                    renamedFiles.add(file);
+                } catch (IOException e) {
+                    entry.getValue().failure = e;
+                }
+            }
+
+            for (File dir : dirs) {
+                try {
+                    syncDirectory(dir);
+                } catch (IOException e) {
+                    for (File file : renamedFiles) {
+                        if (dir.equals(FileUtils.getParentDir(file))) {
+                            group.writes.get(file).failure = e;
+                        }
+                    }
+                }
+            }
+        } catch (Throwable th) {
+            // Unexpected (e.g. a RuntimeException): no write of the group may appear successful
+            IOException failure = new IOException("Group commit failed", th);
+            for (FileWrite write : group.writes.values()) {
+                if (write.failure == null) {
+                    write.failure = failure;
+                }
+            }
+            // Temp files are unique, so deleting already renamed ones does no harm
+            for (FileWrite write : group.writes.values()) {
+                write.tempFile.delete();
+            }
+        }
+
+        lock.lock();
+        try {
+            groupCount++;
+            fileWriteCount += group.writes.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Writes and syncs a temporary file for the given file; called by the writing thread; overridden by tests. */
+    File writeTempFile(File file, byte[] content) throws IOException {
+        return FileUtils.writeTempFileSynced(file, content);
+    }
+
+    /** Syncs the directory after renaming files into it; called once per group and directory; overridden by tests. */
+    void syncDirectory(File dir) throws IOException {
+        FileUtils.syncDirectory(dir);
+    }
+
+    /** Count of files waiting for the next group; for tests. */
+    int getPendingFileCount() {
+        lock.lock();
+        try {
+            return openGroup.writes.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Count of groups committed so far. */
+    public long getGroupCount() {
+        lock.lock();
+        try {
+            return groupCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Count of files written so far (multiple writes of a file within a group count once). */
+    public long getFileWriteCount() {
+        lock.lock();
+        try {
+            return fileWriteCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+}
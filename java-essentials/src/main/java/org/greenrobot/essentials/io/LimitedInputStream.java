@@ -18,6 +18,7 @@ package org.greenrobot.essentials.io;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.zip.GZIPInputStream;
 
 /**
@@ -25,6 +26,16 @@ import java.util.zip.GZIPInputStream;
  * InputStream that consists of chunks of a know size, each to be processed using a <b>buffered</b> input stream (e.g.
  * GZIPInputStream). Normal buffered input streams would read beyond the limit. The LimitedInputStream never closes the
  * inside InputStream(close does nothing).
+ * <p/>
+ * For parsers reading single bytes, an internal buffer can be used (see
+ * {@link #LimitedInputStream(InputStream, int, int)}). The buffer is never filled beyond the limit, but it reads ahead
+ * within the limit: bytes buffered, but not read when the LimitedInputStream is abandoned, are lost for the inside
+ * InputStream.
+ * <p/>
+ * Wrapping a LimitedInputStream (without buffered bytes) in another LimitedInputStream collapses both into a single
+ * wrapper: the new stream reads directly from the innermost InputStream and updates the bytes left of the wrapped
+ * LimitedInputStream(s), so reading can continue there afterwards. Like with other wrapping streams, do not read from
+ * the wrapped stream while still using the wrapping one.
  *
  * @author Markus
  */
@@ -35,41 +46,115 @@ public class LimitedInputStream extends InputStream {
         return new GZIPInputStream(limitedInputStream);
     }
 
+    /** Bytes that may still be read from {@link #in} (excluding buffered bytes). */
     private int bytesLeft;
     private final InputStream in;
+    /** The collapsed LimitedInputStream that was wrapped, or null. */
+    private final LimitedInputStream parent;
+
+    /** Internal buffer, or null if unbuffered. */
+    private final byte[] buffer;
+    private int bufferPosition;
+    private int bufferCount;
 
     public LimitedInputStream(InputStream in, int maxBytes) {
-        this.in = in;
-        bytesLeft = maxBytes;
+        this(in, maxBytes, 0);
+    }
+
+    /**
+     * @param bufferSize size of the internal buffer; 0 for no buffering
+     */
+    public LimitedInputStream(InputStream in, int maxBytes, int bufferSize) {
+        if (bufferSize < 0) {
+            throw new IllegalArgumentException("Illegal buffer size: " + bufferSize);
+        }
+        // Exact class check: subclasses may change reading behavior
+        if (in != null && in.getClass() == LimitedInputStream.class && ((LimitedInputStream) in).bufferCount == 0) {
+            parent = (LimitedInputStream) in;
+            this.in = parent.in;
+            bytesLeft = Math.min(maxBytes, parent.bytesLeft);
+        } else {
+            parent = null;
+            this.in = in;
+            bytesLeft = maxBytes;
+        }
+        buffer = bufferSize > 0 ? new byte[bufferSize] : null;
+    }
+
+    /** Updates bytes left after bytes were read from in (also for the collapsed parents). */
+    private void consumed(int count) {
+        bytesLeft -= count;
+        if (parent != null) {
+            parent.consumed(count);
+        }
+    }
+
+    /** @return false if there are no more bytes within the limit */
+    private boolean fillBuffer() throws IOException {
+        if (bytesLeft <= 0) {
+            return false;
+        }
+        int read = in.read(buffer, 0, Math.min(bytesLeft, buffer.length));
+        if (read <= 0) {
+            return false;
+        }
+        consumed(read);
+        bufferPosition = 0;
+        bufferCount = read;
+        return true;
     }
 
     @Override
     public int available() throws IOException {
+        int buffered = bufferCount - bufferPosition;
+        if (bytesLeft <= 0) {
+            return buffered;
+        }
         int available = in.available();
-        return Math.min(available, bytesLeft);
+        return buffered + Math.min(available, bytesLeft);
     }
 
     @Override
     public int read() throws IOException {
+        if (buffer != null) {
+            if (bufferPosition == bufferCount && !fillBuffer()) {
+                return -1;
+            }
+            return buffer[bufferPosition++] & 0xff;
+        }
         if (bytesLeft <= 0) {
             return -1;
         }
         int read = in.read();
         if (read != -1) {
-            bytesLeft--;
+            consumed(1);
         }
         return read;
     }
 
     @Override
     public int read(byte[] buffer, int offset, int count) throws IOException {
+        int buffered = bufferCount - bufferPosition;
+        if (buffered > 0) {
+            int countFromBuffer = Math.min(buffered, count);
+            System.arraycopy(this.buffer, bufferPosition, buffer, offset, countFromBuffer);
+            bufferPosition += countFromBuffer;
+            return countFromBuffer;
+        }
+        if (this.buffer != null && count < this.buffer.length && count > 0) {
+            // Small read: go through the buffer
+            if (!fillBuffer()) {
+                return -1;
+            }
+            return read(buffer, offset, count);
+        }
         if (bytesLeft <= 0) {
             return -1;
         }
         int countToRead = Math.min(bytesLeft, count);
         int read = in.read(buffer, offset, countToRead);
         if (read > 0) {
-            bytesLeft -= read;
+            consumed(read);
         }
         return read;
     }
@@ -84,12 +169,40 @@ public class LimitedInputStream extends InputStream {
         if (byteCount <= 0) {
             return 0;
         }
-        long countToSkip = Math.min(bytesLeft, byteCount);
-        long skipped = in.skip(countToSkip);
+        int countFromBuffer = (int) Math.min(bufferCount - bufferPosition, byteCount);
+        bufferPosition += countFromBuffer;
+        long countToSkip = Math.min(bytesLeft, byteCount - countFromBuffer);
+        long skipped = countToSkip > 0 ? in.skip(countToSkip) : 0;
         if (skipped > 0) {
-            bytesLeft -= skipped;
+            consumed((int) skipped);
         }
-        return skipped;
+        return countFromBuffer + skipped;
+    }
+
+    /**
+     * Transfers all bytes up to the limit to the given OutputStream (overrides InputStream.transferTo on Java 9+).
+     *
+     * @return count of bytes transferred
+     */
+    public long transferTo(OutputStream out) throws IOException {
+        long total = 0;
+        int buffered = bufferCount - bufferPosition;
+        if (buffered > 0) {
+            out.write(buffer, bufferPosition, buffered);
+            bufferPosition = bufferCount;
+            total = buffered;
+        }
+        byte[] transferBuffer = buffer != null ? buffer : new byte[Math.min(Math.max(bytesLeft, 1), 8192)];
+        while (bytesLeft > 0) {
+            int read = in.read(transferBuffer, 0, Math.min(bytesLeft, transferBuffer.length));
+            if (read == -1) {
+                break;
+            }
+            consumed(read);
+            out.write(transferBuffer, 0, read);
+            total += read;
+        }
+        return total;
     }
 
     @Override
@@ -97,8 +210,9 @@ public class LimitedInputStream extends InputStream {
     public void close() throws IOException {
     }
 
+    /** Bytes that may still be read (including buffered bytes). */
     public int getBytesLeft() {
-        return bytesLeft;
+        return bytesLeft + bufferCount - bufferPosition;
     }
-    
+
 }
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2014-2020 Markus Junginger, greenrobot (http://greenrobot.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.greenrobot.essentials.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Reads UTF-8 lines from a (possibly huge) file by decoding directly from memory-mapped regions of the file; the file
+ * content is never copied onto the heap as bytes. Files of any size are supported: the file is mapped in windows,
+ * which move forward as lines are read.
+ * <p/>
+ * Lines end with "\n" or "\r\n" (like with BufferedReader, a single "\r" is not a line end here). Malformed UTF-8 is
+ * replaced with U+FFFD. A single line must fit into a window.
+ * <p/>
+ * Not thread-safe.
+ */
+public class MappedLineReader implements Closeable {
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long size;
+    private final int windowSize;
+    private final CharsetDecoder decoder;
+
+    private MappedByteBuffer window;
+    /** File position of the window start. */
+    private long windowStart;
+    private CharBuffer chars = CharBuffer.allocate(256);
+
+    /** Uses a window size of 64 MB. */
+    public MappedLineReader(File file) throws IOException {
+        this(file, 64 * 1024 * 1024);
+    }
+
+    /** @param windowSize bytes mapped at once; also the maximum length of a line in bytes */
+    public MappedLineReader(File file, int windowSize) throws IOException {
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("Illegal window size: " + windowSize);
+        }
+        this.file = new RandomAccessFile(file, "r");
+        channel = this.file.getChannel();
+        size = channel.size();
+        this.windowSize = windowSize;
+        decoder = Charset.forName("UTF-8").newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /** File position of the next line to read. */
+    public long getPosition() {
+        return window != null ? windowStart + window.position() : windowStart;
+    }
+
+    /**
+     * Reads the next line (without the line end).
+     *
+     * @return null at the end of the file
+     * @throws IOException if a line does not fit into the window
+     */
+    public String readLine() throws IOException {
+        if (getPosition() >= size) {
+            return null;
+        }
+        if (window == null || !window.hasRemaining()) {
+            mapWindow(getPosition());
+        }
+        int lineEnd = findLineEnd(window);
+        if (lineEnd == -1) {
+            long windowEnd = windowStart + window.limit();
+            if (windowEnd < size) {
+                // The line may continue beyond the window: remap starting at the line
+                mapWindow(getPosition());
+                lineEnd = findLineEnd(window);
+                if (lineEnd == -1 && windowStart + window.limit() < size) {
+                    throw new IOException("Line at position " + windowStart + " exceeds window size " + windowSize);
+                }
+            }
+            if (lineEnd == -1) {
+                // Last line without line end
+                lineEnd = window.limit();
+            }
+        }
+        int lineStart = window.position();
+        int contentEnd = lineEnd;
+        if (contentEnd > lineStart && lineEnd < window.limit() && window.get(contentEnd - 1) == '\r') {
+            contentEnd--;
+        }
+        String line = decode(lineStart, contentEnd);
+        ((Buffer) window).position(Math.min(lineEnd + 1, window.limit()));
+        return line;
+    }
+
+    private void mapWindow(long position) throws IOException {
+        windowStart = position;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(windowSize, size - position));
+    }
+
+    /** @return index of the next '\n' from the buffer's position, or -1 */
+    private static int findLineEnd(ByteBuffer buffer) {
+        int limit = buffer.limit();
+        for (int i = buffer.position(); i < limit; i++) {
+            if (buffer.get(i) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private String decode(int start, int end) throws CharacterCodingException {
+        ByteBuffer bytes = window.duplicate();
+        ((Buffer) bytes).limit(end);
+        ((Buffer) bytes).position(start);
+        // A char per byte is enough for UTF-8
+        int maxChars = end - start;
+        if (chars.capacity() < maxChars) {
+            chars = CharBuffer.allocate(Math.max(maxChars, chars.capacity() * 2));
+        }
+        ((Buffer) chars).clear();
+        decoder.reset();
+        CoderResult result = decoder.decode(bytes, chars, true);
+        if (!result.isUnderflow()) {
+            result.throwException();
+        }
+        decoder.flush(chars);
+        ((Buffer) chars).flip();
+        return chars.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        file.close();
+    }
+
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2014-2020 Markus Junginger, greenrobot (http://greenrobot.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.greenrobot.essentials.io;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A lock-free ring buffer for records (byte sequences) written by many producer threads and read by a single consumer
+ * thread (Disruptor-style).
+ * <p/>
+ * A producer claims a contiguous region for a record with a single CAS, writes the record without any lock, and
+ * publishes it. Records never wrap around the end of the ring: if a record does not fit at the end, the remaining
+ * space is filled with padding and the record starts at the beginning of the ring. The consumer reads all published
+ * records in a batch and releases their space at once (see {@link #read(RecordHandler)}); records are delivered in
+ * claim order, so a claimed, but not yet published record holds back the following records.
+ * <p/>
+ * Records are aligned to {@value #ALIGNMENT} bytes. Record headers (publish state and length) are kept separately from
+ * the data in an AtomicIntegerArray, which gives the required memory ordering without sun.misc.Unsafe.
+ */
+public class MultiProducerByteRing {
+
+    /** Records start at multiples of the alignment. */
+    public static final int ALIGNMENT = 8;
+    private static final int ALIGNMENT_SHIFT = 3;
+
+    /** Called by the consumer for each published record. */
+    public interface RecordHandler {
+        /** Record data is at the given offset of the buffer; do not keep references to the buffer. */
+        void onRecord(byte[] buffer, int offset, int length);
+    }
+
+    private final byte[] buffer;
+    private final int capacity;
+    private final int mask;
+    private final int maxRecordLength;
+
+    /**
+     * Header per aligned slot: 0 if there is no published record starting at the slot, length + 1 for records, and
+     * the negative length of padding.
+     */
+    private final AtomicIntegerArray headers;
+
+    /** Position to claim next; CAS by producers. */
+    private final PaddedAtomicLong tail = new PaddedAtomicLong();
+    /** Position of the next record to read; written by the consumer only. */
+    private final PaddedAtomicLong head = new PaddedAtomicLong();
+    /** Last head value seen by a producer; may lag behind the actual head. */
+    private final PaddedAtomicLong headCache = new PaddedAtomicLong();
+
+    /** @param capacity rounded up to the next power of 2 (at least 64) */
+    public MultiProducerByteRing(int capacity) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Illegal capacity: " + capacity);
+        }
+        capacity = Math.max(capacity, 64);
+        int powerOf2 = Integer.highestOneBit(capacity);
+        this.capacity = powerOf2 == capacity ? capacity : powerOf2 << 1;
+        mask = this.capacity - 1;
+        maxRecordLength = this.capacity / 8;
+        buffer = new byte[this.capacity];
+        headers = new AtomicIntegerArray(this.capacity >> ALIGNMENT_SHIFT);
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /** Records must not be larger than 1/8 of the capacity. */
+    public int maxRecordLength() {
+        return maxRecordLength;
+    }
+
+    /** Count of bytes currently in use (including alignment and padding). */
+    public int size() {
+        // Read head first: tail read afterwards is always greater or equal
+        long headValue = head.get();
+        return (int) (tail.get() - headValue);
+    }
+
+    /**
+     * Claims, writes, and publishes a record in one go.
+     *
+     * @return false if there is not enough free space
+     */
+    public boolean offer(byte[] src, int off, int len) {
+        int index = tryClaim(len);
+        if (index < 0) {
+            return false;
+        }
+        System.arraycopy(src, off, buffer, index, len);
+        publish(index, len);
+        return true;
+    }
+
+    /**
+     * Claims a contiguous region for a record of the given length. The producer then writes the record into
+     * {@link #buffer()} starting at the returned index and publishes it using {@link #publish(int, int)} with the
+     * same length. Each successful claim must be published, otherwise the consumer will wait for it forever.
+     *
+     * @return the index of the region in {@link #buffer()}, or -1 if there is not enough free space
+     * @throws IllegalArgumentException if length is negative or exceeds {@link #maxRecordLength()}
+     */
+    public int tryClaim(int length) {
+        if (length < 0 || length > maxRecordLength) {
+            throw new IllegalArgumentException("Illegal record length: " + length + " (max: " + maxRecordLength + ")");
+        }
+        int required = align(Math.max(length, 1));
+        while (true) {
+            long tailValue = tail.get();
+            int index = (int) tailValue & mask;
+            int toEnd = capacity - index;
+            int padding = required > toEnd ? toEnd : 0;
+            long needed = required + padding;
+
+            long headValue = headCache.get();
+            if (capacity - (tailValue - headValue) < needed) {
+                headValue = head.get();
+                if (capacity - (tailValue - headValue) < needed) {
+                    return -1;
+                }
+                headCache.lazySet(headValue);
+            }
+
+            if (tail.compareAndSet(tailValue, tailValue + needed)) {
+                if (padding != 0) {
+                    headers.lazySet(index >> ALIGNMENT_SHIFT, -padding);
+                    return 0;
+                }
+                return index;
+            }
+        }
+    }
+
+    /** Makes a claimed record visible to the consumer. */
+    public void publish(int index, int length) {
+        // Ordered write: the record data written before becomes visible to the consumer along with the header
+        headers.lazySet(index >> ALIGNMENT_SHIFT, length + 1);
+    }
+
+    /**
+     * Direct access to the ring's data for producers using {@link #tryClaim(int)}; only write to claimed regions.
+     */
+    public byte[] buffer() {
+        return buffer;
+    }
+
+    /**
+     * Consumer only: reads all published records.
+     *
+     * @return count of records read
+     */
+    public int read(RecordHandler handler) {
+        return read(handler, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Consumer only: reads published records up to the given maximum. The space of all read records is released at
+     * once after the batch.
+     *
+     * @return count of records read
+     */
+    public int read(RecordHandler handler, int maxRecords) {
+        long headValue = head.get();
+        long position = headValue;
+        int count = 0;
+        try {
+            while (count < maxRecords && position - headValue < capacity) {
+                int index = (int) position & mask;
+                int slot = index >> ALIGNMENT_SHIFT;
+                int header = headers.get(slot);
+                if (header == 0) {
+                    break;
+                }
+                if (header < 0) {
+                    headers.lazySet(slot, 0);
+                    position += -header;
+                } else {
+                    int length = header - 1;
+                    position += align(Math.max(length, 1));
+                    // Clear before calling the handler, so a handler exception does not deliver the record again
+                    headers.lazySet(slot, 0);
+                    count++;
+                    handler.onRecord(buffer, index, length);
+                }
+            }
+        } finally {
+            if (position != headValue) {
+                head.lazySet(position);
+            }
+        }
+        return count;
+    }
+
+    private static int align(int length) {
+        return (length + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2014-2016 Markus Junginger, greenrobot (http://greenrobot.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greenrobot.essentials.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Converts objects to bytes and back, e.g. for {@link FileUtils#writeObject(File, Object, ObjectCodec)} and
+ * {@link FileUtils#readObject(File, ObjectCodec)}.
+ * <p/>
+ * The given streams are buffered already. Implementations must not close them, and decoding must read exactly the
+ * bytes written by encoding (no read-ahead). Implementations should be thread-safe.
+ *
+ * @see BinaryObjectCodec
+ * @see JavaSerializationCodec
+ */
+public interface ObjectCodec {
+
+    void encode(Object object, OutputStream out) throws IOException;
+
+    Object decode(InputStream in) throws IOException, ClassNotFoundException;
+
+}
@@ -0,0 +1,26 @@
+/*
+ * Copyright (C) 2014-2020 Markus Junginger, greenrobot (http://greenrobot.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.greenrobot.essentials.io;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/** AtomicLong padded to a cache line to prevent false sharing with other frequently written values. */
+@SuppressWarnings("serial")
+class PaddedAtomicLong extends AtomicLong {
+    // Padding to fill a typical 64 byte cache line
+    long p1, p2, p3, p4, p5, p6, p7;
+}
@@ -19,80 +19,172 @@ package org.greenrobot.essentials.io;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Replacement for Java's PipedOutputStream: all data written to this stream will get available in the integrated
  * InputStream (see {@link #getInputStream()}).
  * <p/>
+ * Data is handed over using a lock-free single-producer/single-consumer ring buffer ({@link SpscCircularByteBuffer}).
+ * If a side has to wait (writer: buffer full, reader: buffer empty), it parks its thread; the other side only unparks
+ * it if it is actually waiting. Thus, while data flows, neither side acquires a lock nor wakes up the other side.
+ * Because no monitors (synchronized/wait) are involved, waiting virtual threads (Java 21+) do not pin their carriers.
+ * <p/>
+ * To reduce context switches with many small writes, wake-up thresholds can be configured (see
+ * {@link #PipelineOutputStream(int, int, int)}): a waiting reader is only woken up once enough bytes are available,
+ * and a waiting writer only once enough free space is available. {@link #flush()} and {@link #close()} always wake up
+ * the reader, so call flush() if the reader should see all bytes written so far without further writes.
+ * <p/>
  * Note: Usually, you will have exactly two threads: one to write and one to read. If you use a single thread, avoid
- * reading more bytes than previously written or writing more bytes than the internal buffer can handle.
+ * reading more bytes than previously written or writing more bytes than the internal buffer can handle. At any time,
+ * only a single thread may write and only a single thread may read.
  */
 public class PipelineOutputStream extends OutputStream {
     private final PipelineInputStream inputStream;
-    final CircularByteBuffer buffer;
-    boolean closedOut;
-    boolean closedIn;
+    final SpscCircularByteBuffer buffer;
+    private final int minAvailableToWakeReader;
+    private final int minFreeToWakeWriter;
+    volatile boolean closedOut;
+    volatile boolean closedIn;
+    /** If set, the pipeline was aborted and both sides fail (see {@link #abort(Throwable)}). */
+    volatile Throwable abortCause;
+
+    /** The reader thread if it is waiting for data, or null. */
+    volatile Thread waitingReader;
+    /** The writer thread if it is waiting for free buffer space, or null. */
+    volatile Thread waitingWriter;
 
     public PipelineOutputStream() {
         this(8192);
     }
 
+    /** @param bufferCapacity rounded up to the next power of 2 */
     public PipelineOutputStream(int bufferCapacity) {
-        this.buffer = new CircularByteBuffer(bufferCapacity);
+        this(bufferCapacity, 1, 1);
+    }
+
+    /**
+     * @param bufferCapacity           rounded up to the next power of 2
+     * @param minAvailableToWakeReader count of bytes that must be available before a waiting reader is woken up by a
+     *                                 write (low watermark; 1 wakes the reader for any data); flush and close always
+     *                                 wake the reader
+     * @param minFreeToWakeWriter      count of free bytes that must be available before a waiting writer is woken
+     *                                 up by a read (1 wakes the writer as soon as any space gets free)
+     */
+    public PipelineOutputStream(int bufferCapacity, int minAvailableToWakeReader, int minFreeToWakeWriter) {
+        // Volatile publishing, so checking the waiting threads after put/get cannot miss a thread going to sleep
+        this.buffer = new SpscCircularByteBuffer(bufferCapacity, true);
+        checkThreshold(minAvailableToWakeReader);
+        checkThreshold(minFreeToWakeWriter);
+        this.minAvailableToWakeReader = minAvailableToWakeReader;
+        this.minFreeToWakeWriter = minFreeToWakeWriter;
         inputStream = new PipelineInputStream();
     }
 
+    private void checkThreshold(int threshold) {
+        // Thresholds above the capacity could never be reached
+        if (threshold < 1 || threshold > buffer.capacity()) {
+            throw new IllegalArgumentException("Threshold must be 1.." + buffer.capacity() + ": " + threshold);
+        }
+    }
+
     public InputStream getInputStream() {
         return inputStream;
     }
 
     @Override
-    public synchronized void write(byte[] data, int off, int len) throws IOException {
+    public void write(byte[] data, int off, int len) throws IOException {
         int done = 0;
         while (done != len) {
             checkPipelineInput();
             int count = buffer.put(data, off + done, len - done);
             if (count > 0) {
                 done += count;
-                notifyBuffer();
+                unparkReader(false);
             } else {
-                waitForBuffer();
+                awaitFreeSpace();
             }
         }
     }
 
     private void checkPipelineInput() throws IOException {
+        checkAborted();
         if (closedIn) {
             throw new IOException("PipelineInputStream was closed (broken pipeline)");
         }
     }
 
     @Override
-    public synchronized void write(int b) throws IOException {
+    public void write(int b) throws IOException {
         checkPipelineInput();
         while (!buffer.put((byte) b)) {
-            waitForBuffer();
+            awaitFreeSpace();
             checkPipelineInput();
         }
-        notifyBuffer();
+        unparkReader(false);
     }
 
+    /** Wakes up the reader if it is waiting (regardless of the configured threshold). */
     @Override
-    public synchronized void close() throws IOException {
+    public void flush() throws IOException {
+        unparkReader(true);
+    }
+
+    @Override
+    public void close() throws IOException {
         closedOut = true;
-        notifyBuffer();
+        unparkReader(true);
     }
 
-    void waitForBuffer() throws IOException {
+    private void awaitFreeSpace() throws IOException {
+        waitingWriter = Thread.currentThread();
         try {
-            wait();
-        } catch (InterruptedException e) {
-            throw new IOException(e);
+            // Check again after announcing to wait: the reader checks waitingWriter after getting bytes
+            if (buffer.free() == 0 && !closedIn && abortCause == null) {
+                LockSupport.park(this);
+            }
+        } finally {
+            waitingWriter = null;
+        }
+        checkInterrupted();
+    }
+
+    /**
+     * Aborts the pipeline, e.g. because a thread involved failed: any further (or currently waiting) write or read
+     * throws an IOException with the given cause; data still buffered is discarded. Unlike closing, the reader does
+     * not see a regular end of the stream.
+     */
+    void abort(Throwable cause) {
+        abortCause = cause;
+        unparkReader(true);
+        unparkWriter(true);
+    }
+
+    void checkAborted() throws IOException {
+        Throwable cause = abortCause;
+        if (cause != null) {
+            throw new IOException("Pipeline was aborted", cause);
+        }
+    }
+
+    void unparkReader(boolean force) {
+        Thread reader = waitingReader;
+        if (reader != null && (force || buffer.available() >= minAvailableToWakeReader)) {
+            LockSupport.unpark(reader);
         }
     }
 
-    void notifyBuffer() {
-        notifyAll();
+    void unparkWriter(boolean force) {
+        Thread writer = waitingWriter;
+        if (writer != null && (force || buffer.free() >= minFreeToWakeWriter)) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    private static void checkInterrupted() throws IOException {
+        if (Thread.interrupted()) {
+            throw new IOException(new InterruptedException());
+        }
     }
 
     protected class PipelineInputStream extends InputStream {
@@ -102,37 +194,48 @@ public class PipelineOutputStream extends OutputStream {
             if (len == 0) {
                 return closedOut ? -1 : 0;
             }
-            int read;
-            synchronized (PipelineOutputStream.this) {
-                do {
-                    read = buffer.get(b, off, len);
-                    if (read == 0) {
-                        if (closedOut) {
-                            return -1;
-                        }
-                        waitForBuffer();
-                    }
-                } while (read == 0);
-                notifyBuffer();
+            while (true) {
+                checkAborted();
+                // Read closed flag before getting: all bytes written before closing are visible then
+                boolean closed = closedOut;
+                int read = buffer.get(b, off, len);
+                if (read > 0) {
+                    unparkWriter(false);
+                    return read;
+                } else if (closed) {
+                    return -1;
+                }
+                awaitData();
             }
-
-            return read;
         }
 
         @Override
         public int read() throws IOException {
-            synchronized (PipelineOutputStream.this) {
+            while (true) {
+                checkAborted();
+                boolean closed = closedOut;
                 int value = buffer.get();
-                while (value == -1) {
-                    if (closedOut) {
-                        return -1;
-                    }
-                    waitForBuffer();
-                    value = buffer.get();
+                if (value != -1) {
+                    unparkWriter(false);
+                    return value;
+                } else if (closed) {
+                    return -1;
+                }
+                awaitData();
+            }
+        }
+
+        private void awaitData() throws IOException {
+            waitingReader = Thread.currentThread();
+            try {
+                // Check again after announcing to wait: the writer checks waitingReader after putting bytes
+                if (buffer.available() == 0 && !closedOut && abortCause == null) {
+                    LockSupport.park(this);
                 }
-                notifyBuffer();
-                return value;
+            } finally {
+                waitingReader = null;
             }
+            checkInterrupted();
         }
 
         @Override
@@ -144,26 +247,27 @@ public class PipelineOutputStream extends OutputStream {
         public long skip(long n) throws IOException {
             int len = (int) Math.min(n, Integer.MAX_VALUE);
             int total = 0;
-            synchronized (PipelineOutputStream.this) {
-                while (total < len) {
-                    int skipped = buffer.skip(len - total);
-                    if (skipped == 0) {
-                        if (closedOut) {
-                            return total;
-                        }
-                        waitForBuffer();
-                    } else {
-                        total += skipped;
-                        notifyBuffer();
+            while (total < len) {
+                checkAborted();
+                boolean closed = closedOut;
+                int skipped = buffer.skip(len - total);
+                if (skipped == 0) {
+                    if (closed) {
+                        return total;
                     }
+                    awaitData();
+                } else {
+                    total += skipped;
+                    unparkWriter(false);
                 }
-                return total;
             }
+            return total;
         }
 
         @Override
         public void close() throws IOException {
             closedIn = true;
+            unparkWriter(true);
         }
     }
 
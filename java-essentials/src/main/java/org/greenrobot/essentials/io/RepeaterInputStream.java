@@ -20,28 +20,66 @@ import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Repeats an input stream to an additional OutputStream. The data of the InputStream becomes available for two
  * purposes, e.g. reading data and storing for caching.
  * <p/>
+ * By default, data is written to the OutputStream synchronously during reads. Thus, a slow OutputStream (e.g. a cache
+ * on a slow disk) slows down reading. Alternatively, use
+ * {@link #RepeaterInputStream(InputStream, OutputStream, int, int, AsyncOutputStream.OverflowPolicy)} to hand over the
+ * data to a background thread writing to the OutputStream (see {@link AsyncOutputStream}). Once done, close this
+ * stream (required to end the background thread) and call {@link #awaitRepeated(long, TimeUnit)} to know if all data
+ * was written.
+ * <p/>
  * Note: OutputStream is not closed when close() is called.
  *
  * @author Markus
  */
 public class RepeaterInputStream extends FilterInputStream {
     private final OutputStream out;
+    /** Wraps out if writing asynchronously; otherwise null. */
+    private final AsyncOutputStream asyncOut;
 
     public RepeaterInputStream(InputStream in, OutputStream out) {
         super(in);
         this.out = out;
+        asyncOut = null;
+    }
+
+    /**
+     * Writes to the given OutputStream asynchronously on a background thread, so reading is not slowed down by it.
+     *
+     * @param chunkSize  bytes per chunk handed over to the background thread
+     * @param chunkCount count of chunks that may wait to be written (see {@link AsyncOutputStream})
+     * @param policy     if all chunks are waiting to be written: BLOCK makes reads wait, DROP skips writing the data
+     *                   from then on (see {@link #getDroppedByteCount()})
+     */
+    public RepeaterInputStream(InputStream in, OutputStream out, int chunkSize, int chunkCount,
+                               AsyncOutputStream.OverflowPolicy policy) {
+        this(in, out, chunkSize, chunkCount, policy, null);
+    }
+
+    /**
+     * Like {@link #RepeaterInputStream(InputStream, OutputStream, int, int, AsyncOutputStream.OverflowPolicy)}, but
+     * the background thread is created by the given ThreadFactory (null to use a daemon thread).
+     */
+    public RepeaterInputStream(InputStream in, OutputStream out, int chunkSize, int chunkCount,
+                               AsyncOutputStream.OverflowPolicy policy, ThreadFactory threadFactory) {
+        super(in);
+        asyncOut = new AsyncOutputStream(out, chunkSize, chunkCount, policy, threadFactory);
+        this.out = asyncOut;
     }
 
     @Override
     public int read() throws IOException {
         int read = in.read();
-        if (read > 0) {
+        if (read != -1) {
             out.write(read);
+        } else if (asyncOut != null) {
+            asyncOut.flush();
         }
         return read;
     }
@@ -51,6 +89,9 @@ public class RepeaterInputStream extends FilterInputStream {
         int read = in.read(b, off, len);
         if (read > 0) {
             out.write(b, off, read);
+        } else if (read == -1 && asyncOut != null) {
+            // Hand over the last partial chunk at the end of the stream
+            asyncOut.flush();
         }
         return read;
     }
@@ -59,6 +100,35 @@ public class RepeaterInputStream extends FilterInputStream {
         return read(b, 0, b.length);
     }
 
+    /** Closes the InputStream; when writing asynchronously, the remaining data is handed over to be written. */
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            if (asyncOut != null) {
+                asyncOut.finishAsync();
+            }
+        }
+    }
+
+    /**
+     * Waits until all data was written to the OutputStream after this stream was closed. When writing synchronously,
+     * returns true immediately.
+     *
+     * @param unit null to wait without timeout (timeout is ignored)
+     * @return false if the timeout elapsed
+     * @throws IOException if writing to the OutputStream failed
+     */
+    public boolean awaitRepeated(long timeout, TimeUnit unit) throws IOException {
+        return asyncOut == null || asyncOut.awaitFinished(timeout, unit);
+    }
+
+    /** When writing asynchronously: count of bytes that were not written to the OutputStream (DROP policy). */
+    public long getDroppedByteCount() {
+        return asyncOut != null ? asyncOut.getDroppedByteCount() : 0;
+    }
+
     @Override
     /** Unsupported. */
     public boolean markSupported() {
@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2014-2020 Markus Junginger, greenrobot (http://greenrobot.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.greenrobot.essentials.io;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free variant of {@link CircularByteBuffer} for exactly one producer thread (calling put methods) and one
+ * consumer thread (calling get, peek and skip methods); "single producer, single consumer" (SPSC).
+ * <p/>
+ * No monitors are used: the producer and the consumer each own an index, which they publish using ordered writes
+ * (AtomicLong.lazySet). Each side caches the last seen index of the other side and only reads the other side's
+ * (volatile) index again when the cached value suggests the buffer is full or empty. Both indexes are padded to avoid
+ * false sharing. The capacity is rounded up to a power of 2, so indexes wrap around using bit masking.
+ * <p/>
+ * Blocking wrappers that let a thread sleep until its peer made progress need to publish with volatile writes instead
+ * (see {@link #SpscCircularByteBuffer(int, boolean)}): the peer must not miss a "waiting" flag written by a thread
+ * that is about to sleep (Dekker-style handshake).
+ * <p/>
+ * All put&get methods are non-blocking. Using put methods from multiple threads (or get methods from multiple threads)
+ * concurrently is not supported and will corrupt data. {@link #clear()} must not be called concurrently to any other
+ * method.
+ */
+public class SpscCircularByteBuffer {
+
+    /** Index owned by one side (producer or consumer), padded to a cache line to prevent false sharing. */
+    @SuppressWarnings("serial")
+    static final class Cursor extends AtomicLong {
+        /** Last seen index of the other side; only accessed by the owning thread. */
+        long cachedOther;
+
+        // Padding to fill a typical 64 byte cache line
+        long p1, p2, p3, p4, p5, p6;
+    }
+
+    private final byte[] buffer;
+    private final int capacity;
+    private final int mask;
+    private final boolean volatilePublish;
+
+    /** Total count of bytes put; written by the producer only. */
+    private final Cursor putCursor = new Cursor();
+
+    /** Total count of bytes got; written by the consumer only. */
+    private final Cursor getCursor = new Cursor();
+
+    public SpscCircularByteBuffer() {
+        this(8192);
+    }
+
+    /** @param capacity rounded up to the next power of 2 */
+    public SpscCircularByteBuffer(int capacity) {
+        this(capacity, false);
+    }
+
+    /**
+     * @param capacity        rounded up to the next power of 2
+     * @param volatilePublish if true, indexes are published with volatile writes (a full fence) instead of ordered
+     *                        writes; thus volatile reads after a put or get cannot be reordered before the publish
+     */
+    public SpscCircularByteBuffer(int capacity, boolean volatilePublish) {
+        this.volatilePublish = volatilePublish;
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Illegal capacity: " + capacity);
+        }
+        int powerOf2 = Integer.highestOneBit(capacity);
+        this.capacity = powerOf2 == capacity ? capacity : powerOf2 << 1;
+        mask = this.capacity - 1;
+        buffer = new byte[this.capacity];
+    }
+
+    /**
+     * Clears all data from the buffer. Must not be called while the producer or consumer threads are active.
+     */
+    public void clear() {
+        long putIndex = putCursor.get();
+        getCursor.set(putIndex);
+        getCursor.cachedOther = putIndex;
+        putCursor.cachedOther = putIndex;
+    }
+
+    /** Consumer only: bytes available to get; refreshes the cached put index if needed. */
+    private int availableForGet(long getIndex, int required) {
+        int available = (int) (getCursor.cachedOther - getIndex);
+        if (available < required) {
+            long putIndex = putCursor.get();
+            getCursor.cachedOther = putIndex;
+            available = (int) (putIndex - getIndex);
+        }
+        return available;
+    }
+
+    private void publish(Cursor cursor, long value) {
+        if (volatilePublish) {
+            cursor.set(value);
+        } else {
+            cursor.lazySet(value);
+        }
+    }
+
+    /** Producer only: free bytes to put; refreshes the cached get index if needed. */
+    private int freeForPut(long putIndex, int required) {
+        int free = capacity - (int) (putIndex - putCursor.cachedOther);
+        if (free < required) {
+            long getIndex = getCursor.get();
+            putCursor.cachedOther = getIndex;
+            free = capacity - (int) (putIndex - getIndex);
+        }
+        return free;
+    }
+
+    /**
+     * Consumer only: gets a single byte (0-255) or -1 if no data is available.
+     */
+    public int get() {
+        long getIndex = getCursor.get();
+        if (availableForGet(getIndex, 1) == 0) {
+            return -1;
+        }
+        int value = buffer[(int) getIndex & mask] & 0xff;
+        publish(getCursor, getIndex + 1);
+        return value;
+    }
+
+    /**
+     * Consumer only: gets as many of the requested bytes as available from this buffer.
+     *
+     * @return number of bytes actually got from this buffer (0 if no bytes are available)
+     */
+    public int get(byte[] dst) {
+        return get(dst, 0, dst.length);
+    }
+
+    /**
+     * Consumer only: gets as many of the requested bytes as available from this buffer.
+     *
+     * @return number of bytes actually got from this buffer (0 if no bytes are available)
+     */
+    public int get(byte[] dst, int off, int len) {
+        long getIndex = getCursor.get();
+        int count = Math.min(availableForGet(getIndex, len), len);
+        if (count == 0) {
+            return 0;
+        }
+        int index = (int) getIndex & mask;
+        int count1 = Math.min(count, capacity - index);
+        System.arraycopy(buffer, index, dst, off, count1);
+        if (count1 < count) {
+            System.arraycopy(buffer, 0, dst, off + count1, count - count1);
+        }
+        publish(getCursor, getIndex + count);
+        return count;
+    }
+
+    /**
+     * Producer only: puts a single byte if the buffer is not yet full.
+     *
+     * @return true if the byte was put, or false if the buffer is full
+     */
+    public boolean put(byte value) {
+        long putIndex = putCursor.get();
+        if (freeForPut(putIndex, 1) == 0) {
+            return false;
+        }
+        buffer[(int) putIndex & mask] = value;
+        publish(putCursor, putIndex + 1);
+        return true;
+    }
+
+    /**
+     * Producer only: puts as many of the given bytes as possible into this buffer.
+     *
+     * @return number of bytes actually put into this buffer (0 if the buffer is full)
+     */
+    public int put(byte[] src) {
+        return put(src, 0, src.length);
+    }
+
+    /**
+     * Producer only: puts as many of the given bytes as possible into this buffer.
+     *
+     * @return number of bytes actually put into this buffer (0 if the buffer is full)
+     */
+    public int put(byte[] src, int off, int len) {
+        long putIndex = putCursor.get();
+        int count = Math.min(freeForPut(putIndex, len), len);
+        if (count == 0) {
+            return 0;
+        }
+        int index = (int) putIndex & mask;
+        int count1 = Math.min(count, capacity - index);
+        System.arraycopy(src, off, buffer, index, count1);
+        if (count1 < count) {
+            System.arraycopy(src, off + count1, buffer, 0, count - count1);
+        }
+        publish(putCursor, putIndex + count);
+        return count;
+    }
+
+    /**
+     * Consumer only: returns the first byte (0-255) a <b>get</b> would return or -1 if no data is available.
+     */
+    public int peek() {
+        long getIndex = getCursor.get();
+        return availableForGet(getIndex, 1) > 0 ? buffer[(int) getIndex & mask] & 0xff : -1;
+    }
+
+    /**
+     * Consumer only: skips the given count of bytes, but at most the currently available count.
+     *
+     * @return number of bytes actually skipped from this buffer (0 if no bytes are available)
+     */
+    public int skip(int count) {
+        long getIndex = getCursor.get();
+        count = Math.min(availableForGet(getIndex, count), count);
+        if (count > 0) {
+            publish(getCursor, getIndex + count);
+        }
+        return count;
+    }
+
+    /**
+     * The capacity (size) is the maximum of bytes that can be stored inside this buffer (a power of 2).
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of bytes available and can be get without additional puts. May be outdated immediately if
+     * called from another thread than the consumer.
+     */
+    public int available() {
+        // Read get first: the put index read afterwards is always greater or equal
+        long getIndex = getCursor.get();
+        return (int) (putCursor.get() - getIndex);
+    }
+
+    /**
+     * Returns the number of free bytes available that can still be put without additional gets. May be outdated
+     * immediately if called from another thread than the producer.
+     */
+    public int free() {
+        long putIndex = putCursor.get();
+        return capacity - (int) (putIndex - getCursor.get());
+    }
+
+}
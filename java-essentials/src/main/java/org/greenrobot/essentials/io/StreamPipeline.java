@@ -0,0 +1,410 @@
+/*
+ * Copyright (C) 2014-2020 Markus Junginger, greenrobot (http://greenrobot.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.greenrobot.essentials.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs a chain of stream transformations (e.g. compress, checksum, encrypt, upload) concurrently: each stage runs on
+ * its own thread, and consecutive stages are connected by a {@link PipelineOutputStream}. Thus, each stage may use its
+ * own CPU core.
+ * <p/>
+ * Usage: add stages using {@link #addStage(String, Stage)}, then call {@link #run(InputStream, OutputStream)} (or
+ * {@link #start(InputStream, OutputStream)} and {@link #await()}). The first stage reads from the given source, and
+ * the last stage writes to the given sink; neither source nor sink are closed by the pipeline.
+ * <p/>
+ * If a stage fails, all other stages are aborted: blocked reads and writes between stages throw an IOException, and
+ * {@link #await()} throws an IOException with the original failure as the cause. {@link #cancel()} aborts all stages
+ * likewise.
+ * <p/>
+ * Threads are created using a {@link ThreadFactory}, which may also create virtual threads on newer Java versions.
+ * After the pipeline completed, per-stage statistics are available via {@link #getStageStats()}.
+ */
+public class StreamPipeline {
+
+    /** A transformation reading all data from in and writing the result to out. */
+    public interface Stage {
+        /**
+         * Called on the stage's thread. Stop reading once in is at its end (read returns -1). Do not close the
+         * streams; the pipeline takes care of that.
+         */
+        void process(InputStream in, OutputStream out) throws IOException;
+    }
+
+    /** Statistics of a single stage; values are updated while the stage runs. */
+    public static class StageStats {
+        private final String name;
+        volatile long bytesIn;
+        volatile long bytesOut;
+        volatile long nanosTotal;
+        volatile long nanosWaitingForInput;
+        volatile long nanosWaitingForOutput;
+
+        StageStats(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getBytesIn() {
+            return bytesIn;
+        }
+
+        public long getBytesOut() {
+            return bytesOut;
+        }
+
+        /** Total run time of the stage. */
+        public long getNanosTotal() {
+            return nanosTotal;
+        }
+
+        /** Time spent in read calls on the input stream (waiting for the previous stage or source). */
+        public long getNanosWaitingForInput() {
+            return nanosWaitingForInput;
+        }
+
+        /**
+         * Time spent in write calls on the output stream; for stages other than the last one, this is the backpressure
+         * time waiting for the following stage.
+         */
+        public long getNanosWaitingForOutput() {
+            return nanosWaitingForOutput;
+        }
+
+        /** Output throughput over the stage's total run time in bytes per second. */
+        public double getThroughputBytesPerSecond() {
+            long nanos = nanosTotal;
+            return nanos > 0 ? bytesOut * 1e9 / nanos : 0;
+        }
+
+        @Override
+        public String toString() {
+            return name + ": " + bytesIn + " bytes in, " + bytesOut + " bytes out, " +
+                    TimeUnit.NANOSECONDS.toMillis(nanosTotal) + " ms total, " +
+                    TimeUnit.NANOSECONDS.toMillis(nanosWaitingForInput) + " ms waiting for input, " +
+                    TimeUnit.NANOSECONDS.toMillis(nanosWaitingForOutput) + " ms waiting for output";
+        }
+    }
+
+    private final List<String> names = new ArrayList<>();
+    private final List<Stage> stages = new ArrayList<>();
+    private final int bufferCapacity;
+    /** The first failure of a stage. */
+    private final AtomicReference<IOException> failure = new AtomicReference<>();
+
+    private ThreadFactory threadFactory;
+    private volatile List<StageStats> stageStats;
+    private List<PipelineOutputStream> pipes;
+    private List<Thread> threads;
+    private CountDownLatch doneLatch;
+    /** Count of stages not done yet; guarded by this, so cancelling and completing cannot overlap. */
+    private int runningStages;
+    /** Only set while holding the lock and stages are running; volatile for {@link #checkFailure()}. */
+    private volatile boolean cancelled;
+
+    public StreamPipeline() {
+        this(65536);
+    }
+
+    /** @param bufferCapacity capacity of the buffers between stages */
+    public StreamPipeline(int bufferCapacity) {
+        this.bufferCapacity = bufferCapacity;
+    }
+
+    /** Appends a stage; the name is used for threads, statistics, and error messages. */
+    public synchronized StreamPipeline addStage(String name, Stage stage) {
+        checkNotStarted();
+        names.add(name);
+        stages.add(stage);
+        return this;
+    }
+
+    /** By default, a new platform thread is created per stage. */
+    public synchronized StreamPipeline setThreadFactory(ThreadFactory threadFactory) {
+        checkNotStarted();
+        this.threadFactory = threadFactory;
+        return this;
+    }
+
+    private void checkNotStarted() {
+        if (threads != null) {
+            throw new IllegalStateException("Pipeline was already started");
+        }
+    }
+
+    /** Starts all stages (each on its own thread) and returns immediately. */
+    public synchronized void start(InputStream source, OutputStream sink) {
+        checkNotStarted();
+        int stageCount = stages.size();
+        if (stageCount == 0) {
+            throw new IllegalStateException("No stages");
+        }
+        List<StageStats> statsList = new ArrayList<>(stageCount);
+        pipes = new ArrayList<>(stageCount - 1);
+        threads = new ArrayList<>(stageCount);
+        doneLatch = new CountDownLatch(stageCount);
+        runningStages = stageCount;
+        for (int i = 0; i < stageCount - 1; i++) {
+            pipes.add(new PipelineOutputStream(bufferCapacity));
+        }
+        for (int i = 0; i < stageCount; i++) {
+            final StageStats stats = new StageStats(names.get(i));
+            statsList.add(stats);
+            InputStream in = i == 0 ? source : pipes.get(i - 1).getInputStream();
+            OutputStream out = i == stageCount - 1 ? sink : pipes.get(i);
+            Runnable runnable = new StageRunnable(stages.get(i), stats, in, out, i == 0, i == stageCount - 1);
+            Thread thread;
+            if (threadFactory != null) {
+                thread = threadFactory.newThread(runnable);
+            } else {
+                thread = new Thread(runnable, "Pipeline stage " + stats.getName());
+            }
+            threads.add(thread);
+        }
+        stageStats = Collections.unmodifiableList(statsList);
+        for (Thread thread : threads) {
+            thread.start();
+        }
+    }
+
+    /** Runs the pipeline and waits until all stages are done; see {@link #await()}. */
+    public void run(InputStream source, OutputStream sink) throws IOException, InterruptedException {
+        start(source, sink);
+        await();
+    }
+
+    /**
+     * Waits until all stages are done.
+     *
+     * @throws IOException           if a stage failed (the cause is the original failure)
+     * @throws CancellationException if the pipeline was cancelled
+     */
+    public void await() throws IOException, InterruptedException {
+        getDoneLatch().await();
+        checkFailure();
+    }
+
+    /**
+     * Waits until all stages are done or the timeout elapsed.
+     *
+     * @return false if the timeout elapsed
+     * @throws IOException           if a stage failed (the cause is the original failure)
+     * @throws CancellationException if the pipeline was cancelled
+     */
+    public boolean await(long timeout, TimeUnit unit) throws IOException, InterruptedException {
+        boolean done = getDoneLatch().await(timeout, unit);
+        checkFailure();
+        return done;
+    }
+
+    private synchronized CountDownLatch getDoneLatch() {
+        if (doneLatch == null) {
+            throw new IllegalStateException("Pipeline was not started");
+        }
+        return doneLatch;
+    }
+
+    private void checkFailure() throws IOException {
+        if (cancelled) {
+            throw new CancellationException("Pipeline was cancelled");
+        }
+        IOException stageFailure = failure.get();
+        if (stageFailure != null) {
+            // New exception to include the stack trace of the waiting thread
+            throw new IOException(stageFailure.getMessage(), stageFailure.getCause());
+        }
+    }
+
+    /** Aborts all stages; does nothing if the pipeline is already done. */
+    public synchronized void cancel() {
+        if (doneLatch == null) {
+            throw new IllegalStateException("Pipeline was not started");
+        }
+        // Decided atomically with the stages completing (see StageRunnable), so a completed pipeline stays successful
+        if (runningStages > 0) {
+            cancelled = true;
+            abortAll(new CancellationException("Pipeline was cancelled"));
+        }
+    }
+
+    private synchronized void abortAll(Throwable cause) {
+        for (PipelineOutputStream pipe : pipes) {
+            pipe.abort(cause);
+        }
+        // Wake up stages blocked elsewhere (e.g. reading from the source) if they react to interruption
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+    }
+
+    /** Statistics for each stage (in order of stages), or null if the pipeline was not started yet. */
+    public List<StageStats> getStageStats() {
+        return stageStats;
+    }
+
+    private class StageRunnable implements Runnable {
+        private final Stage stage;
+        private final StageStats stats;
+        private final InputStream in;
+        private final OutputStream out;
+        private final boolean first;
+        private final boolean last;
+
+        StageRunnable(Stage stage, StageStats stats, InputStream in, OutputStream out, boolean first, boolean last) {
+            this.stage = stage;
+            this.stats = stats;
+            this.in = in;
+            this.out = out;
+            this.first = first;
+            this.last = last;
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            try {
+                stage.process(new StatsInputStream(in, stats), new StatsOutputStream(out, stats));
+                if (last) {
+                    out.flush();
+                } else {
+                    // Regular end of data for the following stage
+                    out.close();
+                }
+            } catch (Throwable th) {
+                if (failure.compareAndSet(null, new IOException("Stage '" + stats.getName() + "' failed", th))) {
+                    synchronized (StreamPipeline.this) {
+                        if (!cancelled) {
+                            abortAll(th);
+                        }
+                    }
+                }
+            } finally {
+                if (!first) {
+                    // Stops the previous stage if this stage did not consume all of its data
+                    IoUtils.safeClose(in);
+                }
+                stats.nanosTotal = System.nanoTime() - start;
+                synchronized (StreamPipeline.this) {
+                    runningStages--;
+                }
+                // After decrementing: once await() returns, cancel() cannot set cancelled anymore
+                doneLatch.countDown();
+            }
+        }
+    }
+
+    /** Counts bytes and time spent in reads. */
+    private static class StatsInputStream extends InputStream {
+        private final InputStream in;
+        private final StageStats stats;
+
+        StatsInputStream(InputStream in, StageStats stats) {
+            this.in = in;
+            this.stats = stats;
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            int value = in.read();
+            stats.nanosWaitingForInput += System.nanoTime() - start;
+            if (value != -1) {
+                stats.bytesIn++;
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            long start = System.nanoTime();
+            int count = in.read(b, off, len);
+            stats.nanosWaitingForInput += System.nanoTime() - start;
+            if (count > 0) {
+                stats.bytesIn += count;
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(n);
+            stats.bytesIn += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return in.available();
+        }
+
+        /** Closing is done by the pipeline. */
+        @Override
+        public void close() {
+        }
+    }
+
+    /** Counts bytes and time spent in writes. */
+    private static class StatsOutputStream extends OutputStream {
+        private final OutputStream out;
+        private final StageStats stats;
+
+        StatsOutputStream(OutputStream out, StageStats stats) {
+            this.out = out;
+            this.stats = stats;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            long start = System.nanoTime();
+            out.write(b);
+            stats.nanosWaitingForOutput += System.nanoTime() - start;
+            stats.bytesOut++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            long start = System.nanoTime();
+            out.write(b, off, len);
+            stats.nanosWaitingForOutput += System.nanoTime() - start;
+            stats.bytesOut += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        /** Closing is done by the pipeline. */
+        @Override
+        public void close() {
+        }
+    }
+
+}
@@ -0,0 +1,323 @@
+/*
+ * Copyright (C) 2014-2020 Markus Junginger, greenrobot (http://greenrobot.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.greenrobot.essentials.io;
+
+import org.greenrobot.essentials.io.SpscCircularByteBuffer.Cursor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Fan-out variant of {@link PipelineOutputStream}: all data written to this stream will get available in each of a
+ * fixed number of InputStreams (see {@link #getInputStream(int)}), e.g. to checksum, compress and upload the same data
+ * concurrently.
+ * <p/>
+ * Data is written only once into a shared ring buffer; each reader has its own read cursor. Thus, readers progress
+ * independently, and the writer only waits if the slowest reader is a full buffer capacity behind. A closed reader no
+ * longer holds back the writer; once all readers are closed, writing throws an IOException (broken pipeline).
+ * <p/>
+ * Like with PipelineOutputStream, waiting threads are parked and only unparked by the other side if actually waiting.
+ * At any time, only a single thread may write, and each InputStream may only be read by a single thread.
+ */
+public class TeePipelineOutputStream extends OutputStream {
+    private final byte[] buffer;
+    private final int capacity;
+    private final int mask;
+    private final TeeInputStream[] inputStreams;
+    private final AtomicInteger openReaderCount;
+
+    /** Total count of bytes written; cachedOther is the last known position of the slowest open reader. */
+    private final Cursor writeCursor = new Cursor();
+    private volatile boolean closedOut;
+
+    /** The writer thread if it is waiting for free buffer space, or null. */
+    private volatile Thread waitingWriter;
+
+    /** Creates a stream with a buffer capacity of 8192 bytes. */
+    public TeePipelineOutputStream(int readerCount) {
+        this(readerCount, 8192);
+    }
+
+    /** @param bufferCapacity rounded up to the next power of 2 */
+    public TeePipelineOutputStream(int readerCount, int bufferCapacity) {
+        if (readerCount <= 0) {
+            throw new IllegalArgumentException("Illegal reader count: " + readerCount);
+        }
+        if (bufferCapacity <= 0 || bufferCapacity > 1 << 30) {
+            throw new IllegalArgumentException("Illegal capacity: " + bufferCapacity);
+        }
+        int powerOf2 = Integer.highestOneBit(bufferCapacity);
+        capacity = powerOf2 == bufferCapacity ? bufferCapacity : powerOf2 << 1;
+        mask = capacity - 1;
+        buffer = new byte[capacity];
+        inputStreams = new TeeInputStream[readerCount];
+        for (int i = 0; i < readerCount; i++) {
+            inputStreams[i] = new TeeInputStream();
+        }
+        openReaderCount = new AtomicInteger(readerCount);
+    }
+
+    /** @param index 0 until reader count - 1; each InputStream receives all data written */
+    public InputStream getInputStream(int index) {
+        return inputStreams[index];
+    }
+
+    public int getReaderCount() {
+        return inputStreams.length;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    @Override
+    public void write(byte[] data, int off, int len) throws IOException {
+        int done = 0;
+        while (done != len) {
+            checkOpenReaders();
+            long writeIndex = writeCursor.get();
+            int free = freeForWrite(writeIndex, len - done);
+            if (free > 0) {
+                int count = Math.min(free, len - done);
+                int index = (int) writeIndex & mask;
+                int countToEnd = Math.min(count, capacity - index);
+                System.arraycopy(data, off + done, buffer, index, countToEnd);
+                if (countToEnd < count) {
+                    System.arraycopy(data, off + done + countToEnd, buffer, 0, count - countToEnd);
+                }
+                // Volatile write, so the following check for waiting readers cannot miss a reader going to sleep
+                writeCursor.set(writeIndex + count);
+                done += count;
+                unparkReaders();
+            } else {
+                awaitFreeSpace();
+            }
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        checkOpenReaders();
+        long writeIndex = writeCursor.get();
+        while (freeForWrite(writeIndex, 1) == 0) {
+            awaitFreeSpace();
+            checkOpenReaders();
+        }
+        buffer[(int) writeIndex & mask] = (byte) b;
+        writeCursor.set(writeIndex + 1);
+        unparkReaders();
+    }
+
+    private void checkOpenReaders() throws IOException {
+        if (openReaderCount.get() == 0) {
+            throw new IOException("All TeeInputStreams were closed (broken pipeline)");
+        }
+    }
+
+    /** Writer only: free space based on the cached slowest reader; refreshes it if not enough space is free. */
+    private int freeForWrite(long writeIndex, int required) {
+        int free = capacity - (int) (writeIndex - writeCursor.cachedOther);
+        if (free < required) {
+            long slowest = writeIndex;
+            for (TeeInputStream inputStream : inputStreams) {
+                if (!inputStream.closed) {
+                    slowest = Math.min(slowest, inputStream.readCursor.get());
+                }
+            }
+            writeCursor.cachedOther = slowest;
+            free = capacity - (int) (writeIndex - slowest);
+        }
+        return free;
+    }
+
+    /** Wakes up all waiting readers. */
+    @Override
+    public void flush() throws IOException {
+        unparkReaders();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closedOut = true;
+        unparkReaders();
+    }
+
+    private void awaitFreeSpace() throws IOException {
+        waitingWriter = Thread.currentThread();
+        try {
+            // Check again after announcing to wait: readers check waitingWriter after reading
+            if (freeForWrite(writeCursor.get(), 1) == 0 && openReaderCount.get() > 0) {
+                LockSupport.park(this);
+            }
+        } finally {
+            waitingWriter = null;
+        }
+        checkInterrupted();
+    }
+
+    private void unparkReaders() {
+        for (TeeInputStream inputStream : inputStreams) {
+            Thread reader = inputStream.waitingReader;
+            if (reader != null) {
+                LockSupport.unpark(reader);
+            }
+        }
+    }
+
+    private static void checkInterrupted() throws IOException {
+        if (Thread.interrupted()) {
+            throw new IOException(new InterruptedException());
+        }
+    }
+
+    protected class TeeInputStream extends InputStream {
+        /** Total count of bytes read by this reader; cachedOther is the last known write index. */
+        final Cursor readCursor = new Cursor();
+        volatile boolean closed;
+
+        /** The reader thread if it is waiting for data, or null. */
+        volatile Thread waitingReader;
+
+        private int availableForRead(long readIndex) {
+            int available = (int) (readCursor.cachedOther - readIndex);
+            if (available == 0) {
+                long writeIndex = writeCursor.get();
+                readCursor.cachedOther = writeIndex;
+                available = (int) (writeIndex - readIndex);
+            }
+            return available;
+        }
+
+        /** Moves the read cursor and wakes up the writer if this reader was the one holding it back. */
+        private void advance(long readIndex, int count) {
+            // Volatile write, so the following check for a waiting writer cannot miss a writer going to sleep
+            readCursor.set(readIndex + count);
+            Thread writer = waitingWriter;
+            // A waiting writer is exactly one capacity ahead of the slowest reader(s)
+            if (writer != null && writeCursor.get() - readIndex == capacity) {
+                LockSupport.unpark(writer);
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            checkNotClosed();
+            if (len == 0) {
+                return closedOut ? -1 : 0;
+            }
+            while (true) {
+                // Read closed flag before reading: all bytes written before closing are visible then
+                boolean closedWriter = closedOut;
+                long readIndex = readCursor.get();
+                int available = availableForRead(readIndex);
+                if (available > 0) {
+                    int count = Math.min(available, len);
+                    int index = (int) readIndex & mask;
+                    int countToEnd = Math.min(count, capacity - index);
+                    System.arraycopy(buffer, index, b, off, countToEnd);
+                    if (countToEnd < count) {
+                        System.arraycopy(buffer, 0, b, off + countToEnd, count - countToEnd);
+                    }
+                    advance(readIndex, count);
+                    return count;
+                } else if (closedWriter) {
+                    return -1;
+                }
+                awaitData();
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkNotClosed();
+            while (true) {
+                boolean closedWriter = closedOut;
+                long readIndex = readCursor.get();
+                if (availableForRead(readIndex) > 0) {
+                    int value = buffer[(int) readIndex & mask] & 0xff;
+                    advance(readIndex, 1);
+                    return value;
+                } else if (closedWriter) {
+                    return -1;
+                }
+                awaitData();
+            }
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            checkNotClosed();
+            long total = 0;
+            while (total < n) {
+                boolean closedWriter = closedOut;
+                long readIndex = readCursor.get();
+                int available = availableForRead(readIndex);
+                if (available > 0) {
+                    int count = (int) Math.min(available, n - total);
+                    advance(readIndex, count);
+                    total += count;
+                } else if (closedWriter) {
+                    break;
+                } else {
+                    awaitData();
+                }
+            }
+            return total;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) (writeCursor.get() - readCursor.get());
+        }
+
+        private void checkNotClosed() throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+        }
+
+        private void awaitData() throws IOException {
+            waitingReader = Thread.currentThread();
+            try {
+                // Check again after announcing to wait: the writer checks waitingReader after writing
+                if (writeCursor.get() == readCursor.get() && !closedOut) {
+                    LockSupport.park(this);
+                }
+            } finally {
+                waitingReader = null;
+            }
+            checkInterrupted();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                openReaderCount.decrementAndGet();
+                // The writer may be waiting for this reader
+                Thread writer = waitingWriter;
+                if (writer != null) {
+                    LockSupport.unpark(writer);
+                }
+            }
+        }
+    }
+
+}
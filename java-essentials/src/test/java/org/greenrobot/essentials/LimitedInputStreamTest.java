@@ -21,6 +21,7 @@ import org.junit.Test;
 
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 
 import static org.junit.Assert.assertArrayEquals;
@@ -38,4 +39,60 @@ public class LimitedInputStreamTest {
         assertArrayEquals(new byte[]{1, 2, 0, 0}, readBuffer);
         assertEquals(-1, buffered.read());
     }
+
+    @Test
+    public void testInternalBuffer() throws IOException {
+        ByteArrayInputStream in = new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10});
+        LimitedInputStream limited = new LimitedInputStream(in, 7, 4);
+        assertEquals(1, limited.read());
+        // Read ahead up to the buffer size only
+        assertEquals(6, in.available());
+        assertEquals(6, limited.getBytesLeft());
+        assertEquals(6, limited.available());
+
+        byte[] readBuffer = new byte[2];
+        assertEquals(2, limited.read(readBuffer));
+        assertArrayEquals(new byte[]{2, 3}, readBuffer);
+        assertEquals(2, limited.skip(2));
+        assertEquals(6, limited.read());
+        assertEquals(7, limited.read());
+        assertEquals(-1, limited.read());
+        assertEquals(0, limited.getBytesLeft());
+        // Never read beyond the limit
+        assertEquals(8, in.read());
+    }
+
+    @Test
+    public void testTransferTo() throws IOException {
+        ByteArrayInputStream in = new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5, 6});
+        LimitedInputStream limited = new LimitedInputStream(in, 5, 2);
+        assertEquals(1, limited.read());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(4, limited.transferTo(out));
+        assertArrayEquals(new byte[]{2, 3, 4, 5}, out.toByteArray());
+        assertEquals(0, limited.transferTo(out));
+        assertEquals(6, in.read());
+    }
+
+    @Test
+    public void testCollapsedChain() throws IOException {
+        ByteArrayInputStream in = new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        LimitedInputStream outer = new LimitedInputStream(in, 6);
+        assertEquals(1, outer.read());
+        LimitedInputStream part = new LimitedInputStream(outer, 3);
+        LimitedInputStream subPart = new LimitedInputStream(part, 10);
+        assertEquals(3, subPart.getBytesLeft());
+        assertEquals(2, subPart.read());
+        assertEquals(1, subPart.skip(1));
+        assertEquals(1, part.getBytesLeft());
+        assertEquals(3, outer.getBytesLeft());
+
+        // Continue on the wrapped streams
+        assertEquals(4, part.read());
+        assertEquals(-1, part.read());
+        byte[] readBuffer = new byte[4];
+        assertEquals(2, outer.read(readBuffer));
+        assertArrayEquals(new byte[]{5, 6, 0, 0}, readBuffer);
+        assertEquals(-1, outer.read());
+    }
 }
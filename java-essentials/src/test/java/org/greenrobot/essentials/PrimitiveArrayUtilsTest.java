@@ -121,4 +121,34 @@ public class PrimitiveArrayUtilsTest {
             Assert.assertEquals(expected, value);
         }
     }
+
+    @Test
+    public void testPutIntAndLong() {
+        checkPutIntAndLong(primitiveArrayUtilsPotentiallyUnsafe);
+    }
+
+    @Test
+    public void testPutIntAndLongPlainJava() {
+        checkPutIntAndLong(primitiveArrayUtilsSafe);
+    }
+
+    private void checkPutIntAndLong(PrimitiveArrayUtils utils) {
+        Random random = new Random(23);
+        byte[] bytesPut = new byte[100];
+        ByteBuffer bufferLE = ByteBuffer.wrap(bytesPut).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer bufferBE = ByteBuffer.wrap(bytesPut);
+        for (int i = 0; i < bytesPut.length - 7; i++) {
+            int intValue = random.nextInt();
+            utils.putIntLE(bytesPut, i, intValue);
+            Assert.assertEquals(intValue, bufferLE.getInt(i));
+            utils.putIntBE(bytesPut, i, intValue);
+            Assert.assertEquals(intValue, bufferBE.getInt(i));
+
+            long longValue = random.nextLong();
+            utils.putLongLE(bytesPut, i, longValue);
+            Assert.assertEquals(longValue, bufferLE.getLong(i));
+            utils.putLongBE(bytesPut, i, longValue);
+            Assert.assertEquals(longValue, bufferBE.getLong(i));
+        }
+    }
 }
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2014-2020 Markus Junginger, greenrobot (http://greenrobot.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.greenrobot.essentials.collections;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BloomFilterTest {
+
+    @Test
+    public void testPutAndMightContain() {
+        BloomFilter filter = BloomFilter.create(1000, 0.01);
+        assertFalse(filter.mightContain(42));
+        assertTrue(filter.put(42));
+        assertFalse(filter.put(42));
+        assertTrue(filter.mightContain(42));
+
+        byte[] bytes = {1, 2, 3};
+        assertFalse(filter.mightContain(bytes));
+        assertTrue(filter.put(bytes));
+        assertTrue(filter.mightContain(bytes));
+        assertTrue(filter.mightContain(new byte[]{1, 2, 3}));
+
+        filter.clear();
+        assertFalse(filter.mightContain(42));
+        assertFalse(filter.mightContain(bytes));
+    }
+
+    @Test
+    public void testFalsePositiveRate() {
+        int count = 100000;
+        double rate = 0.01;
+        BloomFilter filter = BloomFilter.create(count, rate);
+        Random random = new Random(42);
+        long[] values = new long[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = random.nextLong();
+            filter.put(values[i]);
+        }
+        for (long value : values) {
+            assertTrue(filter.mightContain(value));
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < count; i++) {
+            if (filter.mightContain(random.nextLong())) {
+                falsePositives++;
+            }
+        }
+        double actualRate = (double) falsePositives / count;
+        assertTrue("False positive rate too high: " + actualRate, actualRate < rate * 1.5);
+    }
+
+    @Test
+    public void testToBytesAndFromBytes() {
+        BloomFilter filter = new BloomFilter(3, 7, 1234);
+        for (int i = 0; i < 100; i++) {
+            filter.put(i);
+        }
+        byte[] bytes = filter.toBytes();
+
+        BloomFilter filter2 = BloomFilter.fromBytes(bytes);
+        assertEquals(filter.getBitCount(), filter2.getBitCount());
+        assertEquals(filter.getHashCount(), filter2.getHashCount());
+        assertEquals(filter.getSeed(), filter2.getSeed());
+        assertEquals(filter.getFillRatio(), filter2.getFillRatio(), 0);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(filter2.mightContain(i));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFromBytesInvalid() {
+        byte[] bytes = BloomFilter.create(100, 0.1).toBytes();
+        byte[] truncated = new byte[bytes.length - 1];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+        BloomFilter.fromBytes(truncated);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFromBytesBlockCountOverflow() {
+        // One block of bits, but a block count whose length overflows int to the same value
+        byte[] bytes = new BloomFilter(1, 7, 1234).toBytes();
+        ByteBuffer.wrap(bytes).putInt(4, (1 << 26) + 1);
+        BloomFilter.fromBytes(bytes);
+    }
+
+    @Test
+    public void testConcurrentPut() throws InterruptedException {
+        final BloomFilter filter = BloomFilter.create(80000, 0.01);
+        final int threadCount = 8;
+        final int valuesPerThread = 10000;
+        final CountDownLatch doneLatch = new CountDownLatch(threadCount);
+        for (int t = 0; t < threadCount; t++) {
+            final int threadIndex = t;
+            new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < valuesPerThread; i++) {
+                        filter.put(threadIndex * valuesPerThread + i);
+                    }
+                    doneLatch.countDown();
+                }
+            }.start();
+        }
+        assertTrue(doneLatch.await(30, TimeUnit.SECONDS));
+        for (int i = 0; i < threadCount * valuesPerThread; i++) {
+            assertTrue(filter.mightContain(i));
+        }
+    }
+
+}
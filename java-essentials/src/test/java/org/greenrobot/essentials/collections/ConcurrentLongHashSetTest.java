@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2014-2020 Markus Junginger, greenrobot (http://greenrobot.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.greenrobot.essentials.collections;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrentLongHashSetTest {
+
+    @Test
+    public void testSimple() {
+        ConcurrentLongHashSet set = new ConcurrentLongHashSet();
+
+        assertTrue(set.add(1l << 33));
+        assertFalse(set.add(1l << 33));
+        assertFalse(set.contains(1));
+        assertTrue(set.contains(1l << 33));
+
+        long keyLong = 0x7fffffffl << 33l + 14;
+        assertFalse(set.remove(keyLong));
+        set.add(keyLong);
+        assertTrue(set.contains(keyLong));
+        assertTrue(set.remove(keyLong));
+        assertFalse(set.remove(keyLong));
+        assertFalse(set.contains(keyLong));
+        assertEquals(1, set.size());
+    }
+
+    @Test
+    public void testReservedValues() {
+        ConcurrentLongHashSet set = new ConcurrentLongHashSet();
+        assertFalse(set.contains(0));
+        assertFalse(set.contains(Long.MIN_VALUE));
+
+        assertTrue(set.add(0));
+        assertFalse(set.add(0));
+        assertTrue(set.add(Long.MIN_VALUE));
+        assertTrue(set.contains(0));
+        assertTrue(set.contains(Long.MIN_VALUE));
+        assertEquals(2, set.size());
+
+        assertTrue(set.remove(0));
+        assertFalse(set.contains(0));
+        assertTrue(set.contains(Long.MIN_VALUE));
+        assertEquals(1, set.size());
+    }
+
+    @Test
+    public void testRandom() {
+        ConcurrentLongHashSet set = new ConcurrentLongHashSet(4);
+        Random random = new Random();
+        for (int i = 0; i < 5000; i++) {
+            long key = random.nextLong();
+            assertTrue(set.add(key));
+            assertTrue(set.contains(key));
+            if (i % 2 == 0) {
+                assertTrue(set.remove(key));
+                assertFalse(set.contains(key));
+            }
+        }
+        assertEquals(2500, set.size());
+        assertEquals(2500, set.keys().length);
+    }
+
+    @Test
+    public void testKeysAndClear() {
+        ConcurrentLongHashSet set = new ConcurrentLongHashSet();
+        set.add(0);
+        set.add(-98);
+        set.add(666);
+        set.add(Long.MAX_VALUE);
+        set.remove(666);
+
+        long[] keys = set.keys();
+        assertEquals(3, keys.length);
+        Arrays.sort(keys);
+        assertEquals(-98, keys[0]);
+        assertEquals(0, keys[1]);
+        assertEquals(Long.MAX_VALUE, keys[2]);
+
+        set.clear();
+        assertEquals(0, set.size());
+        assertEquals(0, set.keys().length);
+        assertFalse(set.contains(0));
+        assertFalse(set.contains(-98));
+    }
+
+    @Test
+    public void testReserveRoom() {
+        ConcurrentLongHashSet set = new ConcurrentLongHashSet();
+        set.add(42);
+        set.reserveRoom(1000);
+        for (int i = 1; i <= 1000; i++) {
+            set.add(i * 31);
+        }
+        assertEquals(1001, set.size());
+        assertTrue(set.contains(42));
+        assertTrue(set.contains(31000));
+    }
+
+    @Test
+    public void testConcurrentAdd() throws InterruptedException {
+        final ConcurrentLongHashSet set = new ConcurrentLongHashSet();
+        final int threadCount = 8;
+        final int valuesPerThread = 10000;
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        final CountDownLatch doneLatch = new CountDownLatch(threadCount);
+        final AtomicInteger addedCount = new AtomicInteger();
+        final List<Throwable> errors = new CopyOnWriteArrayList<>();
+        for (int t = 0; t < threadCount; t++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        startLatch.await();
+                        // All threads add the same values; each value must be added exactly once
+                        for (int i = 1; i <= valuesPerThread; i++) {
+                            if (set.add(i * 7919L)) {
+                                addedCount.incrementAndGet();
+                            }
+                            if (!set.contains(i * 7919L)) {
+                                throw new RuntimeException("Value not found after add: " + i);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        errors.add(e);
+                    } finally {
+                        doneLatch.countDown();
+                    }
+                }
+            }.start();
+        }
+        startLatch.countDown();
+        assertTrue(doneLatch.await(30, TimeUnit.SECONDS));
+        assertTrue(errors.toString(), errors.isEmpty());
+
+        assertEquals(valuesPerThread, addedCount.get());
+        assertEquals(valuesPerThread, set.size());
+        for (int i = 1; i <= valuesPerThread; i++) {
+            assertTrue(set.contains(i * 7919L));
+        }
+    }
+
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2014-2020 Markus Junginger, greenrobot (http://greenrobot.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.greenrobot.essentials.collections;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrentMultimapTest {
+
+    @Test
+    public void testGetReturnsSnapshot() {
+        ConcurrentMultimap<String, String> multimap = ConcurrentMultimap.create();
+        multimap.putElement("a", "1");
+        List<String> snapshot = multimap.get("a");
+        multimap.putElement("a", "2");
+        assertEquals(1, snapshot.size());
+        assertEquals(2, multimap.get("a").size());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testGetIsUnmodifiable() {
+        ConcurrentMultimap<String, String> multimap = ConcurrentMultimap.create();
+        multimap.putElement("a", "1");
+        multimap.get("a").add("2");
+    }
+
+    @Test
+    public void testPutCopiesCollection() {
+        ConcurrentMultimap<String, String> multimap = ConcurrentMultimap.create();
+        List<String> list = new ArrayList<>();
+        list.add("1");
+        multimap.put("a", list);
+        list.add("2");
+        assertEquals(1, multimap.countElements("a"));
+    }
+
+    @Test
+    public void testConcurrentPutAndRemove() throws InterruptedException {
+        final ConcurrentMultimap<Integer, Integer> multimap = ConcurrentMultimap.create();
+        final int threadCount = 8;
+        final int elementsPerThread = 1000;
+        final CountDownLatch doneLatch = new CountDownLatch(threadCount);
+        for (int t = 0; t < threadCount; t++) {
+            final int threadIndex = t;
+            new Thread() {
+                @Override
+                public void run() {
+                    // All threads use the same keys to provoke contention
+                    for (int i = 0; i < elementsPerThread; i++) {
+                        int element = threadIndex * elementsPerThread + i;
+                        multimap.putElement(i % 10, element);
+                        if (i % 2 == 1) {
+                            if (!multimap.removeElement(i % 10, element)) {
+                                throw new RuntimeException("Element not removed: " + element);
+                            }
+                        }
+                    }
+                    doneLatch.countDown();
+                }
+            }.start();
+        }
+        assertTrue(doneLatch.await(30, TimeUnit.SECONDS));
+        assertEquals(threadCount * elementsPerThread / 2, multimap.countElements());
+        // Keys with odd numbers had all their elements removed
+        assertEquals(5, multimap.size());
+    }
+
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2014-2020 Markus Junginger, greenrobot (http://greenrobot.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.greenrobot.essentials.collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(Parameterized.class)
+public class LongMultimapTest {
+
+    @Parameterized.Parameters
+    public static Collection<Object[]> data() {
+        return Arrays.asList(
+                new Object[]{new LongMultimap()},
+                new Object[]{LongMultimap.createSynchronized(2)}
+        );
+    }
+
+    @Parameterized.Parameter
+    public LongMultimap multimap;
+
+    @Before
+    public void setup() {
+        multimap.clear();
+        assertEquals(1, multimap.putElement(1, 10));
+        assertEquals(2, multimap.putElement(1, 20));
+        assertEquals(3, multimap.putElement(1, 30));
+    }
+
+    @Test
+    public void testPutElementAndGet() {
+        assertArrayEquals(new long[]{10, 20, 30}, multimap.get(1));
+        assertEquals(20, multimap.getElement(1, 1));
+        assertNull(multimap.get(2));
+        assertEquals(1, multimap.size());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testGetElementOutOfBounds() {
+        multimap.getElement(1, 3);
+    }
+
+    @Test
+    public void testContains() {
+        assertTrue(multimap.containsKey(1));
+        assertFalse(multimap.containsKey(2));
+        assertTrue(multimap.containsElement(1, 10));
+        assertFalse(multimap.containsElement(1, 40));
+        assertFalse(multimap.containsElement(2, 10));
+    }
+
+    @Test
+    public void testRemove() {
+        assertTrue(multimap.removeElement(1, 20));
+        assertFalse(multimap.removeElement(1, 20));
+        assertArrayEquals(new long[]{10, 30}, multimap.get(1));
+
+        assertTrue(multimap.removeElement(1, 10));
+        assertTrue(multimap.containsKey(1));
+        assertTrue(multimap.removeElement(1, 30));
+        assertFalse(multimap.containsKey(1));
+        assertEquals(0, multimap.size());
+        assertEquals(0, multimap.countElements());
+
+        multimap.putElement(2, 1);
+        multimap.putElement(2, 2);
+        assertArrayEquals(new long[]{1, 2}, multimap.remove(2));
+        assertNull(multimap.remove(2));
+        assertEquals(0, multimap.countElements());
+    }
+
+    @Test
+    public void testCountElements() {
+        multimap.putElement(2, 10);
+        multimap.putElement(2, 10);
+
+        assertEquals(5, multimap.countElements());
+        assertEquals(3, multimap.countElements(1));
+        assertEquals(2, multimap.countElements(2));
+        assertEquals(0, multimap.countElements(3));
+    }
+
+    @Test
+    public void testKeys() {
+        multimap.putElement(-98, 1);
+        multimap.putElement(Long.MAX_VALUE, 1);
+        long[] keys = multimap.keys();
+        Arrays.sort(keys);
+        assertArrayEquals(new long[]{-98, 1, Long.MAX_VALUE}, keys);
+    }
+
+    @Test
+    public void testManyKeysAndElements() {
+        multimap.clear();
+        Random random = new Random(42);
+        long[] keys = new long[1000];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = random.nextLong();
+            for (int j = 0; j <= i % 50; j++) {
+                multimap.putElement(keys[i], j);
+            }
+        }
+        int total = 0;
+        for (int i = 0; i < keys.length; i++) {
+            int count = i % 50 + 1;
+            total += count;
+            assertEquals(count, multimap.countElements(keys[i]));
+            assertEquals(count - 1, multimap.getElement(keys[i], count - 1));
+        }
+        assertEquals(total, multimap.countElements());
+
+        // Remove half of the keys and add again to reuse pooled arrays
+        for (int i = 0; i < keys.length; i += 2) {
+            multimap.remove(keys[i]);
+        }
+        for (int i = 0; i < keys.length; i += 2) {
+            multimap.putElement(keys[i], 42);
+            assertArrayEquals(new long[]{42}, multimap.get(keys[i]));
+        }
+        assertEquals(keys.length, multimap.size());
+    }
+
+}
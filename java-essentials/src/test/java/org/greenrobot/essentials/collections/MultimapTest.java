@@ -26,6 +26,7 @@ import org.junit.runners.Parameterized;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 
 import static org.junit.Assert.*;
@@ -39,8 +40,12 @@ public class MultimapTest {
                 new Object[]{Multimap.create()},
                 new Object[]{Multimap.create(ListType.THREAD_SAFE)},
                 new Object[]{Multimap.create(ListType.LINKED)},
+                new Object[]{Multimap.createBounded(10)},
                 new Object[]{MultimapSet.create()},
-                new Object[]{MultimapSet.create(SetType.THREAD_SAFE)}
+                new Object[]{MultimapSet.create(SetType.THREAD_SAFE)},
+                new Object[]{MultimapSet.create(SetType.REGULAR, 10)},
+                new Object[]{ConcurrentMultimap.create()},
+                new Object[]{ConcurrentMultimapSet.create()}
         );
     }
 
@@ -120,4 +125,55 @@ public class MultimapTest {
         assertEquals(0, multimap.countElements("c"));
     }
 
+    @Test
+    public void testCountElementsMaintained() {
+        multimap.putElement("b", "10");
+        multimap.putElements("c", Arrays.asList("20", "21"));
+        assertEquals(6, multimap.countElements());
+
+        multimap.removeElement("a", "1");
+        multimap.removeElement("a", "not there");
+        assertEquals(5, multimap.countElements());
+
+        multimap.remove("c");
+        assertEquals(3, multimap.countElements());
+
+        assertEquals(3, multimap.getTrackedElementCount());
+
+        multimap.clear();
+        assertEquals(0, multimap.countElements());
+        assertEquals(0, multimap.getTrackedElementCount());
+        assertEquals(0, multimap.recountElements());
+    }
+
+    @Test
+    public void testCountElementsExactAfterDirectModification() {
+        if (multimap instanceof AbstractConcurrentMultimap) {
+            // Collections cannot be modified directly
+            return;
+        }
+        int count = multimap.countElements();
+        multimap.get("a").add("direct");
+        assertEquals(count + 1, multimap.countElements());
+        multimap.keySet().remove("a");
+        multimap.recountElements();
+        assertEquals(multimap.countElements(), multimap.getTrackedElementCount());
+    }
+
+    @Test
+    public void testElementsIterator() {
+        multimap.putElement("b", "10");
+        Iterator<String> iterator = multimap.elementsIterator();
+        Collection<String> elements = new HashSet<>();
+        while (iterator.hasNext()) {
+            elements.add(iterator.next());
+        }
+        assertEquals(4, elements.size());
+        assertTrue(elements.contains("1"));
+        assertTrue(elements.contains("10"));
+
+        multimap.clear();
+        assertFalse(multimap.elementsIterator().hasNext());
+    }
+
 }
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2014-2020 Markus Junginger, greenrobot (http://greenrobot.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.greenrobot.essentials.collections;
+
+import org.greenrobot.essentials.collections.Multimap.ListType;
+import org.greenrobot.essentials.collections.MultimapSet.SetType;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RingBufferListTest {
+
+    @Test
+    public void testAddAndEvict() {
+        RingBufferList<Integer> list = new RingBufferList<>(3);
+        list.add(1);
+        list.add(2);
+        assertFalse(list.isFull());
+        list.add(3);
+        assertTrue(list.isFull());
+        assertEquals(Arrays.asList(1, 2, 3), list);
+
+        list.add(4);
+        list.add(5);
+        assertEquals(3, list.size());
+        assertEquals(Arrays.asList(3, 4, 5), list);
+        assertEquals(3, (int) list.get(0));
+        assertEquals(5, (int) list.get(2));
+    }
+
+    @Test
+    public void testLargeCapacityGrows() {
+        // Backing array starts small and grows up to the capacity
+        RingBufferList<Integer> list = new RingBufferList<>(1000000);
+        list.add(0);
+        list.remove(0);
+        for (int i = 1; i <= 20; i++) {
+            list.add(i);
+        }
+        assertEquals(20, list.size());
+        assertEquals(1, (int) list.get(0));
+        assertEquals(20, (int) list.get(19));
+
+        RingBufferList<Integer> small = new RingBufferList<>(10);
+        for (int i = 1; i <= 25; i++) {
+            small.add(i);
+        }
+        assertEquals(Arrays.asList(16, 17, 18, 19, 20, 21, 22, 23, 24, 25), small);
+    }
+
+    @Test
+    public void testRemove() {
+        RingBufferList<Integer> list = new RingBufferList<>(4);
+        for (int i = 1; i <= 6; i++) {
+            list.add(i);
+        }
+        assertEquals(Arrays.asList(3, 4, 5, 6), list);
+        assertEquals(3, (int) list.remove(0));
+        assertEquals(5, (int) list.remove(1));
+        assertEquals(Arrays.asList(4, 6), list);
+        assertTrue(list.remove(Integer.valueOf(6)));
+        assertEquals(Arrays.asList(4), list);
+
+        list.add(7);
+        list.add(8);
+        list.add(9);
+        list.add(10);
+        assertEquals(Arrays.asList(7, 8, 9, 10), list);
+
+        Iterator<Integer> iterator = list.iterator();
+        iterator.next();
+        iterator.remove();
+        assertEquals(Arrays.asList(8, 9, 10), list);
+
+        list.clear();
+        assertEquals(0, list.size());
+        list.add(11);
+        assertEquals(Arrays.asList(11), list);
+    }
+
+    @Test
+    public void testSet() {
+        RingBufferList<String> list = new RingBufferList<>(2);
+        list.add("a");
+        list.add("b");
+        list.add("c");
+        assertEquals("b", list.set(0, "x"));
+        assertEquals(Arrays.asList("x", "c"), list);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testAddInMiddle() {
+        RingBufferList<String> list = new RingBufferList<>(3);
+        list.add("a");
+        list.add(0, "b");
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testGetOutOfBounds() {
+        RingBufferList<String> list = new RingBufferList<>(3);
+        list.add("a");
+        list.get(1);
+    }
+
+    @Test
+    public void testBoundedMultimap() {
+        Multimap<String, Integer> multimap = Multimap.createBounded(3);
+        for (int i = 1; i <= 5; i++) {
+            assertEquals(Math.min(i, 3), multimap.putElement("a", i));
+        }
+        multimap.putElement("b", 42);
+        List<Integer> list = multimap.get("a");
+        assertTrue(list instanceof RingBufferList);
+        assertEquals(Arrays.asList(3, 4, 5), list);
+        assertEquals(4, multimap.countElements());
+
+        multimap.putElements("b", Arrays.asList(43, 44, 45));
+        assertEquals(Arrays.asList(43, 44, 45), multimap.get("b"));
+        assertEquals(6, multimap.countElements());
+    }
+
+    @Test
+    public void testBoundedMultimapPut() {
+        Multimap<String, Integer> multimap = Multimap.create(ListType.REGULAR, 2);
+        multimap.put("a", new ArrayList<>(Arrays.asList(1, 2, 3)));
+        assertEquals(Arrays.asList(2, 3), multimap.get("a"));
+        Map<String, List<Integer>> map = new HashMap<>();
+        map.put("b", new ArrayList<>(Arrays.asList(4, 5, 6, 7)));
+        multimap.putAll(map);
+        assertEquals(Arrays.asList(6, 7), multimap.get("b"));
+        assertEquals(4, multimap.countElements());
+    }
+
+    @Test
+    public void testBoundedMultimapOtherListType() {
+        Multimap<String, Integer> multimap = Multimap.create(ListType.LINKED, 2);
+        multimap.putElement("a", 1);
+        multimap.putElement("a", 2);
+        multimap.putElement("a", 3);
+        assertEquals(Arrays.asList(2, 3), multimap.get("a"));
+        assertEquals(2, multimap.countElements());
+    }
+
+    @Test
+    public void testBoundedMultimapSet() {
+        MultimapSet<String, Integer> multimap = MultimapSet.create(SetType.REGULAR, 2);
+        multimap.putElement("a", 1);
+        multimap.putElement("a", 2);
+        multimap.putElement("a", 2);
+        multimap.putElement("a", 3);
+        assertEquals(2, multimap.countElements("a"));
+        assertFalse(multimap.containsElement("a", 1));
+        assertTrue(multimap.containsElement("a", 2));
+        assertTrue(multimap.containsElement("a", 3));
+
+        MultimapSet<String, Integer> multimapThreadSafe = MultimapSet.create(SetType.THREAD_SAFE, 1);
+        multimapThreadSafe.putElement("a", 1);
+        multimapThreadSafe.putElement("a", 2);
+        assertFalse(multimapThreadSafe.containsElement("a", 1));
+        assertEquals(1, multimapThreadSafe.countElements());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRingBufferRequiresMax() {
+        Multimap.create(ListType.RING_BUFFER);
+    }
+
+}
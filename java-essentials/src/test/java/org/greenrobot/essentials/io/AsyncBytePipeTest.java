@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2014-2020 Markus Junginger, greenrobot (http://greenrobot.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.greenrobot.essentials.io;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AsyncBytePipeTest {
+
+    private static class TestSubscriber implements AsyncBytePipe.Subscriber {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final long initialRequest;
+        final CountDownLatch doneLatch = new CountDownLatch(1);
+        AsyncBytePipe.Subscription subscription;
+        int chunkCount;
+        volatile boolean completed;
+        volatile Throwable error;
+
+        TestSubscriber(long initialRequest) {
+            this.initialRequest = initialRequest;
+        }
+
+        @Override
+        public void onSubscribe(AsyncBytePipe.Subscription subscription) {
+            this.subscription = subscription;
+            if (initialRequest > 0) {
+                subscription.request(initialRequest);
+            }
+        }
+
+        @Override
+        public void onNext(ByteBuffer chunk) {
+            assertTrue(chunk.isReadOnly());
+            assertTrue(chunk.hasRemaining());
+            byte[] data = new byte[chunk.remaining()];
+            chunk.get(data);
+            bytes.write(data, 0, data.length);
+            chunkCount++;
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            doneLatch.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+            doneLatch.countDown();
+        }
+    }
+
+    @Test
+    public void testOfferAndDemand() {
+        AsyncBytePipe pipe = new AsyncBytePipe(64, 4);
+        TestSubscriber subscriber = new TestSubscriber(0);
+        pipe.subscribe(subscriber);
+        assertEquals(10, pipe.offer(new byte[]{0, 1, 2, 3, 4, 5, 6, 7, 8, 9}));
+        assertEquals(0, subscriber.chunkCount);
+        assertEquals(10, pipe.available());
+
+        subscriber.subscription.request(2);
+        assertEquals(2, subscriber.chunkCount);
+        assertArrayEquals(new byte[]{0, 1, 2, 3, 4, 5, 6, 7}, subscriber.bytes.toByteArray());
+        assertEquals(2, pipe.available());
+
+        pipe.complete();
+        assertFalse(subscriber.completed);
+        subscriber.subscription.request(1);
+        assertEquals(3, subscriber.chunkCount);
+        assertTrue(subscriber.completed);
+        assertNull(subscriber.error);
+        assertEquals(0, pipe.available());
+    }
+
+    @Test
+    public void testBackpressure() {
+        AsyncBytePipe pipe = new AsyncBytePipe(16, 8);
+        final int[] writableCount = new int[1];
+        pipe.setWritableListener(new AsyncBytePipe.WritableListener() {
+            @Override
+            public void onWritable() {
+                writableCount[0]++;
+            }
+        });
+        TestSubscriber subscriber = new TestSubscriber(0);
+        pipe.subscribe(subscriber);
+        assertEquals(16, pipe.offer(new byte[20]));
+        assertEquals(0, pipe.offer(ByteBuffer.allocate(4)));
+        assertEquals(0, writableCount[0]);
+
+        subscriber.subscription.request(1);
+        assertEquals(1, writableCount[0]);
+        assertEquals(8, subscriber.bytes.size());
+        assertEquals(8, pipe.offer(new byte[8]));
+
+        // Not waiting anymore, so no more notifications
+        subscriber.subscription.request(1);
+        assertEquals(1, writableCount[0]);
+    }
+
+    @Test
+    public void testCompleteBeforeSubscribe() {
+        AsyncBytePipe pipe = new AsyncBytePipe();
+        pipe.offer(new byte[]{1, 2, 3});
+        pipe.complete();
+        TestSubscriber subscriber = new TestSubscriber(Long.MAX_VALUE);
+        pipe.subscribe(subscriber);
+        assertTrue(subscriber.completed);
+        assertArrayEquals(new byte[]{1, 2, 3}, subscriber.bytes.toByteArray());
+        try {
+            pipe.offer(new byte[1]);
+            fail("Should have thrown");
+        } catch (IllegalStateException e) {
+            // OK
+        }
+    }
+
+    @Test
+    public void testFail() {
+        AsyncBytePipe pipe = new AsyncBytePipe();
+        TestSubscriber subscriber = new TestSubscriber(0);
+        pipe.subscribe(subscriber);
+        pipe.offer(new byte[]{1, 2, 3});
+        RuntimeException exception = new RuntimeException("Boom");
+        pipe.fail(exception);
+        assertEquals(exception, subscriber.error);
+        assertEquals(0, subscriber.bytes.size());
+        assertEquals(0, pipe.available());
+    }
+
+    @Test
+    public void testCancel() {
+        AsyncBytePipe pipe = new AsyncBytePipe(16, 16);
+        final int[] writableCount = new int[1];
+        pipe.setWritableListener(new AsyncBytePipe.WritableListener() {
+            @Override
+            public void onWritable() {
+                writableCount[0]++;
+            }
+        });
+        TestSubscriber subscriber = new TestSubscriber(0);
+        pipe.subscribe(subscriber);
+        assertEquals(16, pipe.offer(new byte[17]));
+        subscriber.subscription.cancel();
+        assertTrue(pipe.isCancelled());
+        assertEquals(1, writableCount[0]);
+        assertEquals(-1, pipe.offer(new byte[1]));
+        assertEquals(0, pipe.available());
+        assertFalse(subscriber.completed);
+        assertNull(subscriber.error);
+    }
+
+    @Test
+    public void testIllegalRequest() {
+        AsyncBytePipe pipe = new AsyncBytePipe();
+        TestSubscriber subscriber = new TestSubscriber(0);
+        pipe.subscribe(subscriber);
+        subscriber.subscription.request(0);
+        assertTrue(subscriber.error instanceof IllegalArgumentException);
+    }
+
+    @Test
+    public void testSecondSubscriber() {
+        AsyncBytePipe pipe = new AsyncBytePipe();
+        pipe.subscribe(new TestSubscriber(0));
+        TestSubscriber subscriber = new TestSubscriber(1);
+        pipe.subscribe(subscriber);
+        assertTrue(subscriber.error instanceof IllegalStateException);
+    }
+
+    @Test
+    public void testConcurrentWriterAndRequester() throws InterruptedException {
+        final AsyncBytePipe pipe = new AsyncBytePipe(256, 100);
+        final byte[] data = new byte[100000];
+        new Random(42).nextBytes(data);
+        final TestSubscriber subscriber = new TestSubscriber(0);
+        pipe.subscribe(subscriber);
+
+        // The writer offers from its own thread and resumes on notification
+        final Object resumeLock = new Object();
+        final boolean[] writable = new boolean[1];
+        pipe.setWritableListener(new AsyncBytePipe.WritableListener() {
+            @Override
+            public void onWritable() {
+                synchronized (resumeLock) {
+                    writable[0] = true;
+                    resumeLock.notifyAll();
+                }
+            }
+        });
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                int position = 0;
+                while (position < data.length) {
+                    synchronized (resumeLock) {
+                        writable[0] = false;
+                    }
+                    int count = pipe.offer(data, position, Math.min(1000, data.length - position));
+                    position += count;
+                    if (count == 0) {
+                        synchronized (resumeLock) {
+                            while (!writable[0]) {
+                                try {
+                                    resumeLock.wait(10);
+                                } catch (InterruptedException e) {
+                                    return;
+                                }
+                            }
+                        }
+                    }
+                }
+                pipe.complete();
+            }
+        };
+        writer.start();
+
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+        while (!subscriber.completed && System.currentTimeMillis() < deadline) {
+            subscriber.subscription.request(1);
+            Thread.yield();
+        }
+        assertTrue(subscriber.doneLatch.await(1, TimeUnit.SECONDS));
+        assertTrue(Arrays.equals(data, subscriber.bytes.toByteArray()));
+    }
+
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2014-2020 Markus Junginger, greenrobot (http://greenrobot.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.greenrobot.essentials.io;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AsyncOutputStreamTest {
+
+    /** Blocks writes until released. */
+    private static class GatedOutputStream extends ByteArrayOutputStream {
+        final CountDownLatch gate = new CountDownLatch(1);
+        boolean closed;
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            super.write(b, off, len);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    @Test
+    public void testWriteAndClose() throws IOException {
+        byte[] data = new byte[100000];
+        new Random(42).nextBytes(data);
+        GatedOutputStream target = new GatedOutputStream();
+        target.gate.countDown();
+        AsyncOutputStream out = new AsyncOutputStream(target, 1000, 4, AsyncOutputStream.OverflowPolicy.BLOCK);
+        out.write(data[0]);
+        for (int pos = 1; pos < data.length; pos += 777) {
+            out.write(data, pos, Math.min(777, data.length - pos));
+        }
+        out.close();
+        assertTrue(target.closed);
+        assertTrue(Arrays.equals(data, target.toByteArray()));
+        assertEquals(0, out.getDroppedByteCount());
+    }
+
+    @Test
+    public void testDropPolicy() throws IOException {
+        GatedOutputStream target = new GatedOutputStream();
+        AsyncOutputStream out = new AsyncOutputStream(target, 4, 2, AsyncOutputStream.OverflowPolicy.DROP);
+        // The first chunk may already be taken by the background thread, but it blocks there
+        out.write(new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        out.write(new byte[]{9, 10});
+        out.write(11);
+        assertEquals(3, out.getDroppedByteCount());
+        out.finishAsync();
+        assertFalse(out.awaitFinished(10, TimeUnit.MILLISECONDS));
+        target.gate.countDown();
+        assertTrue(out.awaitFinished(10, TimeUnit.SECONDS));
+        assertArrayEquals(new byte[]{1, 2, 3, 4, 5, 6, 7, 8}, target.toByteArray());
+    }
+
+    @Test
+    public void testDropPolicyKeepsPrefixAfterTargetResumes() throws IOException {
+        GatedOutputStream target = new GatedOutputStream();
+        AsyncOutputStream out = new AsyncOutputStream(target, 4, 2, AsyncOutputStream.OverflowPolicy.DROP);
+        byte[] data = new byte[40];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        out.write(data, 0, 16);
+        long dropped = out.getDroppedByteCount();
+        assertTrue(dropped > 0);
+
+        // Target resumes and frees all chunks; bytes written now must still be dropped to not leave a gap
+        target.gate.countDown();
+        while (target.size() < 16 - dropped) {
+            Thread.yield();
+        }
+        out.write(data, 16, 20);
+        out.write(data[36]);
+        out.write(data, 37, 3);
+        out.close();
+
+        byte[] written = target.toByteArray();
+        assertEquals(16 - dropped, written.length);
+        assertEquals(data.length - written.length, out.getDroppedByteCount());
+        for (int i = 0; i < written.length; i++) {
+            assertEquals(data[i], written[i]);
+        }
+    }
+
+    @Test
+    public void testThreadFactoryAndLazyStart() throws IOException {
+        final AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory threadFactory = new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                threadCount.incrementAndGet();
+                return new Thread(runnable, "test-async-out");
+            }
+        };
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        AsyncOutputStream out = new AsyncOutputStream(target, 4, 2, AsyncOutputStream.OverflowPolicy.BLOCK,
+                threadFactory);
+        out.write(new byte[]{1, 2, 3});
+        // Chunk not full yet: no thread needed
+        assertEquals(0, threadCount.get());
+        out.close();
+        assertEquals(1, threadCount.get());
+        assertArrayEquals(new byte[]{1, 2, 3}, target.toByteArray());
+    }
+
+    @Test
+    public void testBlockPolicyWaits() throws Exception {
+        final GatedOutputStream target = new GatedOutputStream();
+        final AsyncOutputStream out = new AsyncOutputStream(target, 4, 2, AsyncOutputStream.OverflowPolicy.BLOCK);
+        final CountDownLatch writtenLatch = new CountDownLatch(1);
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    // 4 chunks, but only 2 (+1 taken by the background thread) can be handed over without waiting
+                    out.write(new byte[16]);
+                    writtenLatch.countDown();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }.start();
+        assertFalse(writtenLatch.await(20, TimeUnit.MILLISECONDS));
+        target.gate.countDown();
+        assertTrue(writtenLatch.await(10, TimeUnit.SECONDS));
+        out.close();
+        assertEquals(16, target.size());
+    }
+
+    @Test
+    public void testTargetFailure() throws IOException {
+        OutputStream failingTarget = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Disk full");
+            }
+        };
+        AsyncOutputStream out = new AsyncOutputStream(failingTarget, 4, 2, AsyncOutputStream.OverflowPolicy.BLOCK);
+        // Writing does not fail even though the target does
+        for (int i = 0; i < 100; i++) {
+            out.write(new byte[4]);
+        }
+        out.finishAsync();
+        try {
+            out.awaitFinished(10, TimeUnit.SECONDS);
+            fail("Should have thrown");
+        } catch (IOException e) {
+            assertEquals("Disk full", e.getCause().getMessage());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testWriteAfterFinish() throws IOException {
+        AsyncOutputStream out = new AsyncOutputStream(new ByteArrayOutputStream());
+        out.finishAsync();
+        out.write(1);
+    }
+
+    @Test
+    public void testRepeaterAsync() throws IOException {
+        byte[] data = new byte[10000];
+        new Random(23).nextBytes(data);
+        data[0] = 0;
+        ByteArrayOutputStream repeated = new ByteArrayOutputStream();
+        RepeaterInputStream in = new RepeaterInputStream(new ByteArrayInputStream(data), repeated, 1024, 4,
+                AsyncOutputStream.OverflowPolicy.BLOCK);
+        // Single byte read of a zero byte must be repeated, too
+        assertEquals(0, in.read());
+        ByteArrayOutputStream primary = new ByteArrayOutputStream();
+        primary.write(0);
+        IoUtils.copyAllBytes(in, primary);
+        in.close();
+        assertTrue(in.awaitRepeated(10, TimeUnit.SECONDS));
+        assertTrue(Arrays.equals(data, primary.toByteArray()));
+        assertTrue(Arrays.equals(data, repeated.toByteArray()));
+        assertEquals(0, in.getDroppedByteCount());
+    }
+
+    @Test
+    public void testRepeaterSyncZeroByte() throws IOException {
+        ByteArrayOutputStream repeated = new ByteArrayOutputStream();
+        RepeaterInputStream in = new RepeaterInputStream(new ByteArrayInputStream(new byte[]{0, 1, 0}), repeated);
+        assertEquals(0, in.read());
+        assertEquals(1, in.read());
+        assertEquals(0, in.read());
+        assertEquals(-1, in.read());
+        assertArrayEquals(new byte[]{0, 1, 0}, repeated.toByteArray());
+        assertTrue(in.awaitRepeated(0, null));
+    }
+
+}
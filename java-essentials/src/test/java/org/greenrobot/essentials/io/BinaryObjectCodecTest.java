@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2014 Markus Junginger, greenrobot (http://greenrobot.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greenrobot.essentials.io;
+
+import org.greenrobot.essentials.collections.LongHashMap;
+import org.greenrobot.essentials.collections.LongHashSet;
+import org.greenrobot.essentials.collections.Multimap;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BinaryObjectCodecTest {
+
+    private final BinaryObjectCodec codec = BinaryObjectCodec.INSTANCE;
+
+    @SuppressWarnings("unchecked")
+    private <T> T roundTrip(Object object) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        codec.encode(object, out);
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        T decoded = (T) codec.decode(in);
+        assertEquals(0, in.available());
+        return decoded;
+    }
+
+    @Test
+    public void testPrimitivesAndStrings() throws IOException {
+        assertNull(roundTrip(null));
+        assertEquals(true, roundTrip(true));
+        assertEquals((byte) -7, roundTrip((byte) -7));
+        assertEquals((short) 12345, roundTrip((short) 12345));
+        assertEquals('\u20ac', roundTrip('\u20ac'));
+        assertEquals(Integer.MIN_VALUE, roundTrip(Integer.MIN_VALUE));
+        assertEquals(Long.MAX_VALUE, roundTrip(Long.MAX_VALUE));
+        assertEquals(3.5f, roundTrip(3.5f));
+        assertEquals(-2.25, roundTrip(-2.25));
+        assertEquals("", roundTrip(""));
+        assertEquals("Umlauts: \u00f6\u00e4\u00fc \u20ac", roundTrip("Umlauts: \u00f6\u00e4\u00fc \u20ac"));
+    }
+
+    @Test
+    public void testArrays() throws IOException {
+        Random random = new Random(42);
+        // Larger than the scratch buffer to cover chunking
+        int length = 5000;
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        short[] shorts = new short[length];
+        char[] chars = new char[length];
+        int[] ints = new int[length];
+        long[] longs = new long[length];
+        float[] floats = new float[length];
+        double[] doubles = new double[length];
+        boolean[] booleans = new boolean[length];
+        for (int i = 0; i < length; i++) {
+            shorts[i] = (short) random.nextInt();
+            chars[i] = (char) random.nextInt();
+            ints[i] = random.nextInt();
+            longs[i] = random.nextLong();
+            floats[i] = random.nextFloat();
+            doubles[i] = random.nextDouble();
+            booleans[i] = random.nextBoolean();
+        }
+        assertArrayEquals(bytes, (byte[]) roundTrip(bytes));
+        assertArrayEquals(shorts, (short[]) roundTrip(shorts));
+        assertArrayEquals(chars, (char[]) roundTrip(chars));
+        assertArrayEquals(ints, (int[]) roundTrip(ints));
+        assertArrayEquals(longs, (long[]) roundTrip(longs));
+        assertArrayEquals(floats, (float[]) roundTrip(floats), 0);
+        assertArrayEquals(doubles, (double[]) roundTrip(doubles), 0);
+        assertTrue(Arrays.equals(booleans, (boolean[]) roundTrip(booleans)));
+        assertArrayEquals(new String[]{"a", null, ""}, (String[]) roundTrip(new String[]{"a", null, ""}));
+        assertArrayEquals(new long[0], (long[]) roundTrip(new long[0]));
+    }
+
+    @Test
+    public void testCollections() throws IOException {
+        List<Object> list = new ArrayList<>();
+        list.add("one");
+        list.add(2L);
+        list.add(null);
+        list.add(new int[]{3});
+        Set<String> set = new HashSet<>();
+        set.add("x");
+        set.add("y");
+        Map<String, Object> map = new HashMap<>();
+        map.put("list", list);
+        map.put("set", set);
+
+        Map<String, Object> decoded = roundTrip(map);
+        assertEquals(2, decoded.size());
+        assertEquals(set, decoded.get("set"));
+        List<?> decodedList = (List<?>) decoded.get("list");
+        assertEquals(4, decodedList.size());
+        assertEquals("one", decodedList.get(0));
+        assertEquals(2L, decodedList.get(1));
+        assertNull(decodedList.get(2));
+        assertArrayEquals(new int[]{3}, (int[]) decodedList.get(3));
+    }
+
+    @Test
+    public void testLongHashMapAndSet() throws IOException {
+        LongHashMap<String> map = LongHashMap.createSynchronized();
+        LongHashSet set = new LongHashSet();
+        for (long i = 0; i < 1000; i++) {
+            map.put(i * 31, "value" + i);
+            set.add(-i * 17);
+        }
+        LongHashMap<String> decodedMap = roundTrip(map);
+        assertEquals(1000, decodedMap.size());
+        LongHashSet decodedSet = roundTrip(set);
+        assertEquals(1000, decodedSet.size());
+        for (long i = 0; i < 1000; i++) {
+            assertEquals("value" + i, decodedMap.get(i * 31));
+            assertTrue(decodedSet.contains(-i * 17));
+        }
+        assertEquals(0, ((LongHashMap<?>) roundTrip(new LongHashMap<String>())).size());
+        assertEquals(0, ((LongHashSet) roundTrip(new LongHashSet())).size());
+    }
+
+    @Test
+    public void testMultimap() throws IOException {
+        Multimap<String, Integer> multimap = Multimap.create(Multimap.ListType.RING_BUFFER, 3);
+        for (int i = 0; i < 5; i++) {
+            multimap.putElement("a", i);
+        }
+        multimap.putElement("b", 42);
+        Multimap<String, Integer> decoded = roundTrip(multimap);
+        assertEquals(Multimap.ListType.RING_BUFFER, decoded.getListType());
+        assertEquals(3, decoded.getMaxElementsPerKey());
+        assertEquals(Arrays.asList(2, 3, 4), new ArrayList<>(decoded.get("a")));
+        assertEquals(Arrays.asList(42), new ArrayList<>(decoded.get("b")));
+        assertEquals(4, decoded.countElements());
+    }
+
+    @Test
+    public void testUnsupportedType() {
+        try {
+            codec.encode(new Object(), new ByteArrayOutputStream());
+            fail("Should have thrown");
+        } catch (IOException e) {
+            // OK
+        }
+    }
+
+}
@@ -18,11 +18,25 @@ package org.greenrobot.essentials.io;
 
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class CircularByteBufferTest {
 
@@ -97,12 +111,22 @@ public class CircularByteBufferTest {
     /** All possible start positions with all possible lengths */
     @Test
     public void testPutAndGet() {
+        checkPutAndGet(false);
+    }
+
+    @Test
+    public void testPutAndGetDirect() {
+        checkPutAndGet(true);
+    }
+
+    private void checkPutAndGet(boolean direct) {
         int capacity = 16;
         for (int startPosition = 0; startPosition <= capacity; startPosition++) {
             for (int length = 1; length <= capacity; length++) {
                 for (int putLength1 = 0; putLength1 <= length; putLength1++) {
                     for (int getLength1 = 0; getLength1 <= length; getLength1++) {
-                        CircularByteBuffer buffer = new CircularByteBuffer(capacity);
+                        CircularByteBuffer buffer = direct ? CircularByteBuffer.allocateDirect(capacity) :
+                                new CircularByteBuffer(capacity);
                         byte[] prepBytes = new byte[startPosition];
                         assertEquals(startPosition, buffer.put(prepBytes));
                         assertEquals(startPosition, buffer.get(prepBytes));
@@ -183,6 +207,397 @@ public class CircularByteBufferTest {
     }
 
 
+    @Test
+    public void testGetAndPutByteBuffer() {
+        CircularByteBuffer buffer = new CircularByteBuffer(16);
+        byte[] bytes = createBytes(10);
+        // Wrap around the end of the internal buffer
+        for (int i = 0; i < 3; i++) {
+            ByteBuffer src = ByteBuffer.wrap(bytes);
+            assertEquals(10, buffer.put(src));
+            assertEquals(0, src.remaining());
+
+            ByteBuffer dst = ByteBuffer.allocate(20);
+            assertEquals(10, buffer.get(dst));
+            assertEquals(10, dst.position());
+            assertTrue(Arrays.equals(bytes, Arrays.copyOf(dst.array(), 10)));
+        }
+
+        assertEquals(16, buffer.put(ByteBuffer.wrap(createBytes(20))));
+        assertEquals(0, buffer.put(ByteBuffer.wrap(bytes)));
+        ByteBuffer dst = ByteBuffer.allocateDirect(4);
+        assertEquals(4, buffer.get(dst));
+        assertEquals(12, buffer.available());
+    }
+
+    @Test
+    public void testRegions() {
+        CircularByteBuffer buffer = new CircularByteBuffer(16);
+        assertEquals(0, buffer.readableRegions().length);
+        assertEquals(1, buffer.writableRegions().length);
+        assertEquals(16, buffer.writableRegions()[0].remaining());
+
+        buffer.put(new byte[12]);
+        buffer.skip(10);
+        ByteBuffer[] readable = buffer.readableRegions();
+        assertEquals(1, readable.length);
+        assertEquals(2, readable[0].remaining());
+        assertTrue(readable[0].isReadOnly());
+
+        ByteBuffer[] writable = buffer.writableRegions();
+        assertEquals(2, writable.length);
+        assertEquals(4, writable[0].remaining());
+        assertEquals(10, writable[1].remaining());
+
+        writable[0].put(createBytes(4));
+        writable[1].put((byte) 42);
+        buffer.commitPut(5);
+        assertEquals(7, buffer.available());
+        readable = buffer.readableRegions();
+        assertEquals(2, readable.length);
+        assertEquals(6, readable[0].remaining());
+        assertEquals(1, readable[1].remaining());
+        assertEquals(42, readable[1].get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCommitPutTooMuch() {
+        CircularByteBuffer buffer = new CircularByteBuffer(16);
+        buffer.put(new byte[10]);
+        buffer.commitPut(7);
+    }
+
+    @Test
+    public void testStreamChannels() throws IOException {
+        CircularByteBuffer buffer = new CircularByteBuffer(16);
+        buffer.put(new byte[10]);
+        buffer.skip(10);
+
+        byte[] bytes = createBytes(20);
+        ByteArrayInputStream in = new ByteArrayInputStream(bytes);
+        // Non-scattering, blocking channel: a single read per call, so the wrapped region takes a second call
+        assertEquals(6, buffer.readFrom(Channels.newChannel(in)));
+        assertEquals(10, buffer.readFrom(Channels.newChannel(in)));
+        assertEquals(0, buffer.readFrom(Channels.newChannel(in)));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(16, buffer.writeTo(Channels.newChannel(out)));
+        assertEquals(0, buffer.writeTo(Channels.newChannel(out)));
+        assertEquals(4, buffer.readFrom(Channels.newChannel(in)));
+        assertEquals(-1, buffer.readFrom(Channels.newChannel(in)));
+        assertEquals(4, buffer.writeTo(Channels.newChannel(out)));
+        assertTrue(Arrays.equals(bytes, out.toByteArray()));
+    }
+
+    @Test
+    public void testFileChannels() throws IOException {
+        File file = File.createTempFile("circular-byte-buffer-test", null);
+        try {
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+            try {
+                FileChannel channel = randomAccessFile.getChannel();
+                CircularByteBuffer buffer = new CircularByteBuffer(16);
+                buffer.put(new byte[10]);
+                buffer.skip(10);
+                byte[] bytes = createBytes(12);
+                buffer.put(bytes);
+
+                // Gathering write of two regions
+                assertEquals(12, buffer.writeTo(channel));
+                assertEquals(0, buffer.available());
+                assertEquals(12, channel.size());
+
+                channel.position(0);
+                buffer.put(new byte[8]);
+                buffer.skip(8);
+                // Scattering read into two regions (start at index 2)
+                assertEquals(12, buffer.readFrom(channel));
+                getAndAssertEqualContent(buffer, bytes);
+            } finally {
+                randomAccessFile.close();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testDirect() {
+        CircularByteBuffer buffer = CircularByteBuffer.allocateDirect(16);
+        assertTrue(buffer.isDirect());
+        assertFalse(new CircularByteBuffer(16).isDirect());
+        assertEquals(16, buffer.capacity());
+        buffer.put(new byte[10]);
+        buffer.skip(10);
+
+        byte[] bytes = createBytes(12);
+        assertEquals(12, buffer.put(ByteBuffer.wrap(bytes)));
+        assertEquals(1, buffer.peek());
+        assertEquals(1, buffer.get());
+        assertTrue(buffer.put((byte) 13));
+        ByteBuffer dst = ByteBuffer.allocate(12);
+        assertEquals(12, buffer.get(dst));
+        assertEquals(13, dst.get(11));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testDirectRawBuffer() {
+        CircularByteBuffer.allocateDirect(16).rawBuffer();
+    }
+
+    @Test
+    public void testMappedFile() throws IOException {
+        File file = File.createTempFile("circular-byte-buffer-test", null);
+        try {
+            assertTrue(file.delete());
+            CircularByteBuffer buffer = CircularByteBuffer.mapFile(file, 16);
+            assertTrue(buffer.isDirect());
+            assertEquals(0, buffer.available());
+            buffer.put(new byte[10]);
+            buffer.skip(10);
+            byte[] bytes = createBytes(12);
+            assertEquals(12, buffer.put(bytes));
+            assertEquals(2, buffer.skip(2));
+            buffer.force();
+
+            // Simulate restart: indexes and data are restored from the file
+            CircularByteBuffer buffer2 = CircularByteBuffer.mapFile(file, 16);
+            assertEquals(10, buffer2.available());
+            assertEquals(12, buffer2.rawIndexGet());
+            getAndAssertEqualContent(buffer2, Arrays.copyOfRange(bytes, 2, 12));
+
+            buffer2.clear();
+            assertEquals(0, CircularByteBuffer.mapFile(file, 16).available());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testMappedFileCapacityMismatch() throws IOException {
+        File file = File.createTempFile("circular-byte-buffer-test", null);
+        try {
+            assertTrue(file.delete());
+            CircularByteBuffer.mapFile(file, 16);
+            CircularByteBuffer.mapFile(file, 32);
+        } finally {
+            file.delete();
+        }
+    }
+
+    /** All start positions to cover wrap-around */
+    @Test
+    public void testPrimitives() {
+        for (int direct = 0; direct < 2; direct++) {
+            for (int startPosition = 0; startPosition < 16; startPosition++) {
+                CircularByteBuffer buffer = direct == 1 ? CircularByteBuffer.allocateDirect(16) :
+                        new CircularByteBuffer(16);
+                buffer.put(new byte[startPosition]);
+                buffer.skip(startPosition);
+
+                assertTrue(buffer.putIntBE(0x01020304));
+                getAndAssertEqualContent(buffer, new byte[]{1, 2, 3, 4});
+                assertTrue(buffer.putIntLE(0x01020304));
+                getAndAssertEqualContent(buffer, new byte[]{4, 3, 2, 1});
+
+                long longValue = 0x8182838485868788L;
+                assertTrue(buffer.putLongBE(longValue));
+                byte[] bytes = new byte[8];
+                assertEquals(8, buffer.get(bytes));
+                assertEquals(longValue, ByteBuffer.wrap(bytes).getLong());
+                assertTrue(buffer.putLongLE(longValue));
+                assertEquals(8, buffer.get(bytes));
+                assertEquals(longValue, ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).getLong());
+
+                assertTrue(buffer.putIntBE(-42));
+                assertTrue(buffer.putIntLE(Integer.MIN_VALUE));
+                assertTrue(buffer.putLongBE(-1));
+                assertFalse(buffer.putLongLE(1));
+                assertFalse(buffer.putIntLE(1));
+                assertEquals(-42, buffer.getIntBE());
+                assertEquals(Integer.MIN_VALUE, buffer.getIntLE());
+                assertEquals(-1, buffer.getLongBE());
+                assertTrue(buffer.putLongLE(Long.MAX_VALUE));
+                assertEquals(Long.MAX_VALUE, buffer.getLongLE());
+                assertEquals(0, buffer.available());
+            }
+        }
+    }
+
+    @Test
+    public void testVarInts() {
+        int[] intValues = {0, 1, 127, 128, 300, 16383, 16384, Integer.MAX_VALUE, -1, Integer.MIN_VALUE};
+        int[] intSizes = {1, 1, 1, 2, 2, 2, 3, 5, 5, 5};
+        CircularByteBuffer buffer = new CircularByteBuffer(13);
+        for (int i = 0; i < intValues.length; i++) {
+            assertTrue(buffer.putVarInt(intValues[i]));
+            assertEquals(intSizes[i], buffer.available());
+            assertEquals(intValues[i], buffer.getVarInt());
+        }
+
+        long[] longValues = {0, 300, Integer.MAX_VALUE + 1L, Long.MAX_VALUE, -1, Long.MIN_VALUE};
+        int[] longSizes = {1, 2, 5, 9, 10, 10};
+        for (int i = 0; i < longValues.length; i++) {
+            assertTrue(buffer.putVarLong(longValues[i]));
+            assertEquals(longSizes[i], buffer.available());
+            assertEquals(longValues[i], buffer.getVarLong());
+        }
+
+        // Protobuf example: 300 is encoded as 0xac 0x02
+        assertTrue(buffer.putVarInt(300));
+        getAndAssertEqualContent(buffer, new byte[]{(byte) 0xac, 0x02});
+
+        buffer.put(new byte[10]);
+        assertFalse(buffer.putVarInt(-1));
+        assertTrue(buffer.putVarInt(200));
+        assertEquals(12, buffer.available());
+    }
+
+    @Test
+    public void testPrimitivesUnderflow() {
+        CircularByteBuffer buffer = new CircularByteBuffer(16);
+        buffer.put(new byte[]{1, 2, 3});
+        try {
+            buffer.getIntLE();
+            fail("Should have thrown");
+        } catch (BufferUnderflowException expected) {
+            // OK
+        }
+        assertEquals(3, buffer.available());
+        buffer.clear();
+
+        // Incomplete varint: nothing is consumed
+        buffer.put(new byte[]{(byte) 0x80});
+        try {
+            buffer.getVarInt();
+            fail("Should have thrown");
+        } catch (BufferUnderflowException expected) {
+            // OK
+        }
+        assertEquals(1, buffer.available());
+        assertTrue(buffer.put((byte) 1));
+        assertEquals(128, buffer.getVarInt());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testVarIntMalformed() {
+        CircularByteBuffer buffer = new CircularByteBuffer(16);
+        buffer.putVarLong(-1);
+        buffer.getVarInt();
+    }
+
+    @Test
+    public void testPutFullyAndGetFully() throws Exception {
+        final CircularByteBuffer buffer = new CircularByteBuffer(7);
+        final byte[] bytes = new byte[100000];
+        new Random(42).nextBytes(bytes);
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    for (int offset = 0; offset < bytes.length; offset += 1000) {
+                        buffer.putFully(bytes, offset, 1000);
+                    }
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        producer.start();
+
+        byte[] bytesGet = new byte[bytes.length];
+        for (int offset = 0; offset < bytes.length; offset += 333) {
+            buffer.getFully(bytesGet, offset, Math.min(333, bytes.length - offset));
+        }
+        producer.join();
+        assertTrue(Arrays.equals(bytes, bytesGet));
+    }
+
+    @Test
+    public void testFullyTimeout() throws InterruptedException {
+        CircularByteBuffer buffer = new CircularByteBuffer(16);
+        assertEquals(16, buffer.putFully(new byte[20], 0, 20, 10, TimeUnit.MILLISECONDS));
+        byte[] bytesGet = new byte[20];
+        assertEquals(16, buffer.getFully(bytesGet, 0, 20, 10, TimeUnit.MILLISECONDS));
+        assertEquals(0, buffer.getFully(bytesGet, 0, 1, 0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testGetFullyWokenUpByPut() throws InterruptedException {
+        final CircularByteBuffer buffer = new CircularByteBuffer(16);
+        final CountDownLatch gotLatch = new CountDownLatch(1);
+        final int[] got = new int[1];
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    got[0] = buffer.getFully(new byte[2], 0, 2, 10, TimeUnit.SECONDS);
+                    gotLatch.countDown();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }.start();
+        Thread.sleep(10);
+        assertTrue(buffer.put((byte) 1));
+        assertTrue(buffer.putVarInt(2));
+        assertTrue(gotLatch.await(5, TimeUnit.SECONDS));
+        assertEquals(2, got[0]);
+    }
+
+    @Test
+    public void testPutFullyWaitersAllWokenUpByClear() throws InterruptedException {
+        final CircularByteBuffer buffer = new CircularByteBuffer(16);
+        assertEquals(16, buffer.put(new byte[16]));
+        final CountDownLatch putLatch = new CountDownLatch(3);
+        Thread[] threads = new Thread[3];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        if (buffer.putFully(new byte[4], 0, 4, 10, TimeUnit.SECONDS) == 4) {
+                            putLatch.countDown();
+                        }
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            while (thread.getState() != Thread.State.TIMED_WAITING) {
+                Thread.sleep(1);
+            }
+        }
+        // A single change makes room for all waiters; each woken waiter passes the signal on
+        buffer.clear();
+        assertTrue(putLatch.await(5, TimeUnit.SECONDS));
+        assertEquals(12, buffer.available());
+    }
+
+    @Test
+    public void testPutFullyInterrupted() throws InterruptedException {
+        final CircularByteBuffer buffer = new CircularByteBuffer(16);
+        final CountDownLatch interruptedLatch = new CountDownLatch(1);
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    buffer.putFully(new byte[17]);
+                } catch (InterruptedException e) {
+                    interruptedLatch.countDown();
+                }
+            }
+        };
+        thread.start();
+        Thread.sleep(10);
+        thread.interrupt();
+        assertTrue(interruptedLatch.await(5, TimeUnit.SECONDS));
+        assertEquals(16, buffer.available());
+    }
+
     private byte[] createBytes(int len) {
         byte[] bytes = new byte[len];
         for (int i = 0; i < len; i++) {
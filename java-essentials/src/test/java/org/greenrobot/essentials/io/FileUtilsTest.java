@@ -21,10 +21,18 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -69,6 +77,48 @@ public class FileUtilsTest {
         Assert.assertEquals(text2, strings2.get(1));
     }
 
+    @Test
+    public void testWriteAndReadObjectWithCodec() throws Exception {
+        long[] longs = new long[100000];
+        for (int i = 0; i < longs.length; i++) {
+            longs[i] = i * 1234567L;
+        }
+        FileUtils.writeObject(file, longs, BinaryObjectCodec.INSTANCE);
+        Assert.assertArrayEquals(longs, FileUtils.<long[]>readObject(file, BinaryObjectCodec.INSTANCE));
+
+        ArrayList<String> strings = new ArrayList<>();
+        strings.add("Hello");
+        FileUtils.writeObject(file, strings, JavaSerializationCodec.INSTANCE);
+        Assert.assertEquals(strings, FileUtils.readObject(file, JavaSerializationCodec.INSTANCE));
+    }
+
+    @Test
+    public void testReadObjectWithCodecDetectsCorruption() throws Exception {
+        // String payload byte
+        assertCorruptionDetected("Hello, some text to corrupt", 10, new byte[]{'X'});
+        // Type tag
+        assertCorruptionDetected("Hello, some text to corrupt", 0, new byte[]{15});
+        // Length (varint) of a long array corrupted to Integer.MAX_VALUE: must not be allocated before verification
+        assertCorruptionDetected(new long[1000], 1, new byte[]{(byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 7});
+    }
+
+    private void assertCorruptionDetected(Object object, int position, byte[] corruptBytes) throws Exception {
+        FileUtils.writeObject(file, object, BinaryObjectCodec.INSTANCE);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(position);
+            raf.write(corruptBytes);
+        } finally {
+            raf.close();
+        }
+        try {
+            FileUtils.readObject(file, BinaryObjectCodec.INSTANCE);
+            Assert.fail("Should have thrown");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Checksum mismatch"));
+        }
+    }
+
     @Test
     public void testDigestMd5AndSha1() throws IOException {
         byte[] content = new byte[33333];
@@ -101,6 +151,157 @@ public class FileUtilsTest {
         Assert.assertEquals(hash, murmur3F.getValueHexString());
     }
 
+    @Test
+    public void testCopyFile() throws IOException {
+        byte[] content = new byte[1000000];
+        new Random().nextBytes(content);
+        FileUtils.writeBytes(file, content);
+
+        File file2 = File.createTempFile("file-utils-test", ".txt");
+        file2.deleteOnExit();
+        FileUtils.writeBytes(file2, new byte[2000000]);
+        FileUtils.copyFile(file, file2);
+        Assert.assertArrayEquals(content, FileUtils.readBytes(file2));
+    }
+
+    @Test
+    public void testMurmur3FTreeHash() throws IOException {
+        byte[] content = new byte[10000];
+        new Random(42).nextBytes(content);
+        FileUtils.writeBytes(file, content);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        String hash = FileUtils.getMurmur3FTreeHash(file, 1000, pool);
+        Assert.assertEquals(32, hash.length());
+        Assert.assertEquals(hash, FileUtils.getMurmur3FTreeHash(file, 1000, pool));
+
+        // Reference computation of the documented definition
+        Murmur3F root = new Murmur3F();
+        for (int i = 0; i < 10; i++) {
+            Murmur3F chunk = new Murmur3F();
+            chunk.update(content, i * 1000, 1000);
+            root.update(chunk.getValueBytesBigEndian());
+        }
+        root.updateLongLE(10000);
+        root.updateLongLE(1000);
+        Assert.assertEquals(root.getValueHexString(), hash);
+
+        Assert.assertNotEquals(hash, FileUtils.getMurmur3FTreeHash(file, 999, pool));
+        Assert.assertEquals(32, FileUtils.getMurmur3FTreeHash(file).length());
+        content[9999]++;
+        FileUtils.writeBytes(file, content);
+        Assert.assertNotEquals(hash, FileUtils.getMurmur3FTreeHash(file, 1000, pool));
+        pool.shutdown();
+    }
+
+    @Test
+    public void testMurmur3FTreeHashTooManyChunks() throws IOException {
+        // Sparse file: 3 GB at 1 byte per chunk would overflow the int chunk count
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(3L * 1024 * 1024 * 1024);
+        } finally {
+            raf.close();
+        }
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            FileUtils.getMurmur3FTreeHash(file, 1, pool);
+            Assert.fail("Should have thrown");
+        } catch (IllegalArgumentException e) {
+            // OK
+        } finally {
+            pool.shutdown();
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testMurmur3FTreeHashEmptyFile() throws IOException {
+        FileUtils.writeBytes(file, new byte[0]);
+        Murmur3F root = new Murmur3F();
+        root.update(new Murmur3F().getValueBytesBigEndian());
+        root.updateLongLE(0);
+        root.updateLongLE(FileUtils.TREE_HASH_CHUNK_SIZE);
+        Assert.assertEquals(root.getValueHexString(), FileUtils.getMurmur3FTreeHash(file));
+    }
+
+    @Test
+    public void testMapReadOnly() throws IOException {
+        byte[] content = new byte[10000];
+        new Random().nextBytes(content);
+        FileUtils.writeBytes(file, content);
+
+        MappedByteBuffer mapped = FileUtils.mapReadOnly(file);
+        Assert.assertEquals(content.length, mapped.remaining());
+        byte[] read = new byte[content.length];
+        mapped.get(read);
+        Assert.assertArrayEquals(content, read);
+
+        MappedByteBuffer[] chunks = FileUtils.mapReadOnlyChunks(file, 4096);
+        Assert.assertEquals(3, chunks.length);
+        Assert.assertEquals(4096, chunks[1].remaining());
+        Assert.assertEquals(10000 - 8192, chunks[2].remaining());
+        Assert.assertEquals(content[8192], chunks[2].get(0));
+    }
+
+    @Test
+    public void testTransferAllFromPosition() throws IOException {
+        FileUtils.writeBytes(file, new byte[]{1, 2, 3, 4, 5});
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            channel.position(2);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            // Not a FileChannel target
+            Assert.assertEquals(3, FileUtils.transferAll(channel, Channels.newChannel(out)));
+            Assert.assertEquals(5, channel.position());
+            Assert.assertArrayEquals(new byte[]{3, 4, 5}, out.toByteArray());
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testWriteBytesAtomic() throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        FileUtils.writeUtf8(file, "old content");
+        FileUtils.writeUtf8Atomic(file, "new");
+        Assert.assertEquals("new", FileUtils.readUtf8(file));
+        String[] tempFiles = dir.list();
+        for (String name : tempFiles) {
+            assertFalse(name, name.startsWith(file.getName() + ".") && name.endsWith(".tmp"));
+        }
+    }
+
+    @Test
+    public void testRenameAtomicReplacesTarget() throws IOException {
+        File source = File.createTempFile("source", ".tmp");
+        FileUtils.writeUtf8(source, "new");
+        FileUtils.writeUtf8(file, "old content");
+        FileUtils.renameAtomic(source, file);
+        Assert.assertEquals("new", FileUtils.readUtf8(file));
+        assertFalse(source.exists());
+    }
+
+    @Test
+    public void testRenameAtomicFailureDeletesSource() throws IOException {
+        File source = File.createTempFile("source", ".tmp");
+        file.delete();
+        assertTrue(file.mkdir());
+        try {
+            // A non-empty directory cannot be replaced by a file
+            assertTrue(new File(file, "child").createNewFile());
+            try {
+                FileUtils.renameAtomic(source, file);
+                Assert.fail("Should have thrown");
+            } catch (IOException e) {
+                // Expected
+            }
+            assertFalse(source.exists());
+        } finally {
+            FileUtils.deleteDirRecursive(file);
+        }
+    }
+
     @Test
     public void testDeleteDir() throws IOException {
         testDeleteDir(true);
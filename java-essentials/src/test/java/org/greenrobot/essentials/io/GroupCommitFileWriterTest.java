@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2014-2020 Markus Junginger, greenrobot (http://greenrobot.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.greenrobot.essentials.io;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class GroupCommitFileWriterTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("group-commit-test", "");
+        assertTrue(dir.delete());
+        assertTrue(dir.mkdir());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirRecursiveBestEffort(dir);
+    }
+
+    @Test
+    public void testWrite() throws IOException {
+        GroupCommitFileWriter writer = new GroupCommitFileWriter();
+        File file = new File(dir, "single.txt");
+        writer.writeUtf8(file, "one");
+        assertEquals("one", FileUtils.readUtf8(file));
+        writer.writeUtf8(file, "two");
+        assertEquals("two", FileUtils.readUtf8(file));
+        assertEquals(2, writer.getGroupCount());
+        assertEquals(2, writer.getFileWriteCount());
+        assertEquals(1, dir.list().length);
+    }
+
+    @Test
+    public void testConcurrentWrites() throws Exception {
+        final GroupCommitFileWriter writer = new GroupCommitFileWriter();
+        final int threadCount = 8;
+        final int writesPerThread = 20;
+        final List<Throwable> errors = new CopyOnWriteArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            final int threadIndex = i;
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int n = 0; n < writesPerThread; n++) {
+                            writer.writeUtf8(new File(dir, "file-" + threadIndex + ".txt"), "value " + n);
+                            // All threads also write a shared file
+                            writer.writeUtf8(new File(dir, "shared.txt"), "shared " + threadIndex);
+                        }
+                    } catch (Throwable e) {
+                        errors.add(e);
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join(30000);
+            assertFalse(thread.isAlive());
+        }
+        assertTrue(errors.toString(), errors.isEmpty());
+
+        for (int i = 0; i < threadCount; i++) {
+            assertEquals("value " + (writesPerThread - 1), FileUtils.readUtf8(new File(dir, "file-" + i + ".txt")));
+        }
+        assertTrue(FileUtils.readUtf8(new File(dir, "shared.txt")).startsWith("shared "));
+        // No temp files left
+        assertEquals(threadCount + 1, dir.list().length);
+    }
+
+    @Test
+    public void testWritesQueuedDuringCommitAreGrouped() throws Exception {
+        final CountDownLatch firstCommitStarted = new CountDownLatch(1);
+        final CountDownLatch releaseFirstCommit = new CountDownLatch(1);
+        final AtomicInteger dirSyncCount = new AtomicInteger();
+        final List<String> tempFilesNotWrittenByWriter = new CopyOnWriteArrayList<>();
+        final GroupCommitFileWriter writer = new GroupCommitFileWriter() {
+            @Override
+            File writeTempFile(File file, byte[] content) throws IOException {
+                // Temp files must be written and synced by the writing thread itself, not by the committer
+                if (!Thread.currentThread().getName().equals(file.getName())) {
+                    tempFilesNotWrittenByWriter.add(file.getName());
+                }
+                return super.writeTempFile(file, content);
+            }
+
+            @Override
+            void syncDirectory(File dir) throws IOException {
+                if (dirSyncCount.incrementAndGet() == 1) {
+                    // Hold the first commit while the other threads queue up
+                    firstCommitStarted.countDown();
+                    try {
+                        releaseFirstCommit.await();
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+                super.syncDirectory(dir);
+            }
+        };
+        final List<Throwable> errors = new CopyOnWriteArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        threads.add(startWriter(writer, new File(dir, "first.txt"), errors));
+        assertTrue(firstCommitStarted.await(10, TimeUnit.SECONDS));
+        int queuedCount = 5;
+        for (int i = 0; i < queuedCount; i++) {
+            threads.add(startWriter(writer, new File(dir, "queued-" + i + ".txt"), errors));
+        }
+        long deadline = System.currentTimeMillis() + 10000;
+        while (writer.getPendingFileCount() < queuedCount) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.yield();
+        }
+        releaseFirstCommit.countDown();
+        for (Thread thread : threads) {
+            thread.join(10000);
+            assertFalse(thread.isAlive());
+        }
+        assertTrue(errors.toString(), errors.isEmpty());
+
+        // The first group has the first file only, the second group all queued files
+        assertEquals(2, writer.getGroupCount());
+        assertEquals(1 + queuedCount, writer.getFileWriteCount());
+        assertEquals(1 + queuedCount, dir.list().length);
+        // One directory sync per group instead of one per file; file syncs were done by the writers
+        assertEquals(2, dirSyncCount.get());
+        assertTrue(tempFilesNotWrittenByWriter.toString(), tempFilesNotWrittenByWriter.isEmpty());
+    }
+
+    private Thread startWriter(final GroupCommitFileWriter writer, final File file, final List<Throwable> errors) {
+        // Named after the file, so tests can check which thread wrote the temp file
+        Thread thread = new Thread(file.getName()) {
+            @Override
+            public void run() {
+                try {
+                    writer.writeUtf8(file, file.getName());
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            }
+        };
+        thread.start();
+        return thread;
+    }
+
+    @Test
+    public void testUnexpectedExceptionFailsAllWritesOfGroup() throws Exception {
+        GroupCommitFileWriter writer = new GroupCommitFileWriter() {
+            @Override
+            void syncDirectory(File dir) throws IOException {
+                throw new IllegalStateException("Unexpected");
+            }
+        };
+        try {
+            writer.writeUtf8(new File(dir, "file.txt"), "fails");
+            fail("Should have thrown");
+        } catch (IOException e) {
+            assertEquals("Unexpected", e.getCause().getCause().getMessage());
+        }
+        // No temp files left
+        for (String name : dir.list()) {
+            assertFalse(name, name.endsWith(".tmp"));
+        }
+    }
+
+    @Test
+    public void testFailure() throws IOException {
+        GroupCommitFileWriter writer = new GroupCommitFileWriter();
+        File file = new File(new File(dir, "missing-dir"), "file.txt");
+        try {
+            writer.writeUtf8(file, "fails");
+            fail("Should have thrown");
+        } catch (IOException e) {
+            // OK
+        }
+        // Writer is still usable
+        File file2 = new File(dir, "file2.txt");
+        writer.writeUtf8(file2, "works");
+        assertEquals("works", FileUtils.readUtf8(file2));
+    }
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2014-2020 Markus Junginger, greenrobot (http://greenrobot.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.greenrobot.essentials.io;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class MappedLineReaderTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("mapped-line-reader-test", ".txt");
+        file.deleteOnExit();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testLines() throws IOException {
+        FileUtils.writeUtf8(file, "one\r\ntwo\n\nthree\u00e4\u20ac\nlast");
+        MappedLineReader reader = new MappedLineReader(file);
+        try {
+            assertEquals("one", reader.readLine());
+            assertEquals(5, reader.getPosition());
+            assertEquals("two", reader.readLine());
+            assertEquals("", reader.readLine());
+            assertEquals("three\u00e4\u20ac", reader.readLine());
+            assertEquals("last", reader.readLine());
+            assertNull(reader.readLine());
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testSmallWindow() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            // Multi-byte chars, so lines span window boundaries at arbitrary byte positions
+            text.append("line ").append(i).append(" \u00f6\u00e4\u00fc\u20ac\n");
+        }
+        FileUtils.writeUtf8(file, text);
+        MappedLineReader reader = new MappedLineReader(file, 100);
+        try {
+            for (int i = 0; i < 1000; i++) {
+                assertEquals("line " + i + " \u00f6\u00e4\u00fc\u20ac", reader.readLine());
+            }
+            assertNull(reader.readLine());
+            assertEquals(file.length(), reader.getPosition());
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testLineTooLong() throws IOException {
+        FileUtils.writeUtf8(file, "short\n0123456789012345678901234567890123456789\nshort");
+        MappedLineReader reader = new MappedLineReader(file, 16);
+        try {
+            assertEquals("short", reader.readLine());
+            reader.readLine();
+            fail("Should have thrown");
+        } catch (IOException e) {
+            // OK
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testEmptyFile() throws IOException {
+        MappedLineReader reader = new MappedLineReader(file);
+        try {
+            assertNull(reader.readLine());
+        } finally {
+            reader.close();
+        }
+    }
+
+}
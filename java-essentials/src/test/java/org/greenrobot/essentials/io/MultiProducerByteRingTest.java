@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2014-2020 Markus Junginger, greenrobot (http://greenrobot.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.greenrobot.essentials.io;
+
+import org.greenrobot.essentials.PrimitiveArrayUtils;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MultiProducerByteRingTest {
+
+    /** Collects records as byte arrays. */
+    private static class CollectingHandler implements MultiProducerByteRing.RecordHandler {
+        final List<byte[]> records = new ArrayList<>();
+
+        @Override
+        public void onRecord(byte[] buffer, int offset, int length) {
+            byte[] record = new byte[length];
+            System.arraycopy(buffer, offset, record, 0, length);
+            records.add(record);
+        }
+    }
+
+    @Test
+    public void testCapacity() {
+        assertEquals(64, new MultiProducerByteRing(1).capacity());
+        assertEquals(1024, new MultiProducerByteRing(1000).capacity());
+        assertEquals(128, new MultiProducerByteRing(1000).maxRecordLength());
+    }
+
+    @Test
+    public void testOfferAndRead() {
+        MultiProducerByteRing ring = new MultiProducerByteRing(64);
+        assertTrue(ring.offer(new byte[]{1, 2, 3}, 0, 3));
+        assertTrue(ring.offer(new byte[0], 0, 0));
+        assertTrue(ring.offer(new byte[]{9, 8, 7, 6, 5, 4, 3, 2, 1}, 1, 8));
+        assertEquals(24, ring.size());
+
+        CollectingHandler handler = new CollectingHandler();
+        assertEquals(2, ring.read(handler, 2));
+        assertEquals(1, ring.read(handler));
+        assertEquals(0, ring.read(handler));
+        assertEquals(0, ring.size());
+        assertArrayEquals(new byte[]{1, 2, 3}, handler.records.get(0));
+        assertEquals(0, handler.records.get(1).length);
+        assertArrayEquals(new byte[]{8, 7, 6, 5, 4, 3, 2, 1}, handler.records.get(2));
+    }
+
+    @Test
+    public void testFullAndPaddingAtEnd() {
+        MultiProducerByteRing ring = new MultiProducerByteRing(128);
+        byte[] bytes = new byte[8];
+        for (int i = 0; i < 15; i++) {
+            assertTrue(ring.offer(bytes, 0, 8));
+        }
+        CollectingHandler handler = new CollectingHandler();
+        assertEquals(15, ring.read(handler));
+
+        // 16 bytes do not fit at the end (8 bytes left), so padding is inserted and the record starts at 0
+        assertEquals(0, ring.tryClaim(16));
+        ring.buffer()[15] = 42;
+        ring.publish(0, 16);
+        assertEquals(24, ring.size());
+        for (int i = 0; i < 13; i++) {
+            bytes[0] = (byte) i;
+            assertTrue(ring.offer(bytes, 0, 8));
+        }
+        assertFalse(ring.offer(bytes, 0, 1));
+        assertEquals(128, ring.size());
+
+        assertEquals(14, ring.read(handler));
+        assertEquals(29, handler.records.size());
+        assertEquals(42, handler.records.get(15)[15]);
+        assertEquals(12, handler.records.get(28)[0]);
+        assertEquals(0, ring.size());
+    }
+
+    @Test
+    public void testUnpublishedClaimHoldsBackRecords() {
+        MultiProducerByteRing ring = new MultiProducerByteRing(64);
+        int index = ring.tryClaim(4);
+        assertTrue(ring.offer(new byte[]{1}, 0, 1));
+
+        CollectingHandler handler = new CollectingHandler();
+        assertEquals(0, ring.read(handler));
+        ring.buffer()[index] = 42;
+        ring.publish(index, 4);
+        assertEquals(2, ring.read(handler));
+        assertEquals(42, handler.records.get(0)[0]);
+        assertEquals(1, handler.records.get(1)[0]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRecordTooLarge() {
+        MultiProducerByteRing ring = new MultiProducerByteRing(64);
+        ring.tryClaim(9);
+    }
+
+    @Test
+    public void testConcurrentProducers() throws InterruptedException {
+        final MultiProducerByteRing ring = new MultiProducerByteRing(4096);
+        final int threadCount = 4;
+        final int recordsPerThread = 20000;
+        final CountDownLatch doneLatch = new CountDownLatch(threadCount);
+        for (int t = 0; t < threadCount; t++) {
+            final int threadIndex = t;
+            new Thread() {
+                @Override
+                public void run() {
+                    PrimitiveArrayUtils utils = PrimitiveArrayUtils.getInstance();
+                    for (int i = 0; i < recordsPerThread; i++) {
+                        // Variable length to provoke padding
+                        int length = 8 + i % 13;
+                        int index;
+                        while ((index = ring.tryClaim(length)) < 0) {
+                            Thread.yield();
+                        }
+                        utils.putIntLE(ring.buffer(), index, threadIndex);
+                        utils.putIntLE(ring.buffer(), index + 4, i);
+                        ring.publish(index, length);
+                    }
+                    doneLatch.countDown();
+                }
+            }.start();
+        }
+
+        final int[] nextSequences = new int[threadCount];
+        final int[] total = new int[1];
+        MultiProducerByteRing.RecordHandler handler = new MultiProducerByteRing.RecordHandler() {
+            @Override
+            public void onRecord(byte[] buffer, int offset, int length) {
+                PrimitiveArrayUtils utils = PrimitiveArrayUtils.getInstance();
+                int threadIndex = utils.getIntLE(buffer, offset);
+                int sequence = utils.getIntLE(buffer, offset + 4);
+                // Records of each producer arrive in order
+                assertEquals(nextSequences[threadIndex], sequence);
+                assertEquals(8 + sequence % 13, length);
+                nextSequences[threadIndex]++;
+                total[0]++;
+            }
+        };
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+        while (total[0] < threadCount * recordsPerThread && System.currentTimeMillis() < deadline) {
+            if (ring.read(handler) == 0) {
+                Thread.yield();
+            }
+        }
+        assertTrue(doneLatch.await(1, TimeUnit.SECONDS));
+        assertEquals(threadCount * recordsPerThread, total[0]);
+        assertEquals(0, ring.size());
+    }
+
+}
@@ -119,6 +119,106 @@ public class PipelineOutputStreamTest {
         out.write(42);
     }
 
+    @Test
+    public void testReadSingleByteUnsigned() throws IOException {
+        PipelineOutputStream out = new PipelineOutputStream();
+        InputStream in = out.getInputStream();
+        out.write(0xff);
+        out.write(new byte[]{(byte) 0x80});
+        out.close();
+        assertEquals(0xff, in.read());
+        assertEquals(0x80, in.read());
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    public void testCloseInWakesWriter() throws IOException, InterruptedException {
+        final PipelineOutputStream out = new PipelineOutputStream(16);
+        final CountDownLatch done = new CountDownLatch(1);
+        final IOException[] exception = new IOException[1];
+
+        Thread threadWriter = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    out.write(new byte[17]);
+                } catch (IOException e) {
+                    exception[0] = e;
+                }
+                done.countDown();
+            }
+        };
+        threadWriter.start();
+
+        assertFalse(done.await(10, TimeUnit.MILLISECONDS));
+        out.getInputStream().close();
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertNotNull(exception[0]);
+    }
+
+    @Test
+    public void testWakeReaderThreshold() throws IOException, InterruptedException {
+        PipelineOutputStream out = new PipelineOutputStream(64, 8, 1);
+        final InputStream in = out.getInputStream();
+        final CountDownLatch done = new CountDownLatch(1);
+        final int[] read = new int[1];
+
+        Thread threadReader = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    read[0] = in.read(new byte[16]);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+                done.countDown();
+            }
+        };
+        threadReader.start();
+
+        // Wait until the reader is parked (not just announced), so the write below must not wake it
+        while (out.waitingReader != threadReader || threadReader.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+        // 3 bytes are below the threshold
+        out.write(createBytes(3));
+        assertFalse(done.await(50, TimeUnit.MILLISECONDS));
+        out.flush();
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertEquals(3, read[0]);
+    }
+
+    @Test
+    public void testWakeThresholdsManySmallWrites() throws IOException, InterruptedException {
+        final PipelineOutputStream out = new PipelineOutputStream(256, 64, 128);
+        InputStream in = out.getInputStream();
+        final int runs = 10000;
+        Thread threadWriter = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < runs; i++) {
+                        out.write(i);
+                    }
+                    out.close();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        threadWriter.start();
+
+        for (int i = 0; i < runs; i++) {
+            assertEquals(i & 0xff, in.read());
+        }
+        assertEquals(-1, in.read());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWakeThresholdAboveCapacity() {
+        new PipelineOutputStream(64, 65, 1);
+    }
+
     @Test
     public void testTwoThreads() throws IOException, InterruptedException {
         final PipelineOutputStream out = new PipelineOutputStream(271);
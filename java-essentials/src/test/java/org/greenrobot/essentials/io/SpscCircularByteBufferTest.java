@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2014-2020 Markus Junginger, greenrobot (http://greenrobot.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.greenrobot.essentials.io;
+
+import org.greenrobot.essentials.hash.Murmur3F;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SpscCircularByteBufferTest {
+
+    @Test
+    public void testCapacityPowerOf2() {
+        assertEquals(16, new SpscCircularByteBuffer(16).capacity());
+        assertEquals(32, new SpscCircularByteBuffer(17).capacity());
+        assertEquals(1, new SpscCircularByteBuffer(1).capacity());
+        assertEquals(8192, new SpscCircularByteBuffer().capacity());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIllegalCapacity() {
+        new SpscCircularByteBuffer(0);
+    }
+
+    @Test
+    public void testStatsAndClear() {
+        SpscCircularByteBuffer buffer = new SpscCircularByteBuffer(16);
+        assertEquals(16, buffer.free());
+        assertEquals(0, buffer.available());
+
+        buffer.put(new byte[4]);
+        assertEquals(4, buffer.available());
+        assertEquals(12, buffer.free());
+
+        buffer.clear();
+        assertEquals(0, buffer.available());
+        assertEquals(16, buffer.put(new byte[16]));
+    }
+
+    @Test
+    public void testPutPartial() {
+        SpscCircularByteBuffer buffer = new SpscCircularByteBuffer(16);
+        byte[] bytes = createBytes(10);
+        assertEquals(10, buffer.put(bytes));
+        assertEquals(6, buffer.put(bytes));
+        assertEquals(0, buffer.put(bytes));
+
+        byte[] bytesGet = new byte[100];
+        assertEquals(16, buffer.get(bytesGet));
+        assertEquals(0, buffer.get(bytesGet));
+        assertEquals(6, bytesGet[15]);
+    }
+
+    /** All possible start positions with all possible lengths */
+    @Test
+    public void testPutAndGet() {
+        int capacity = 16;
+        for (int startPosition = 0; startPosition <= capacity; startPosition++) {
+            for (int length = 1; length <= capacity; length++) {
+                for (int putLength1 = 0; putLength1 <= length; putLength1++) {
+                    SpscCircularByteBuffer buffer = new SpscCircularByteBuffer(capacity);
+                    byte[] prepBytes = new byte[startPosition];
+                    assertEquals(startPosition, buffer.put(prepBytes));
+                    assertEquals(startPosition, buffer.get(prepBytes));
+
+                    byte[] bytes = createBytes(length);
+                    assertEquals(putLength1, buffer.put(bytes, 0, putLength1));
+                    int putLength2 = length - putLength1;
+                    assertEquals(putLength2, buffer.put(bytes, putLength1, putLength2));
+                    assertEquals(length, buffer.available());
+
+                    byte[] bytesGet = new byte[length];
+                    int getLength1 = length / 2;
+                    assertEquals(getLength1, buffer.get(bytesGet, 0, getLength1));
+                    assertEquals(length - getLength1, buffer.get(bytesGet, getLength1, length - getLength1));
+                    assertTrue(Arrays.equals(bytes, bytesGet));
+                    assertEquals(0, buffer.available());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSingleBytesAndPeekAndSkip() {
+        SpscCircularByteBuffer buffer = new SpscCircularByteBuffer(2);
+        assertEquals(-1, buffer.get());
+        assertEquals(-1, buffer.peek());
+        assertTrue(buffer.put((byte) 0xff));
+        assertTrue(buffer.put((byte) 42));
+        assertFalse(buffer.put((byte) 1));
+
+        // Unsigned values, so 0xff is not confused with "no data" (-1)
+        assertEquals(0xff, buffer.peek());
+        assertEquals(0xff, buffer.get());
+        assertEquals(1, buffer.skip(5));
+        assertEquals(0, buffer.skip(5));
+        assertEquals(-1, buffer.get());
+    }
+
+    @Test
+    public void testProducerConsumerThreads() throws Exception {
+        final SpscCircularByteBuffer buffer = new SpscCircularByteBuffer(1024);
+        final int total = 4 * 1024 * 1024;
+        final Murmur3F hashProducer = new Murmur3F();
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                Random random = new Random(42);
+                byte[] bytes = new byte[777];
+                int left = total;
+                while (left > 0) {
+                    random.nextBytes(bytes);
+                    int count = Math.min(left, 1 + random.nextInt(bytes.length));
+                    hashProducer.update(bytes, 0, count);
+                    int offset = 0;
+                    while (offset < count) {
+                        int put = buffer.put(bytes, offset, count - offset);
+                        if (put == 0) {
+                            Thread.yield();
+                        }
+                        offset += put;
+                    }
+                    left -= count;
+                }
+            }
+        };
+        producer.start();
+
+        Murmur3F hashConsumer = new Murmur3F();
+        byte[] bytes = new byte[500];
+        int got = 0;
+        while (got < total) {
+            int count = buffer.get(bytes);
+            if (count == 0) {
+                Thread.yield();
+            }
+            hashConsumer.update(bytes, 0, count);
+            got += count;
+        }
+        producer.join();
+        assertEquals(total, got);
+        assertEquals(0, buffer.available());
+        assertEquals(hashProducer.getValueHexString(), hashConsumer.getValueHexString());
+    }
+
+    private byte[] createBytes(int len) {
+        byte[] bytes = new byte[len];
+        for (int i = 0; i < len; i++) {
+            bytes[i] = (byte) (i + 1);
+        }
+        return bytes;
+    }
+
+}
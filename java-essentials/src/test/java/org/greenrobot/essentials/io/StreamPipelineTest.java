@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2014-2020 Markus Junginger, greenrobot (http://greenrobot.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.greenrobot.essentials.io;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class StreamPipelineTest {
+
+    private static class IncrementStage implements StreamPipeline.Stage {
+        @Override
+        public void process(InputStream in, OutputStream out) throws IOException {
+            byte[] buffer = new byte[1000];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                for (int i = 0; i < read; i++) {
+                    buffer[i]++;
+                }
+                out.write(buffer, 0, read);
+            }
+        }
+    }
+
+    private static class GzipStage implements StreamPipeline.Stage {
+        @Override
+        public void process(InputStream in, OutputStream out) throws IOException {
+            GZIPOutputStream gzipOut = new GZIPOutputStream(out);
+            IoUtils.copyAllBytes(in, gzipOut);
+            gzipOut.finish();
+        }
+    }
+
+    private static class GunzipStage implements StreamPipeline.Stage {
+        @Override
+        public void process(InputStream in, OutputStream out) throws IOException {
+            IoUtils.copyAllBytes(new GZIPInputStream(in), out);
+        }
+    }
+
+    @Test
+    public void testStages() throws Exception {
+        byte[] bytes = new byte[1000000];
+        new Random(42).nextBytes(bytes);
+        final AtomicInteger threadCount = new AtomicInteger();
+        StreamPipeline pipeline = new StreamPipeline(4096)
+                .addStage("increment", new IncrementStage())
+                .addStage("gzip", new GzipStage())
+                .addStage("gunzip", new GunzipStage())
+                .setThreadFactory(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        threadCount.incrementAndGet();
+                        return new Thread(runnable);
+                    }
+                });
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        pipeline.run(new ByteArrayInputStream(bytes), out);
+        assertEquals(3, threadCount.get());
+
+        byte[] expected = bytes.clone();
+        for (int i = 0; i < expected.length; i++) {
+            expected[i]++;
+        }
+        assertTrue(Arrays.equals(expected, out.toByteArray()));
+
+        List<StreamPipeline.StageStats> stats = pipeline.getStageStats();
+        assertEquals(3, stats.size());
+        assertEquals("increment", stats.get(0).getName());
+        assertEquals(bytes.length, stats.get(0).getBytesIn());
+        assertEquals(bytes.length, stats.get(0).getBytesOut());
+        assertEquals(stats.get(1).getBytesOut(), stats.get(2).getBytesIn());
+        assertEquals(bytes.length, stats.get(2).getBytesOut());
+        assertTrue(stats.get(0).getNanosTotal() > 0);
+        assertTrue(stats.get(0).getThroughputBytesPerSecond() > 0);
+    }
+
+    @Test
+    public void testStageFailure() throws Exception {
+        StreamPipeline pipeline = new StreamPipeline(1024)
+                .addStage("increment", new IncrementStage())
+                .addStage("failing", new StreamPipeline.Stage() {
+                    @Override
+                    public void process(InputStream in, OutputStream out) throws IOException {
+                        in.read(new byte[10]);
+                        throw new IllegalStateException("Boom");
+                    }
+                })
+                .addStage("increment2", new IncrementStage());
+        // Big enough to block the first stage
+        byte[] bytes = new byte[100000];
+        try {
+            pipeline.run(new ByteArrayInputStream(bytes), new ByteArrayOutputStream());
+            fail("Should have thrown");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("failing"));
+            assertEquals("Boom", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        InputStream endlessSource = new InputStream() {
+            @Override
+            public int read() {
+                return 42;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                Arrays.fill(b, off, off + len, (byte) 42);
+                return len;
+            }
+        };
+        OutputStream nullOut = new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+        };
+        StreamPipeline pipeline = new StreamPipeline(1024)
+                .addStage("increment", new IncrementStage())
+                .addStage("increment2", new IncrementStage());
+        pipeline.start(endlessSource, nullOut);
+        assertFalse(pipeline.await(10, TimeUnit.MILLISECONDS));
+        pipeline.cancel();
+        try {
+            pipeline.await();
+            fail("Should have thrown");
+        } catch (CancellationException e) {
+            // OK
+        }
+    }
+
+    @Test
+    public void testCancelAfterCompletion() throws Exception {
+        StreamPipeline pipeline = new StreamPipeline(1024)
+                .addStage("increment", new IncrementStage())
+                .addStage("increment2", new IncrementStage());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        pipeline.run(new ByteArrayInputStream(new byte[10000]), out);
+        // No-op: the pipeline completed successfully and must stay successful
+        pipeline.cancel();
+        pipeline.await();
+        assertEquals(10000, out.size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAddStageAfterStart() throws Exception {
+        StreamPipeline pipeline = new StreamPipeline().addStage("increment", new IncrementStage());
+        pipeline.run(new ByteArrayInputStream(new byte[1]), new ByteArrayOutputStream());
+        pipeline.addStage("increment2", new IncrementStage());
+    }
+
+}
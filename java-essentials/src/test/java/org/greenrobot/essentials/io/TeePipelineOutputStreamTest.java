@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2014-2020 Markus Junginger, greenrobot (http://greenrobot.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.greenrobot.essentials.io;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TeePipelineOutputStreamTest {
+
+    @Test
+    public void testAllReadersGetAllData() throws IOException {
+        TeePipelineOutputStream out = new TeePipelineOutputStream(3);
+        out.write(new byte[]{1, 2, 3, 4});
+        out.write(5);
+        out.close();
+        for (int i = 0; i < 3; i++) {
+            InputStream in = out.getInputStream(i);
+            assertEquals(5, in.available());
+            assertEquals(1, in.read());
+            byte[] buffer = new byte[8];
+            assertEquals(4, in.read(buffer));
+            assertEquals(2, buffer[0]);
+            assertEquals(5, buffer[3]);
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    public void testWriterLimitedBySlowestReader() throws IOException {
+        TeePipelineOutputStream out = new TeePipelineOutputStream(2, 16);
+        InputStream fast = out.getInputStream(0);
+        InputStream slow = out.getInputStream(1);
+        out.write(new byte[16]);
+        assertEquals(16, fast.skip(16));
+        assertEquals(0, fast.available());
+        assertEquals(16, slow.available());
+
+        assertEquals(4, slow.skip(4));
+        // Does not block: 4 bytes got free by the slow reader
+        out.write(new byte[]{1, 2, 3, 4});
+        assertEquals(4, fast.available());
+        assertEquals(16, slow.available());
+        assertEquals(12, slow.skip(12));
+        assertEquals(1, slow.read());
+        assertEquals(1, fast.read());
+    }
+
+    @Test
+    public void testClosedReaderDoesNotBlockWriter() throws IOException {
+        TeePipelineOutputStream out = new TeePipelineOutputStream(2, 16);
+        out.getInputStream(1).close();
+        InputStream in = out.getInputStream(0);
+        for (int i = 0; i < 10; i++) {
+            out.write(new byte[16]);
+            assertEquals(16, in.skip(16));
+        }
+    }
+
+    @Test
+    public void testAllReadersClosed() throws IOException {
+        TeePipelineOutputStream out = new TeePipelineOutputStream(2, 16);
+        out.getInputStream(0).close();
+        out.getInputStream(1).close();
+        try {
+            out.write(1);
+            fail("Should have thrown");
+        } catch (IOException e) {
+            // OK
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadAfterClose() throws IOException {
+        TeePipelineOutputStream out = new TeePipelineOutputStream(1);
+        InputStream in = out.getInputStream(0);
+        in.close();
+        in.read();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIllegalReaderCount() {
+        new TeePipelineOutputStream(0);
+    }
+
+    @Test
+    public void testConcurrentReaders() throws Exception {
+        final int readerCount = 3;
+        final TeePipelineOutputStream out = new TeePipelineOutputStream(readerCount, 1024);
+        final byte[] data = new byte[1000000];
+        new Random(42).nextBytes(data);
+        CRC32 expected = new CRC32();
+        expected.update(data);
+
+        final long[] checksums = new long[readerCount];
+        final CountDownLatch doneLatch = new CountDownLatch(readerCount);
+        for (int i = 0; i < readerCount; i++) {
+            final int readerIndex = i;
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        InputStream in = out.getInputStream(readerIndex);
+                        // Different read sizes, so readers progress at different speeds
+                        byte[] buffer = new byte[100 + readerIndex * 300];
+                        CRC32 crc = new CRC32();
+                        int read;
+                        while ((read = in.read(buffer)) != -1) {
+                            crc.update(buffer, 0, read);
+                        }
+                        checksums[readerIndex] = crc.getValue();
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    } finally {
+                        doneLatch.countDown();
+                    }
+                }
+            }.start();
+        }
+
+        for (int pos = 0; pos < data.length; pos += 777) {
+            out.write(data, pos, Math.min(777, data.length - pos));
+        }
+        out.close();
+        assertTrue(doneLatch.await(30, TimeUnit.SECONDS));
+        for (int i = 0; i < readerCount; i++) {
+            assertEquals(expected.getValue(), checksums[i]);
+        }
+    }
+
+    @Test
+    public void testReaderCloseWakesWriter() throws Exception {
+        final TeePipelineOutputStream out = new TeePipelineOutputStream(2, 16);
+        out.write(new byte[16]);
+        final CountDownLatch writtenLatch = new CountDownLatch(1);
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    out.write(42);
+                    writtenLatch.countDown();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }.start();
+        InputStream in0 = out.getInputStream(0);
+        assertEquals(16, in0.skip(16));
+        assertFalse(writtenLatch.await(10, TimeUnit.MILLISECONDS));
+        out.getInputStream(1).close();
+        assertTrue(writtenLatch.await(10, TimeUnit.SECONDS));
+        assertEquals(42, in0.read());
+    }
+
+}